@@ -0,0 +1,273 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.Builder;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles transfer buffers, so many concurrent transfers do not allocate and collect a buffer per read.
+ * <p>
+ * Buffers come in size classes of powers of two from 4 KiB up to <code>maxBufferSize</code>, a request is served
+ * from the smallest class that fits, so a buffer may be larger than requested. Larger requests are allocated and
+ * never pooled. Released buffers are kept until <code>maxPooledBytes</code> is reached, further ones are left to the
+ * garbage collector; buffers in use are not limited. Heap arrays serve the protocol libraries, which all read and
+ * write <code>byte[]</code>, direct buffers serve NIO channels.
+ * <p>
+ * With <code>leakDetection</code> every buffer in use remembers where it was acquired, see {@link #getLeaks()}. It
+ * is meant for tests, as it records a stack trace per buffer.
+ */
+public final class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 4 * 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    private static final BufferPool SHARED = BufferPool.builder().build();
+
+    private final int maxBufferSize;
+    private final long maxPooledBytes;
+    private final ConcurrentLinkedDeque<byte[]>[] heapClasses;
+    private final ConcurrentLinkedDeque<ByteBuffer>[] directClasses;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final Map<Object, Throwable> acquisitions;
+
+    /**
+     * @param maxBufferSize  the largest pooled buffer, rounded up to a power of two, 0 for 4 MiB
+     * @param maxPooledBytes bytes kept for reuse, 0 for 64 MiB
+     * @param leakDetection  remember where every buffer in use has been acquired
+     */
+    @Builder
+    @SuppressWarnings("unchecked")
+    private BufferPool(int maxBufferSize, long maxPooledBytes, boolean leakDetection) {
+        if (maxBufferSize < 0 || maxBufferSize > 1 << 30 || maxPooledBytes < 0) {
+            throw new IllegalArgumentException("maxBufferSize must be at most 1 GiB, maxPooledBytes not negative.");
+        }
+        this.maxBufferSize = classSize(Math.max(maxBufferSize == 0 ? DEFAULT_MAX_BUFFER_SIZE : maxBufferSize,
+                MIN_BUFFER_SIZE));
+        this.maxPooledBytes = maxPooledBytes == 0 ? DEFAULT_MAX_POOLED_BYTES : maxPooledBytes;
+        int classes = classIndex(this.maxBufferSize) + 1;
+        this.heapClasses = new ConcurrentLinkedDeque[classes];
+        this.directClasses = new ConcurrentLinkedDeque[classes];
+        for (int i = 0; i < classes; i++) {
+            heapClasses[i] = new ConcurrentLinkedDeque<>();
+            directClasses[i] = new ConcurrentLinkedDeque<>();
+        }
+        this.acquisitions = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+    }
+
+    /**
+     * @return the pool used by the clients and transfer utilities unless they are given another one
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param size the minimum length
+     * @return an array of at least this length, its content is undefined
+     */
+    public byte[] acquire(int size) {
+        byte[] buffer = null;
+        if (size <= maxBufferSize) {
+            int index = classIndex(classSize(size));
+            buffer = heapClasses[index].pollFirst();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-buffer.length);
+            }
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            buffer = new byte[size <= maxBufferSize ? classSize(size) : size];
+        } else {
+            hits.incrementAndGet();
+        }
+        track(buffer, buffer.length);
+        return buffer;
+    }
+
+    /**
+     * Give a buffer from {@link #acquire(int)} back, it must not be used afterwards.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        untrack(buffer, buffer.length);
+        if (isClassSize(buffer.length) && reserve(buffer.length)) {
+            heapClasses[classIndex(buffer.length)].offerFirst(buffer);
+        }
+    }
+
+    /**
+     * @param size the minimum capacity
+     * @return a direct buffer with position 0 and limit <code>size</code>, its content is undefined
+     */
+    public ByteBuffer acquireDirect(int size) {
+        ByteBuffer buffer = null;
+        if (size <= maxBufferSize) {
+            buffer = directClasses[classIndex(classSize(size))].pollFirst();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-buffer.capacity());
+            }
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(size <= maxBufferSize ? classSize(size) : size);
+        } else {
+            hits.incrementAndGet();
+        }
+        buffer.clear().limit(size);
+        track(buffer, buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Give a buffer from {@link #acquireDirect(int)} back, it must not be used afterwards.
+     */
+    public void releaseDirect(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        untrack(buffer, buffer.capacity());
+        if (buffer.isDirect() && isClassSize(buffer.capacity()) && reserve(buffer.capacity())) {
+            directClasses[classIndex(buffer.capacity())].offerFirst(buffer);
+        }
+    }
+
+    /**
+     * Copy all bytes with a pooled buffer. No stream is closed.
+     *
+     * @return bytes copied
+     */
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = acquire(DEFAULT_BUFFER_SIZE);
+        try {
+            return IOUtils.copyLarge(in, out, buffer);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return share of the acquisitions served by a pooled buffer, 0 before the first one
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return bytes kept for reuse
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return buffers acquired and not released yet
+     */
+    public long getOutstandingCount() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return total length of the buffers acquired and not released yet
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    /**
+     * @return for every buffer in use, the stack trace of its acquisition; empty without leak detection
+     */
+    public List<Throwable> getLeaks() {
+        if (acquisitions == null) {
+            return Collections.emptyList();
+        }
+        synchronized (acquisitions) {
+            return new ArrayList<>(acquisitions.values());
+        }
+    }
+
+    private void track(Object buffer, int length) {
+        outstanding.incrementAndGet();
+        outstandingBytes.addAndGet(length);
+        if (acquisitions != null) {
+            acquisitions.put(buffer, new Throwable("Buffer acquired by " + Thread.currentThread().getName()));
+        }
+    }
+
+    private void untrack(Object buffer, int length) {
+        if (acquisitions != null && acquisitions.remove(buffer) == null) {
+            throw new IllegalStateException("The buffer has not been acquired from this pool or released twice.");
+        }
+        outstanding.decrementAndGet();
+        outstandingBytes.addAndGet(-length);
+    }
+
+    private boolean reserve(int bytes) {
+        while (true) {
+            long current = pooledBytes.get();
+            if (current + bytes > maxPooledBytes) {
+                return false;
+            }
+            if (pooledBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean isClassSize(int length) {
+        return length >= MIN_BUFFER_SIZE && length <= maxBufferSize && Integer.bitCount(length) == 1;
+    }
+
+    private static int classSize(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return MIN_BUFFER_SIZE;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int classIndex(int classSize) {
+        return Integer.numberOfTrailingZeros(classSize) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.NonNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Checksum algorithms understood by {@link FileSystemClient#getChecksum(String, String)}: every
+ * {@link MessageDigest} algorithm such as <code>MD5</code>, <code>SHA-1</code> and <code>SHA-256</code>,
+ * plus <code>CRC32</code>.
+ */
+public final class Checksums {
+    public static final String MD5 = "MD5";
+    public static final String SHA_1 = "SHA-1";
+    public static final String SHA_256 = "SHA-256";
+    public static final String SHA_512 = "SHA-512";
+    public static final String CRC_32 = "CRC32";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]+");
+
+    private Checksums() {
+    }
+
+    /**
+     * @param algorithm algorithm name, case-insensitive
+     * @return the upper case algorithm name
+     */
+    public static String normalize(@NonNull String algorithm) {
+        return algorithm.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Create a digest for the algorithm.
+     *
+     * @throws IllegalArgumentException If the algorithm is not supported
+     */
+    public static MessageDigest newDigest(@NonNull String algorithm) {
+        String name = normalize(algorithm);
+        if (CRC_32.equals(name)) {
+            return new Crc32Digest();
+        }
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported checksum algorithm " + algorithm, e);
+        }
+    }
+
+    /**
+     * @return lower case hex string
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Check whether a checksum reported by a server looks like a digest of this algorithm.
+     */
+    public static boolean isValid(String hex, String algorithm) {
+        return hex != null
+                && HEX.matcher(hex).matches()
+                && hex.length() == newDigest(algorithm).getDigestLength() * 2;
+    }
+
+    /**
+     * CRC-32 as a {@link MessageDigest}, so it can be used with {@link java.security.DigestInputStream}.
+     */
+    private static final class Crc32Digest extends MessageDigest {
+        private final CRC32 crc = new CRC32();
+
+        private Crc32Digest() {
+            super(CRC_32);
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return 4;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            crc.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            crc.update(input, offset, len);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            long value = crc.getValue();
+            crc.reset();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        protected void engineReset() {
+            crc.reset();
+        }
+    }
+}
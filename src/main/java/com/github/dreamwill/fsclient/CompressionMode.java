@@ -0,0 +1,40 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+/**
+ * Transport compression policy.
+ * <p>
+ * SFTP negotiates <code>zlib@openssh.com</code> once per session, so {@link #ADAPTIVE} only offers compression there.
+ * FTP switches between <code>MODE Z</code> and <code>MODE S</code> before every transfer.
+ */
+public enum CompressionMode {
+    /**
+     * never compress
+     */
+    NONE,
+
+    /**
+     * compress whenever the server supports it
+     */
+    ALWAYS,
+
+    /**
+     * decide per transfer from measured throughput and sampled compressibility
+     */
+    ADAPTIVE
+}
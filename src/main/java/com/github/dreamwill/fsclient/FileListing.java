@@ -0,0 +1,494 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.NonNull;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.IntPredicate;
+
+/**
+ * A read-only list of file metadata kept in columns instead of one object per file, so listings of millions of
+ * files stay small: every parent directory is stored once, names share one UTF-8 byte array, and sizes and times are
+ * primitive longs. {@link FileMetadata} objects are only created by {@link #get(int)}, prefer the column accessors
+ * like {@link #getSize(int)} in loops over large listings.
+ * <p>
+ * Sorting and filtering return new listings which share the directory and name storage with this one. A listing
+ * can be written to a stream in a compact binary form and read back, to keep inventories on disk instead of in heap.
+ */
+public final class FileListing extends AbstractList<FileMetadata> implements RandomAccess {
+    /**
+     * value of sizes and times which are not known
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+    private static final int MAGIC = 0x46534c31;
+
+    public enum Order {
+        /**
+         * by parent directory, then by name, both in UTF-8 byte order
+         */
+        PATH,
+        SIZE,
+        MTIME
+    }
+
+    private final String[] parents;
+    private final byte[] names;
+    private final int[] parentIds;
+    private final int[] nameStarts;
+    private final int[] nameLengths;
+    private final long[] sizes;
+    private final long[] mtimes;
+    private final long[] ctimes;
+
+    private FileListing(String[] parents, byte[] names, int[] parentIds, int[] nameStarts, int[] nameLengths,
+                        long[] sizes, long[] mtimes, long[] ctimes) {
+        this.parents = parents;
+        this.names = names;
+        this.parentIds = parentIds;
+        this.nameStarts = nameStarts;
+        this.nameLengths = nameLengths;
+        this.sizes = sizes;
+        this.mtimes = mtimes;
+        this.ctimes = ctimes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public int size() {
+        return sizes.length;
+    }
+
+    /**
+     * @return a view of the file at this index, created on every call
+     */
+    @Override
+    public FileMetadata get(int index) {
+        return FileMetadata.builder()
+                           .path(getPath(index))
+                           .size(sizes[index] == UNKNOWN ? null : sizes[index])
+                           .mtime(toInstant(mtimes[index]))
+                           .ctime(toInstant(ctimes[index]))
+                           .build();
+    }
+
+    public String getPath(int index) {
+        int parentId = parentIds[index];
+        return parentId < 0 ? getName(index) : parents[parentId] + "/" + getName(index);
+    }
+
+    public String getName(int index) {
+        return new String(names, nameStarts[index], nameLengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the size in bytes, or {@link #UNKNOWN}
+     */
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * @return the modification time in epoch milliseconds, or {@link #UNKNOWN}
+     */
+    public long getMtime(int index) {
+        return mtimes[index];
+    }
+
+    /**
+     * @return the creation time in epoch milliseconds, or {@link #UNKNOWN}
+     */
+    public long getCtime(int index) {
+        return ctimes[index];
+    }
+
+    /**
+     * @return the sum of all known sizes
+     */
+    public long getTotalSize() {
+        long total = 0;
+        for (long size : sizes) {
+            if (size != UNKNOWN) {
+                total += size;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param predicate tests the index of every file, use the column accessors to look at the file
+     */
+    public FileListing filter(@NonNull IntPredicate predicate) {
+        int[] selected = new int[size()];
+        int count = 0;
+        for (int i = 0; i < size(); i++) {
+            if (predicate.test(i)) {
+                selected[count++] = i;
+            }
+        }
+        return select(Arrays.copyOf(selected, count));
+    }
+
+    /**
+     * @param glob pattern of the file names with the wildcards <code>*</code> and <code>?</code>
+     */
+    public FileListing matching(@NonNull String glob) {
+        return filter(i -> FilenameUtils.wildcardMatch(getName(i), glob));
+    }
+
+    /**
+     * Sort in ascending order, files without size or time come first. The sort is stable.
+     */
+    public FileListing sorted(@NonNull Order order) {
+        int[] permutation = identity(size());
+        switch (order) {
+            case PATH:
+                int[] ranks = parentRanks();
+                sort(permutation, (a, b) -> {
+                    int byParent = Integer.compare(rank(ranks, a), rank(ranks, b));
+                    return byParent != 0 ? byParent : compareNames(a, b);
+                });
+                break;
+            case SIZE:
+                sort(permutation, (a, b) -> Long.compare(sizes[a], sizes[b]));
+                break;
+            case MTIME:
+                sort(permutation, (a, b) -> Long.compare(mtimes[a], mtimes[b]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown order " + order);
+        }
+        return select(permutation);
+    }
+
+    public FileListing reversed() {
+        int[] permutation = new int[size()];
+        for (int i = 0; i < permutation.length; i++) {
+            permutation[i] = permutation.length - 1 - i;
+        }
+        return select(permutation);
+    }
+
+    /**
+     * Write the listing in a binary form, see {@link #readFrom(InputStream)}. The stream is not closed.
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(parents.length);
+        for (String parent : parents) {
+            writeBytes(data, parent.getBytes(StandardCharsets.UTF_8), 0, -1);
+        }
+        data.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            data.writeInt(parentIds[i]);
+            writeBytes(data, names, nameStarts[i], nameLengths[i]);
+            data.writeLong(sizes[i]);
+            data.writeLong(mtimes[i]);
+            data.writeLong(ctimes[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Read a listing written by {@link #writeTo(OutputStream)}. The stream is not closed.
+     *
+     * @throws IOException If an I/O error occurred or the stream does not contain a listing
+     */
+    public static FileListing readFrom(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a file listing.");
+        }
+        String[] parents = new String[data.readInt()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = new String(readBytes(data), StandardCharsets.UTF_8);
+        }
+        int count = data.readInt();
+        Builder builder = new Builder(parents, count);
+        for (int i = 0; i < count; i++) {
+            int parentId = data.readInt();
+            if (parentId >= parents.length) {
+                throw new IOException("Corrupt file listing.");
+            }
+            builder.append(parentId, readBytes(data), data.readLong(), data.readLong(), data.readLong());
+        }
+        return builder.build();
+    }
+
+    private FileListing select(int[] indexes) {
+        int n = indexes.length;
+        int[] newParentIds = new int[n];
+        int[] newNameStarts = new int[n];
+        int[] newNameLengths = new int[n];
+        long[] newSizes = new long[n];
+        long[] newMtimes = new long[n];
+        long[] newCtimes = new long[n];
+        for (int i = 0; i < n; i++) {
+            int index = indexes[i];
+            newParentIds[i] = parentIds[index];
+            newNameStarts[i] = nameStarts[index];
+            newNameLengths[i] = nameLengths[index];
+            newSizes[i] = sizes[index];
+            newMtimes[i] = mtimes[index];
+            newCtimes[i] = ctimes[index];
+        }
+        return new FileListing(parents, names, newParentIds, newNameStarts, newNameLengths, newSizes, newMtimes,
+                newCtimes);
+    }
+
+    /**
+     * @return the position of every parent directory in UTF-8 byte order
+     */
+    private int[] parentRanks() {
+        int[] order = identity(parents.length);
+        byte[][] encoded = new byte[parents.length][];
+        for (int i = 0; i < parents.length; i++) {
+            encoded[i] = parents[i].getBytes(StandardCharsets.UTF_8);
+        }
+        sort(order, (a, b) -> compareBytes(encoded[a], 0, encoded[a].length, encoded[b], 0, encoded[b].length));
+        int[] ranks = new int[parents.length];
+        for (int i = 0; i < order.length; i++) {
+            ranks[order[i]] = i;
+        }
+        return ranks;
+    }
+
+    private int rank(int[] ranks, int index) {
+        return parentIds[index] < 0 ? -1 : ranks[parentIds[index]];
+    }
+
+    private int compareNames(int a, int b) {
+        return compareBytes(names, nameStarts[a], nameLengths[a], names, nameStarts[b], nameLengths[b]);
+    }
+
+    private static int compareBytes(byte[] a, int aStart, int aLength, byte[] b, int bStart, int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[aStart + i] & 0xff) - (b[bStart + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    private static Optional<Instant> toInstant(long epochMillis) {
+        return epochMillis == UNKNOWN ? Optional.empty() : Optional.of(Instant.ofEpochMilli(epochMillis));
+    }
+
+    private static int[] identity(int n) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    @FunctionalInterface
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * A stable merge sort of indexes, which avoids boxing every index like a comparator based sort would.
+     */
+    private static void sort(int[] indexes, IndexComparator comparator) {
+        int[] buffer = new int[indexes.length];
+        int[] from = indexes;
+        int[] to = buffer;
+        for (int width = 1; width < indexes.length; width *= 2) {
+            for (int low = 0; low < indexes.length; low += 2 * width) {
+                int middle = Math.min(low + width, indexes.length);
+                int high = Math.min(low + 2 * width, indexes.length);
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    to[k++] = comparator.compare(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+                }
+                while (i < middle) {
+                    to[k++] = from[i++];
+                }
+                while (j < high) {
+                    to[k++] = from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != indexes) {
+            System.arraycopy(from, 0, indexes, 0, indexes.length);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes, int start, int length) throws IOException {
+        int n = length < 0 ? bytes.length : length;
+        data.writeInt(n);
+        data.write(bytes, start, n);
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt file listing.");
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Collects files into a {@link FileListing}, without keeping the added {@link FileMetadata} objects.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> parentIds = new HashMap<>();
+        private String[] parents;
+        private int parentCount;
+        private String lastParent;
+        private int lastParentId;
+        private byte[] names;
+        private int namesLength;
+        private int[] entryParentIds;
+        private int[] nameStarts;
+        private int[] nameLengths;
+        private long[] sizes;
+        private long[] mtimes;
+        private long[] ctimes;
+        private int count;
+
+        private Builder() {
+            this(new String[0], 16);
+        }
+
+        private Builder(String[] parents, int capacity) {
+            this.parents = parents;
+            this.parentCount = parents.length;
+            // the capacity may come from a stream, so it is only a hint
+            int entries = Math.max(Math.min(capacity, 1 << 16), 1);
+            this.names = new byte[entries * 16];
+            this.entryParentIds = new int[entries];
+            this.nameStarts = new int[entries];
+            this.nameLengths = new int[entries];
+            this.sizes = new long[entries];
+            this.mtimes = new long[entries];
+            this.ctimes = new long[entries];
+        }
+
+        public Builder add(@NonNull FileMetadata metadata) {
+            return add(metadata.getPath(),
+                    metadata.getSize() == null ? UNKNOWN : metadata.getSize(),
+                    toEpochMillis(metadata.getMtime()),
+                    toEpochMillis(metadata.getCtime()));
+        }
+
+        public Builder addAll(@NonNull Iterable<FileMetadata> files) {
+            files.forEach(this::add);
+            return this;
+        }
+
+        /**
+         * @param size  size in bytes, or {@link #UNKNOWN}
+         * @param mtime modification time in epoch milliseconds, or {@link #UNKNOWN}
+         * @param ctime creation time in epoch milliseconds, or {@link #UNKNOWN}
+         */
+        public Builder add(@NonNull String path, long size, long mtime, long ctime) {
+            int separator = path.lastIndexOf('/');
+            int parentId = separator < 0 ? -1 : parentId(path.substring(0, separator));
+            byte[] name = path.substring(separator + 1).getBytes(StandardCharsets.UTF_8);
+            return append(parentId, name, size, mtime, ctime);
+        }
+
+        public FileListing build() {
+            return new FileListing(
+                    Arrays.copyOf(parents, parentCount),
+                    Arrays.copyOf(names, namesLength),
+                    Arrays.copyOf(entryParentIds, count),
+                    Arrays.copyOf(nameStarts, count),
+                    Arrays.copyOf(nameLengths, count),
+                    Arrays.copyOf(sizes, count),
+                    Arrays.copyOf(mtimes, count),
+                    Arrays.copyOf(ctimes, count)
+            );
+        }
+
+        private Builder append(int parentId, byte[] name, long size, long mtime, long ctime) {
+            if (count == sizes.length) {
+                int capacity = count * 2;
+                entryParentIds = Arrays.copyOf(entryParentIds, capacity);
+                nameStarts = Arrays.copyOf(nameStarts, capacity);
+                nameLengths = Arrays.copyOf(nameLengths, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                mtimes = Arrays.copyOf(mtimes, capacity);
+                ctimes = Arrays.copyOf(ctimes, capacity);
+            }
+            if (namesLength + name.length > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length));
+            }
+            System.arraycopy(name, 0, names, namesLength, name.length);
+            entryParentIds[count] = parentId;
+            nameStarts[count] = namesLength;
+            nameLengths[count] = name.length;
+            sizes[count] = size;
+            mtimes[count] = mtime;
+            ctimes[count] = ctime;
+            namesLength += name.length;
+            count++;
+            return this;
+        }
+
+        private int parentId(String parent) {
+            // files usually arrive directory by directory
+            if (parent.equals(lastParent)) {
+                return lastParentId;
+            }
+            Integer id = parentIds.get(parent);
+            if (id == null) {
+                if (parentCount == parents.length) {
+                    parents = Arrays.copyOf(parents, Math.max(parents.length * 2, 16));
+                }
+                id = parentCount;
+                parents[parentCount++] = parent;
+                parentIds.put(parent, id);
+            }
+            lastParent = parent;
+            lastParentId = id;
+            return id;
+        }
+
+        private static long toEpochMillis(Optional<Instant> time) {
+            return time == null ? UNKNOWN : time.map(Instant::toEpochMilli).orElse(UNKNOWN);
+        }
+    }
+}
@@ -16,11 +16,39 @@
 
 package com.github.dreamwill.fsclient;
 
+import com.github.dreamwill.fsclient.archive.ArchiveExporter;
+import com.github.dreamwill.fsclient.archive.ArchiveFormat;
+import com.github.dreamwill.fsclient.archive.ArchiveOptions;
+import com.github.dreamwill.fsclient.archive.ArchiveResult;
+import com.github.dreamwill.fsclient.delete.DeleteOptions;
+import com.github.dreamwill.fsclient.delete.DeleteResult;
+import com.github.dreamwill.fsclient.delete.TreeDeleter;
+import com.github.dreamwill.fsclient.transfer.StreamingTransfer;
+import com.github.dreamwill.fsclient.transfer.StreamingTransferOptions;
+import com.github.dreamwill.fsclient.watch.ChangeListener;
+import com.github.dreamwill.fsclient.watch.PollingWatcher;
+import com.github.dreamwill.fsclient.watch.WatchOptions;
 import lombok.NonNull;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public interface FileSystemClient extends Closeable {
     /**
@@ -30,6 +58,19 @@ public interface FileSystemClient extends Closeable {
      */
     void connect() throws IOException;
 
+    /**
+     * Prepare the connection for the paths which are used first, so the first requests do not pay for the setup,
+     * e.g. an SMB tree connect. The default looks every path up.
+     *
+     * @param paths full paths of files or directories
+     * @throws IOException If an I/O error occurred
+     */
+    default void warmUp(@NonNull Collection<String> paths) throws IOException {
+        for (String path : paths) {
+            getFileMetadata(path);
+        }
+    }
+
     /**
      * Create a new file and copy bytes from the input stream to it.
      *
@@ -40,6 +81,56 @@ public interface FileSystemClient extends Closeable {
      */
     boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException;
 
+    /**
+     * Create a new file and update the digest with every byte copied, so the content can be verified against
+     * {@link #getChecksum(String, String)} without reading it again.
+     *
+     * @param path   full file path of the new file
+     * @param in     the input stream to copy from
+     * @param digest the digest to update, untouched if this file already exists
+     * @return <code>true</code> if create and copy successfully; <code>false</code> if this file already exists
+     * @throws IOException If an I/O error occurred
+     */
+    default boolean createFile(@NonNull String path, @NonNull InputStream in, @NonNull MessageDigest digest)
+            throws IOException {
+        return createFile(path, new DigestInputStream(in, digest));
+    }
+
+    /**
+     * Open an output stream to a new file. Written bytes are uploaded by a background task while the caller keeps
+     * writing, with at most a bounded amount of memory buffered.
+     * <p>
+     * Note: The output stream must be closed, which waits for the upload and throws its errors. The client must not
+     * be used for anything else until then, unless it is safe for concurrent use.
+     *
+     * @param path    full file path of the new file
+     * @param options buffering of the stream
+     * @return an output stream, or null if this file already exists
+     * @throws IOException If an I/O error occurred
+     */
+    default OutputStream openOutputStream(@NonNull String path, @NonNull OutputStreamOptions options)
+            throws IOException {
+        if (getFileMetadata(path) != null) {
+            return null;
+        }
+        return WriteBehindOutputStream.open(this, path, options);
+    }
+
+    /**
+     * Upload a local file unless the remote file is identical, see {@link UploadOptions} for how files are compared.
+     * A remote file which differs is replaced.
+     *
+     * @param path    full file path of the remote file
+     * @param source  the local file to upload
+     * @param options how to compare the files
+     * @return whether the remote file has been created, replaced or left alone
+     * @throws IOException If an I/O error occurred
+     */
+    default UploadResult uploadFile(@NonNull String path, @NonNull File source, @NonNull UploadOptions options)
+            throws IOException {
+        return UploadSupport.upload(this, path, source, options);
+    }
+
     /**
      * Delete the file denoted by this path.
      *
@@ -49,6 +140,68 @@ public interface FileSystemClient extends Closeable {
      */
     boolean deleteFile(@NonNull String path) throws IOException;
 
+    /**
+     * Delete the empty directory denoted by this path.
+     *
+     * @param dir full directory path
+     * @return <code>true</code> if delete successfully; <code>false</code> if the directory does not exist or the
+     * server does not support it
+     * @throws IOException If an I/O error occurred, like the directory is not empty
+     */
+    default boolean deleteDirectory(@NonNull String dir) throws IOException {
+        return false;
+    }
+
+    /**
+     * Delete the directory denoted by this path with everything in it, see
+     * {@link #deleteTree(String, DeleteOptions)}.
+     */
+    default DeleteResult deleteTree(@NonNull String dir) throws IOException {
+        return deleteTree(dir, DeleteOptions.defaults());
+    }
+
+    /**
+     * Delete the directory denoted by this path with everything in it. Sub directories are listed and files removed
+     * concurrently, a directory is removed once its children are gone. A path which can not be removed is reported
+     * and the run goes on, only the directories above it are kept.
+     * <p>
+     * Note: The client is used from several threads, so it must be safe for concurrent use.
+     *
+     * @param dir     full directory path
+     * @param options concurrency of the run
+     * @return the number of removed files and directories and the paths which failed, or null if the directory is
+     * not present
+     * @throws IOException If the directory could not be listed
+     */
+    default DeleteResult deleteTree(@NonNull String dir, @NonNull DeleteOptions options) throws IOException {
+        return TreeDeleter.deleteTree(this, dir, options);
+    }
+
+    /**
+     * Delete the files of the whole tree under the directory denoted by this path which match the filter, see
+     * {@link #deleteMatching(String, Predicate, DeleteOptions)}.
+     */
+    default DeleteResult deleteMatching(@NonNull String dir, @NonNull Predicate<FileMetadata> filter)
+            throws IOException {
+        return deleteMatching(dir, filter, DeleteOptions.defaults());
+    }
+
+    /**
+     * Delete the files of the whole tree under the directory denoted by this path which match the filter, like all
+     * files with a path prefix or older than a retention period. Directories are kept. Works like
+     * {@link #deleteTree(String, DeleteOptions)} otherwise.
+     *
+     * @param dir     full directory path
+     * @param filter  selects the files to delete
+     * @param options concurrency of the run
+     * @return the number of removed files and the paths which failed, or null if the directory is not present
+     * @throws IOException If the directory could not be listed
+     */
+    default DeleteResult deleteMatching(@NonNull String dir, @NonNull Predicate<FileMetadata> filter,
+                                        @NonNull DeleteOptions options) throws IOException {
+        return TreeDeleter.deleteMatching(this, dir, filter, options);
+    }
+
     /**
      * Move the file.
      *
@@ -80,6 +233,78 @@ public interface FileSystemClient extends Closeable {
      */
     InputStream getInputStream(@NonNull String path) throws IOException;
 
+    /**
+     * Get an InputStream of the file denoted by this path, starting at the offset. Implementations ask the server to
+     * start there where the protocol allows, otherwise the bytes before the offset are read and dropped.
+     * <p>
+     * Note: The input stream should be closed after use.
+     *
+     * @param path   full file path
+     * @param offset bytes to leave out at the start, an offset past the end gives an empty stream
+     * @return an input stream, or null if the file is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default InputStream getInputStream(@NonNull String path, long offset) throws IOException {
+        InputStream in = getInputStream(path);
+        if (in != null && offset > 0) {
+            try {
+                IOUtils.skip(in, offset);
+            } catch (IOException | RuntimeException e) {
+                IOUtils.closeQuietly(in);
+                throw e;
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Get an InputStream of the file denoted by this path, which updates the digest with every byte read.
+     * <p>
+     * Note: The input stream should be closed after use.
+     *
+     * @param path   full file path
+     * @param digest the digest to update
+     * @return an input stream, or null if the file is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default InputStream getInputStream(@NonNull String path, @NonNull MessageDigest digest) throws IOException {
+        InputStream in = getInputStream(path);
+        return in == null ? null : new DigestInputStream(in, digest);
+    }
+
+    /**
+     * Get the checksum of the file denoted by this path. Implementations ask the server to compute it where the
+     * protocol allows, otherwise the file is read once.
+     *
+     * @param path      full file path
+     * @param algorithm one of the algorithms described in {@link Checksums}
+     * @return lower case hex checksum, or null if the file is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default String getChecksum(@NonNull String path, @NonNull String algorithm) throws IOException {
+        MessageDigest digest = Checksums.newDigest(algorithm);
+        try (InputStream in = getInputStream(path, digest)) {
+            if (in == null) {
+                return null;
+            }
+            IOUtils.consume(in);
+        }
+        return Checksums.toHex(digest.digest());
+    }
+
+    /**
+     * Set the modification time of the file denoted by this path.
+     *
+     * @param path  full file path
+     * @param mtime the new modification time
+     * @return <code>true</code> if set successfully; <code>false</code> if the file does not exist or the server
+     * does not support it
+     * @throws IOException If an I/O error occurred
+     */
+    default boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        return false;
+    }
+
     /**
      * Get metadata of the file denoted by this path.
      *
@@ -88,4 +313,166 @@ public interface FileSystemClient extends Closeable {
      * @throws IOException If an I/O error occurred
      */
     FileMetadata getFileMetadata(@NonNull String path) throws IOException;
+
+    /**
+     * List the files directly inside the directory denoted by this path. Sub directories are not listed. The default
+     * throws {@link UnsupportedOperationException}, so implementations written before listing existed keep compiling;
+     * watching, walking and tree deletion need it.
+     *
+     * @param dir full directory path
+     * @return metadata of the files in no particular order, or null if the directory is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support listing files");
+    }
+
+    /**
+     * List the files directly inside the directory denoted by this path whose names match the glob. The glob
+     * supports the wildcards <code>*</code> and <code>?</code> and is case sensitive. Implementations send it to the
+     * server where the protocol allows, so only matching entries are transferred.
+     *
+     * @param dir  full directory path
+     * @param glob pattern of the file names, like <code>*.csv</code>
+     * @return metadata of the matching files in no particular order, or null if the directory is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        List<FileMetadata> files = listFiles(dir);
+        if (files == null) {
+            return null;
+        }
+        return files.stream()
+                    .filter(file -> FilenameUtils.wildcardMatch(FilenameUtils.getName(file.getPath()), glob))
+                    .collect(Collectors.toList());
+    }
+
+    /**
+     * List the directories directly inside the directory denoted by this path. The default throws
+     * {@link UnsupportedOperationException}, like {@link #listFiles(String)}.
+     *
+     * @param dir full directory path
+     * @return full paths of the sub directories in no particular order, or null if the directory is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default List<String> listDirectories(@NonNull String dir) throws IOException {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support listing directories");
+    }
+
+    /**
+     * List the files of the whole tree under the directory denoted by this path whose names match the glob, see
+     * {@link #listFiles(String, String)}. The glob only applies to file names, every sub directory is walked.
+     *
+     * @param dir  full directory path
+     * @param glob pattern of the file names, like <code>*.csv</code>
+     * @return a compact listing of the matching files in no particular order, or null if the directory is not
+     * present
+     * @throws IOException If an I/O error occurred
+     */
+    default FileListing walkFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        List<FileMetadata> files = listFiles(dir, glob);
+        List<String> dirs = listDirectories(dir);
+        if (files == null || dirs == null) {
+            return null;
+        }
+        FileListing.Builder result = FileListing.builder().addAll(files);
+        // links may lead back to a directory which has been walked already
+        Set<String> visited = new HashSet<>();
+        visited.add(StringUtils.removeEnd(dir, "/"));
+        Deque<String> pending = new ArrayDeque<>(dirs);
+        while (!pending.isEmpty()) {
+            String next = pending.pop();
+            if (!visited.add(StringUtils.removeEnd(next, "/"))) {
+                continue;
+            }
+            // a directory removed during the walk is skipped
+            List<FileMetadata> nextFiles = listFiles(next, glob);
+            if (nextFiles != null) {
+                result.addAll(nextFiles);
+            }
+            List<String> nextDirs = listDirectories(next);
+            if (nextDirs != null) {
+                pending.addAll(nextDirs);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Watch the files directly inside the directory denoted by this path, see
+     * {@link #watch(String, ChangeListener, WatchOptions)}.
+     */
+    default Closeable watch(@NonNull String dir, @NonNull ChangeListener listener) throws IOException {
+        return watch(dir, listener, WatchOptions.defaults());
+    }
+
+    /**
+     * Watch the files directly inside the directory denoted by this path until the returned handle is closed.
+     * Implementations use the change notifications of the server where the protocol has them, otherwise the
+     * directory is listed periodically and compared with the previous listing.
+     * <p>
+     * Note: The watch uses this client from a background thread, so the client must be safe for concurrent use or
+     * must not be used for anything else until the watch is closed.
+     *
+     * @param dir      full directory path
+     * @param listener receives the created, modified and deleted files
+     * @param options  how often to list the directory when it is polled
+     * @return a handle which stops the watch, or null if the directory is not present
+     * @throws IOException If an I/O error occurred
+     */
+    default Closeable watch(@NonNull String dir, @NonNull ChangeListener listener, @NonNull WatchOptions options)
+            throws IOException {
+        return PollingWatcher.start(this, dir, listener, options);
+    }
+
+    /**
+     * Write the files denoted by these paths into an archive, see
+     * {@link #exportArchive(Collection, OutputStream, ArchiveOptions)}.
+     */
+    default ArchiveResult exportArchive(@NonNull Collection<String> paths, @NonNull OutputStream out,
+                                        @NonNull ArchiveFormat format) throws IOException {
+        return exportArchive(paths, out, ArchiveOptions.builder().format(format).build());
+    }
+
+    /**
+     * Write the files denoted by these paths into a zip or tar archive, in the given order. Several files are
+     * fetched concurrently into memory bounded by the options while the entries are written, nothing is written to
+     * disk.
+     *
+     * @param paths   full file paths
+     * @param out     receives the archive, it is not closed
+     * @param options format, concurrency and memory limit
+     * @return the entries written and the files which are missing or could not be read
+     * @throws IOException If the archive could not be written
+     */
+    default ArchiveResult exportArchive(@NonNull Collection<String> paths, @NonNull OutputStream out,
+                                        @NonNull ArchiveOptions options) throws IOException {
+        return ArchiveExporter.export(this, paths, out, options);
+    }
+
+    /**
+     * Copy a file of this client to another client, see
+     * {@link #transferTo(String, FileSystemClient, String, StreamingTransferOptions)}.
+     */
+    default boolean transferTo(@NonNull String source, @NonNull FileSystemClient target, @NonNull String targetPath)
+            throws IOException {
+        return transferTo(source, target, targetPath, StreamingTransferOptions.defaults());
+    }
+
+    /**
+     * Copy a file of this client to another client, e.g. from an FTP server to an SMB share. The content is streamed
+     * through a bounded ring of buffers, nothing is written to disk.
+     *
+     * @param source     full file path on this client
+     * @param target     the client to write to
+     * @param targetPath full file path on the target client
+     * @param options    buffers, parallel ranges and whether the modification time is preserved
+     * @return <code>true</code> if copied successfully; <code>false</code> if the source file does not exist or the
+     * target file exists
+     * @throws IOException If an I/O error occurred
+     */
+    default boolean transferTo(@NonNull String source, @NonNull FileSystemClient target, @NonNull String targetPath,
+                               @NonNull StreamingTransferOptions options) throws IOException {
+        return StreamingTransfer.transfer(this, source, target, targetPath, options);
+    }
 }
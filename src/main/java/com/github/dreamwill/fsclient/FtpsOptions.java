@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * FTP over TLS (RFC 4217) of {@link com.github.dreamwill.fsclient.impl.FtpClient}.
+ */
+@Getter
+@Builder
+public class FtpsOptions {
+    /**
+     * implicit FTPS negotiates TLS as soon as the connection is open, usually on port 990; explicit FTPS sends
+     * <code>AUTH TLS</code> on the plain FTP port
+     */
+    private boolean implicit;
+
+    /**
+     * used to create the SSL context if none is given
+     */
+    @Builder.Default
+    private String protocol = "TLS";
+
+    /**
+     * keys and trusted certificates, <code>null</code> validates the server certificate against the default trust
+     * store; one context is kept per client, so its TLS sessions are resumed after a reconnect
+     */
+    private SSLContext sslContext;
+
+    /**
+     * check that the server certificate matches the host name
+     */
+    @Builder.Default
+    private boolean endpointChecking = true;
+
+    /**
+     * resume the TLS session of the control connection on every data connection; most servers require it and it
+     * saves a full handshake per file. It needs <code>--add-opens java.base/sun.security.ssl=ALL-UNNAMED</code> on
+     * Java 16 and later, otherwise each data connection negotiates its own session
+     */
+    @Builder.Default
+    private boolean sessionReuse = true;
+
+    /**
+     * send file contents and listings in the clear with <code>PROT C</code>, only the control connection is
+     * encrypted; for trusted links where the handshake per data connection is not affordable
+     */
+    private boolean clearDataChannel;
+
+    public static FtpsOptions explicit() {
+        return FtpsOptions.builder().build();
+    }
+
+    public static FtpsOptions implicit() {
+        return FtpsOptions.builder().implicit(true).build();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.NonNull;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checksums of local files, valid as long as the size and the modification time of a file do not change.
+ * It is safe to share one cache between threads and clients.
+ */
+public class LocalChecksumCache {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Get the checksum of a local file, computing it only if the file changed since the last call.
+     *
+     * @param file      local file
+     * @param algorithm one of the algorithms described in {@link Checksums}
+     * @return lower case hex checksum
+     * @throws IOException If an I/O error occurred
+     */
+    public String getChecksum(@NonNull File file, @NonNull String algorithm) throws IOException {
+        String name = Checksums.normalize(algorithm);
+        String key = file.getAbsolutePath() + '\0' + name;
+        long size = file.length();
+        long mtime = file.lastModified();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.size == size && entry.mtime == mtime) {
+            return entry.checksum;
+        }
+        String checksum = compute(file, name);
+        entries.put(key, new Entry(size, mtime, checksum));
+        return checksum;
+    }
+
+    static String compute(File file, String algorithm) throws IOException {
+        MessageDigest digest = Checksums.newDigest(algorithm);
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            IOUtils.consume(in);
+        }
+        return Checksums.toHex(digest.digest());
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long mtime;
+        private final String checksum;
+
+        private Entry(long size, long mtime, String checksum) {
+            this.size = size;
+            this.mtime = mtime;
+            this.checksum = Objects.requireNonNull(checksum);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Buffering of {@link FileSystemClient#openOutputStream(String, OutputStreamOptions)}. At most
+ * <code>chunkSize * maxBufferedChunks</code> bytes wait for the server, writers block when they are full.
+ */
+@Getter
+@Builder
+public class OutputStreamOptions {
+    /**
+     * bytes handed to the background upload at once
+     */
+    @Builder.Default
+    private int chunkSize = 64 * 1024;
+
+    /**
+     * chunks which may wait for the background upload
+     */
+    @Builder.Default
+    private int maxBufferedChunks = 16;
+
+    /**
+     * runs the background upload, <code>null</code> starts a daemon thread per stream
+     */
+    private Executor executor;
+
+    /**
+     * recycles the chunks
+     */
+    @Builder.Default
+    private BufferPool bufferPool = BufferPool.shared();
+
+    public static OutputStreamOptions defaults() {
+        return OutputStreamOptions.builder().build();
+    }
+}
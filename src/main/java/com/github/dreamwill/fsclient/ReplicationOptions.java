@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Read routing and hedging of {@link com.github.dreamwill.fsclient.impl.ReplicatedFileSystemClient}.
+ */
+@Getter
+@Builder
+public class ReplicationOptions {
+    /**
+     * send a duplicate read to the next replica when the first one is slow
+     */
+    @Builder.Default
+    private boolean hedgedReads = true;
+
+    /**
+     * a read is hedged once it takes longer than this percentile of the replica's recent latencies
+     */
+    @Builder.Default
+    private double hedgePercentile = 0.95;
+
+    /**
+     * lower bound of the hedge delay, so a fast replica is not hedged on noise
+     */
+    @Builder.Default
+    private Duration minHedgeDelay = Duration.ofMillis(10);
+
+    /**
+     * hedge delay used until enough latencies have been seen
+     */
+    @Builder.Default
+    private Duration initialHedgeDelay = Duration.ofMillis(200);
+
+    public static ReplicationOptions defaults() {
+        return ReplicationOptions.builder().build();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Transport settings shared by all {@link FileSystemClient} implementations.
+ * Settings a protocol does not support are ignored, and a size of <code>0</code> keeps the library default.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class TransportOptions {
+    /**
+     * compression policy
+     */
+    @Builder.Default
+    private CompressionMode compression = CompressionMode.NONE;
+
+    /**
+     * zlib compression level, from 1 (fastest) to 9 (smallest)
+     */
+    @Builder.Default
+    private int compressionLevel = 6;
+
+    /**
+     * bytes read from the head of an upload to estimate its compressibility
+     */
+    @Builder.Default
+    private int compressionSampleSize = 64 * 1024;
+
+    /**
+     * a transfer is compressed only if the sampled compressed/original ratio is below this value
+     */
+    @Builder.Default
+    private double compressionRatioThreshold = 0.8;
+
+    /**
+     * SO_SNDBUF of control and data sockets
+     */
+    private int socketSendBufferSize;
+
+    /**
+     * SO_RCVBUF of control and data sockets
+     */
+    private int socketReceiveBufferSize;
+
+    /**
+     * FTP stream buffer size
+     */
+    private int ftpBufferSize;
+
+    /**
+     * SMB2 READ size, capped by the size negotiated with the server
+     */
+    private int smbReadBufferSize;
+
+    /**
+     * SMB2 WRITE size, capped by the size negotiated with the server
+     */
+    private int smbWriteBufferSize;
+
+    /**
+     * SMB2 IOCTL/QUERY size, capped by the size negotiated with the server
+     */
+    private int smbTransactBufferSize;
+
+    /**
+     * outstanding SFTP read/write requests per transfer
+     */
+    private int sftpBulkRequests;
+
+    /**
+     * SFTP channels multiplexed over one SSH session, each carries one operation at a time; OpenSSH accepts 10
+     * channels per connection by default
+     */
+    @Builder.Default
+    private int sftpMaxChannels = 4;
+
+    /**
+     * reads kept in flight by SMB input streams, <code>1</code> reads one chunk at a time; SFTP input streams are
+     * pipelined by JSch with {@link #sftpBulkRequests} requests
+     */
+    @Builder.Default
+    private int readAheadWindow = 4;
+
+    /**
+     * threads of one SMB client running the read-ahead of all its streams, further reads wait in a queue
+     */
+    @Builder.Default
+    private int readAheadThreads = 16;
+
+    /**
+     * bytes per read-ahead request, capped by the size negotiated with the server; <code>0</code> uses
+     * {@link #smbReadBufferSize} or 1 MiB
+     */
+    private int readAheadChunkSize;
+
+    /**
+     * SSH ciphers tried before the JSch defaults, e.g. <code>aes128-ctr</code>; ciphers JSch does not know are skipped
+     */
+    @Singular
+    private List<String> preferredCiphers;
+
+    /**
+     * connect and I/O timeout, <code>null</code> keeps the library default
+     */
+    private Duration timeout;
+
+    /**
+     * SMB files and shares held by a stream which has not been read for this long are considered leaked and closed,
+     * <code>null</code> never closes them
+     */
+    @Builder.Default
+    private Duration smbHandleIdleTimeout = Duration.ofMinutes(30);
+
+    /**
+     * measure the round trip time at connect and size the buffers and windows left at <code>0</code> to the
+     * bandwidth-delay product
+     */
+    private boolean autoTune;
+
+    /**
+     * link bandwidth in bytes per second used by auto tuning; it can not be measured without a payload
+     */
+    @Builder.Default
+    private long bandwidthHint = 100L * 1000 * 1000 / 8;
+
+    /**
+     * recycles the buffers of copies and read-ahead
+     */
+    @Builder.Default
+    private BufferPool bufferPool = BufferPool.shared();
+
+    public static TransportOptions defaults() {
+        return TransportOptions.builder().build();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * How {@link FileSystemClient#uploadFile(String, java.io.File, UploadOptions)} decides that the remote file is
+ * identical to the local one. Sizes are always compared first, then modification times, then checksums.
+ */
+@Getter
+@Builder
+public class UploadOptions {
+    /**
+     * treat files of the same size and modification time as identical
+     */
+    @Builder.Default
+    private boolean compareMtime = true;
+
+    /**
+     * modification times closer than this are equal, servers keep them at different precisions; FTP servers without
+     * MDTM or MLST only list them to the minute in their own time zone, compare checksums there instead
+     */
+    @Builder.Default
+    private Duration mtimeTolerance = Duration.ofSeconds(1);
+
+    /**
+     * compare checksums of this algorithm when the modification times differ, <code>null</code> to replace the
+     * file right away
+     */
+    private String checksumAlgorithm;
+
+    /**
+     * remembers checksums of local files, <code>null</code> to compute them every time
+     */
+    private LocalChecksumCache checksumCache;
+
+    /**
+     * copy the local modification time to the remote file after a transfer, so the next upload is decided by
+     * metadata alone
+     */
+    @Builder.Default
+    private boolean preserveMtime = true;
+
+    public static UploadOptions defaults() {
+        return UploadOptions.builder().build();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+/**
+ * Outcome of {@link FileSystemClient#uploadFile(String, java.io.File, UploadOptions)}.
+ */
+public enum UploadResult {
+    /**
+     * the remote file did not exist and has been created
+     */
+    CREATED,
+
+    /**
+     * the remote file differed and has been replaced
+     */
+    REPLACED,
+
+    /**
+     * the remote file is identical, nothing has been transferred
+     */
+    SKIPPED
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Implementation of {@link FileSystemClient#uploadFile(String, File, UploadOptions)}.
+ */
+@Slf4j
+final class UploadSupport {
+    private UploadSupport() {
+    }
+
+    static UploadResult upload(FileSystemClient client, String path, File source, UploadOptions options)
+            throws IOException {
+        if (!source.isFile()) {
+            throw new FileNotFoundException(source.getAbsolutePath());
+        }
+        Instant localMtime = Instant.ofEpochMilli(source.lastModified());
+        FileMetadata remote = client.getFileMetadata(path);
+        if (remote != null && isIdentical(client, remote, source, localMtime, options)) {
+            log.debug("Remote file {} is identical to {}, skip it.", path, source);
+            return UploadResult.SKIPPED;
+        }
+        if (remote == null) {
+            store(client, path, source);
+        } else {
+            replace(client, path, source);
+        }
+        if (options.isPreserveMtime() && !client.setModificationTime(path, localMtime)) {
+            log.debug("Fail to preserve the modification time of {}.", path);
+        }
+        return remote == null ? UploadResult.CREATED : UploadResult.REPLACED;
+    }
+
+    private static void store(FileSystemClient client, String path, File source) throws IOException {
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            if (!client.createFile(path, in)) {
+                throw new IOException("File " + path + " was created concurrently.");
+            }
+        }
+    }
+
+    /**
+     * The new content is stored under a temporary name next to the remote file and moved over it once complete, so
+     * a failed upload leaves the remote file as it was. Only the short step between deleting and moving is not
+     * atomic, the clients cannot move onto an existing file. The temporary name is not hidden, as many FTP servers
+     * leave dot files out of listings.
+     */
+    private static void replace(FileSystemClient client, String path, File source) throws IOException {
+        String temp = path + "." + UUID.randomUUID().toString().substring(0, 8) + ".upload";
+        try {
+            store(client, temp, source);
+            if (client.getFileMetadata(temp) == null) {
+                throw new IOException("Uploaded file " + temp + " is not found, " + path + " is left as it was.");
+            }
+            if (!client.deleteFile(path)) {
+                throw new IOException("Fail to delete " + path + " to replace it.");
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(client, temp);
+            throw e;
+        }
+        if (!client.moveFile(temp, path)) {
+            throw new IOException("Fail to move the upload onto " + path + ", it is left at " + temp + ".");
+        }
+    }
+
+    private static void deleteQuietly(FileSystemClient client, String path) {
+        try {
+            client.deleteFile(path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Fail to delete the partial file {}.", path, e);
+        }
+    }
+
+    private static boolean isIdentical(FileSystemClient client, FileMetadata remote, File source, Instant localMtime,
+                                       UploadOptions options) throws IOException {
+        if (remote.getSize() == null || remote.getSize() != source.length()) {
+            return false;
+        }
+        if (options.isCompareMtime() && isClose(remote.getMtime(), localMtime, options.getMtimeTolerance())) {
+            return true;
+        }
+        String algorithm = options.getChecksumAlgorithm();
+        if (algorithm == null) {
+            return false;
+        }
+        String remoteChecksum = client.getChecksum(remote.getPath(), algorithm);
+        String localChecksum = options.getChecksumCache() != null
+                ? options.getChecksumCache().getChecksum(source, algorithm)
+                : LocalChecksumCache.compute(source, algorithm);
+        boolean identical = localChecksum.equals(remoteChecksum);
+        if (identical && options.isPreserveMtime()) {
+            // next time the modification times are enough
+            client.setModificationTime(remote.getPath(), localMtime);
+        }
+        return identical;
+    }
+
+    private static boolean isClose(Optional<Instant> remoteMtime, Instant localMtime, Duration tolerance) {
+        if (remoteMtime == null || !remoteMtime.isPresent()) {
+            return false;
+        }
+        Duration difference = Duration.between(remoteMtime.get(), localMtime);
+        return (difference.isNegative() ? difference.negated() : difference).compareTo(tolerance) <= 0;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of {@link FileSystemClient#openOutputStream(String, OutputStreamOptions)}.
+ * <p>
+ * Written bytes are collected into chunks and queued for a background task, which uploads them with
+ * {@link FileSystemClient#createFile(String, InputStream)}. The queue is bounded, so writers block while the
+ * server is behind. Upload errors are thrown by the next write, flush or close. Chunk buffers are borrowed from
+ * {@link OutputStreamOptions#getBufferPool()} and given back once the upload finished.
+ */
+@Slf4j
+final class WriteBehindOutputStream extends OutputStream {
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final long POLL_MILLIS = 100;
+
+    private final String path;
+    private final int chunkSize;
+    private final BlockingQueue<ByteBuffer> queue;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final BufferPool pool;
+    /**
+     * every buffer taken from the pool, only touched by the writer
+     */
+    private final List<byte[]> buffers = new ArrayList<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile IOException failure;
+    private volatile boolean created;
+    private byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    private WriteBehindOutputStream(String path, OutputStreamOptions options) {
+        this.path = path;
+        this.chunkSize = options.getChunkSize();
+        this.queue = new ArrayBlockingQueue<>(options.getMaxBufferedChunks());
+        this.freeBuffers = new ArrayBlockingQueue<>(options.getMaxBufferedChunks() + 1);
+        this.pool = options.getBufferPool();
+        this.buffer = acquire();
+    }
+
+    static OutputStream open(FileSystemClient client, String path, OutputStreamOptions options) {
+        if (options.getChunkSize() <= 0 || options.getMaxBufferedChunks() <= 0) {
+            throw new IllegalArgumentException("chunkSize and maxBufferedChunks must be positive.");
+        }
+        WriteBehindOutputStream out = new WriteBehindOutputStream(path, options);
+        Runnable upload = () -> out.upload(client);
+        Executor executor = options.getExecutor();
+        if (executor != null) {
+            executor.execute(upload);
+        } else {
+            Thread thread = new Thread(upload, "write-behind-" + path);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        if (count == chunkSize) {
+            enqueueBuffer();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == chunkSize) {
+                enqueueBuffer();
+            }
+        }
+    }
+
+    /**
+     * Hand the buffered bytes to the background upload. It does not wait for the server.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            enqueueBuffer();
+        }
+    }
+
+    /**
+     * Wait until the upload finished.
+     *
+     * @throws FileAlreadyExistsException If the file has been created by someone else meanwhile
+     * @throws IOException                If the upload failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            closed = true;
+            enqueue(END);
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the upload of " + path);
+        } finally {
+            closed = true;
+            if (finished.getCount() == 0) {
+                // nobody reads the chunks anymore
+                buffers.forEach(pool::release);
+                buffers.clear();
+            }
+        }
+        checkFailure();
+        if (!created) {
+            throw new FileAlreadyExistsException(path);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        checkStoppedEarly();
+    }
+
+    /**
+     * The upload only finishes before close if it failed or the file already exists.
+     */
+    private void checkStoppedEarly() throws IOException {
+        checkFailure();
+        if (finished.getCount() == 0 && !created) {
+            throw new FileAlreadyExistsException(path);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Fail to upload " + path, failure);
+        }
+    }
+
+    private void enqueueBuffer() throws IOException {
+        enqueue(ByteBuffer.wrap(buffer, 0, count));
+        byte[] free = freeBuffers.poll();
+        buffer = free != null ? free : acquire();
+        count = 0;
+    }
+
+    private byte[] acquire() {
+        byte[] acquired = pool.acquire(chunkSize);
+        buffers.add(acquired);
+        return acquired;
+    }
+
+    /**
+     * Block while the queue is full, but give up once the upload failed and no longer drains it.
+     */
+    private void enqueue(ByteBuffer chunk) throws IOException {
+        try {
+            while (!queue.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkStoppedEarly();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + path);
+        }
+    }
+
+    private void upload(FileSystemClient client) {
+        try (InputStream in = new QueueInputStream()) {
+            created = client.createFile(path, in);
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        } finally {
+            finished.countDown();
+            // unblock a writer waiting for space
+            queue.clear();
+        }
+    }
+
+    /**
+     * Reads the queued chunks on the upload side.
+     */
+    private final class QueueInputStream extends InputStream {
+        private ByteBuffer current;
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) {
+                return -1;
+            }
+            return current.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureData()) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        private boolean ensureData() throws IOException {
+            while (current == null || !current.hasRemaining()) {
+                if (current == END) {
+                    return false;
+                }
+                if (current != null) {
+                    freeBuffers.offer(current.array());
+                }
+                try {
+                    current = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while uploading " + path);
+                }
+            }
+            return true;
+        }
+    }
+}
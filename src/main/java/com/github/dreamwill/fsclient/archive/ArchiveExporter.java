@@ -0,0 +1,415 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.archive;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
+
+/**
+ * Writes remote files into a zip or tar archive without temporary files.
+ * <p>
+ * Fetchers read the files ahead of the writer into pooled buffers, within the memory limit of
+ * {@link ArchiveOptions}, while the writer adds the entries in the given order. A file which does not fit is
+ * streamed by the writer itself once it gets to it, and so is a file the writer is waiting for while the memory is
+ * taken by files behind it, so the export never waits for memory the writer has to free. Missing and unreadable
+ * files are reported in the result, the export goes on; errors of the output stream abort it.
+ * <p>
+ * The files are fetched concurrently through one client, which needs to be safe for concurrent use.
+ */
+@Slf4j
+public final class ArchiveExporter {
+    private static final int CHUNK_SIZE = BufferPool.DEFAULT_BUFFER_SIZE;
+    private static final long TERMINATION_MILLIS = 10_000;
+
+    private final FileSystemClient client;
+    private final ArchiveOptions options;
+    private final BufferPool pool;
+    private final Budget budget;
+    private final long maxPrefetchBytes;
+
+    private ArchiveExporter(FileSystemClient client, ArchiveOptions options) {
+        if (options.getParallelism() <= 0 || options.getMaxBufferedBytes() <= 0) {
+            throw new IllegalArgumentException("parallelism and maxBufferedBytes must be positive.");
+        }
+        this.client = client;
+        this.options = options;
+        this.pool = options.getBufferPool();
+        this.budget = new Budget(options.getMaxBufferedBytes());
+        this.maxPrefetchBytes = options.getMaxBufferedBytes() / options.getParallelism();
+    }
+
+    /**
+     * @param paths full paths of the files, the entries keep this order
+     * @param out   receives the archive, it is not closed
+     */
+    public static ArchiveResult export(@NonNull FileSystemClient client, @NonNull Collection<String> paths,
+                                       @NonNull OutputStream out, @NonNull ArchiveOptions options)
+            throws IOException {
+        return new ArchiveExporter(client, options).export(new ArrayList<>(paths), out);
+    }
+
+    private ArchiveResult export(List<String> paths, OutputStream out) throws IOException {
+        List<Fetch> fetches = new ArrayList<>(paths.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(options.getParallelism(), paths.size())),
+                new BasicThreadFactory.Builder()
+                        .namingPattern("archive-fetch-%d")
+                        .daemon(true)
+                        .build());
+        int entryCount = 0;
+        long byteCount = 0;
+        List<String> missing = new ArrayList<>();
+        Map<String, IOException> failures = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                Fetch fetch = new Fetch(i, paths.get(i));
+                fetches.add(fetch);
+                // the queue of a fixed pool is FIFO, files are started in order
+                executor.execute(() -> prefetch(fetch));
+            }
+            try (EntryWriter writer = EntryWriter.of(options.getFormat(), out)) {
+                for (Fetch fetch : fetches) {
+                    budget.advance(fetch.index);
+                    fetch.await();
+                    long written = fetch.state == State.DIRECT ? stream(fetch, writer) : write(fetch, writer);
+                    if (fetch.state == State.MISSING) {
+                        missing.add(fetch.path);
+                    } else {
+                        entryCount += written >= 0 ? 1 : 0;
+                        byteCount += Math.max(0, written);
+                        if (fetch.failure != null) {
+                            failures.put(fetch.path, fetch.failure);
+                        }
+                    }
+                    fetch.release();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            fetches.forEach(Fetch::release);
+        }
+        return new ArchiveResult(entryCount, byteCount, missing, failures);
+    }
+
+    /**
+     * Runs on a fetcher. Memory is reserved before the file is opened, so a fetcher never waits while it holds a
+     * connection the writer may need.
+     */
+    private void prefetch(Fetch fetch) {
+        try {
+            FileMetadata metadata = client.getFileMetadata(fetch.path);
+            if (metadata == null) {
+                fetch.decide(State.MISSING);
+                return;
+            }
+            fetch.metadata = metadata;
+            // whole chunks are held, and one more than the size fills them up to find the end
+            long maxChunks = metadata.getSize() / CHUNK_SIZE + 1;
+            long footprint = maxChunks * CHUNK_SIZE;
+            if (footprint > maxPrefetchBytes || !budget.reserve(fetch.index, footprint)) {
+                fetch.decide(State.DIRECT);
+                return;
+            }
+            fetch.reserved = footprint;
+            try (InputStream in = client.getInputStream(fetch.path)) {
+                if (in == null) {
+                    fetch.decide(State.MISSING);
+                    return;
+                }
+                while (true) {
+                    if (fetch.chunks.size() == maxChunks) {
+                        // the file grows while it is read, stream it instead
+                        fetch.discardChunks();
+                        fetch.decide(State.DIRECT);
+                        return;
+                    }
+                    byte[] chunk = pool.acquire(CHUNK_SIZE);
+                    fetch.addChunk(chunk);
+                    int n = IOUtils.read(in, chunk, 0, CHUNK_SIZE);
+                    fetch.length += n;
+                    if (n < CHUNK_SIZE) {
+                        break;
+                    }
+                }
+            }
+            fetch.decide(State.PREFETCHED);
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            fetch.fail(e);
+        } catch (IOException e) {
+            fetch.fail(e);
+        } catch (RuntimeException e) {
+            fetch.fail(new IOException(e));
+        }
+    }
+
+    /**
+     * @return content bytes written, <code>-1</code> if no entry has been written
+     */
+    private long write(Fetch fetch, EntryWriter writer) throws IOException {
+        if (fetch.state != State.PREFETCHED || !begin(fetch, writer, fetch.length)) {
+            return -1;
+        }
+        long remaining = fetch.length;
+        for (byte[] chunk : fetch.chunks) {
+            int n = (int) Math.min(CHUNK_SIZE, remaining);
+            writer.write(chunk, 0, n);
+            remaining -= n;
+        }
+        writer.end();
+        return fetch.length;
+    }
+
+    /**
+     * Runs on the writer. Tar needs the size up front, so a file which changed since its metadata was read is cut
+     * or padded, and reported as failed.
+     */
+    private long stream(Fetch fetch, EntryWriter writer) throws IOException {
+        InputStream in;
+        try {
+            in = client.getInputStream(fetch.path);
+        } catch (IOException e) {
+            fetch.failure = e;
+            return -1;
+        }
+        if (in == null) {
+            fetch.state = State.MISSING;
+            return -1;
+        }
+        long size = fetch.metadata.getSize();
+        long limit = options.getFormat() == ArchiveFormat.TAR ? size : Long.MAX_VALUE;
+        long written = 0;
+        byte[] buffer = pool.acquire(CHUNK_SIZE);
+        try {
+            if (!begin(fetch, writer, size)) {
+                return -1;
+            }
+            // errors of the remote file only fail its entry, errors of the output abort the export
+            while (written < limit) {
+                int n = read(in, buffer, (int) Math.min(buffer.length, limit - written), fetch);
+                if (n <= 0) {
+                    break;
+                }
+                writer.write(buffer, 0, n);
+                written += n;
+            }
+            if (fetch.failure == null && limit != Long.MAX_VALUE) {
+                if (written < limit) {
+                    fetch.failure = new IOException("File shrank to " + written + " bytes while it was archived.");
+                } else if (read(in, buffer, 1, fetch) > 0) {
+                    fetch.failure = new IOException("File grew beyond " + size + " bytes while it was archived.");
+                }
+            }
+            writer.end();
+        } finally {
+            pool.release(buffer);
+            closeQuietly(in, fetch);
+        }
+        return written;
+    }
+
+    /**
+     * Zip rejects duplicate names, the entry is skipped and reported.
+     */
+    private boolean begin(Fetch fetch, EntryWriter writer, long size) throws IOException {
+        try {
+            writer.begin(entryName(fetch.path), size, mtime(fetch.metadata));
+            return true;
+        } catch (ZipException e) {
+            fetch.failure = e;
+            return false;
+        }
+    }
+
+    /**
+     * @return bytes read, <code>-1</code> at the end of the file or after a failure, which is recorded
+     */
+    private static int read(InputStream in, byte[] buffer, int length, Fetch fetch) {
+        try {
+            return in.read(buffer, 0, length);
+        } catch (IOException e) {
+            fetch.failure = e;
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(InputStream in, Fetch fetch) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            if (fetch.failure == null) {
+                fetch.failure = e;
+            }
+        }
+    }
+
+    private String entryName(String path) {
+        String baseDir = options.getBaseDir();
+        if (baseDir != null) {
+            String prefix = StringUtils.appendIfMissing(baseDir, "/");
+            if (path.startsWith(prefix)) {
+                return path.substring(prefix.length());
+            }
+        }
+        return StringUtils.stripStart(path, "/");
+    }
+
+    private static Instant mtime(FileMetadata metadata) {
+        return metadata.getMtime() == null ? null : metadata.getMtime().orElse(null);
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(TERMINATION_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Archive fetchers are still reading, their buffers are left to the garbage collector.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private enum State {
+        PENDING, PREFETCHED, DIRECT, MISSING, FAILED
+    }
+
+    /**
+     * One file on its way into the archive.
+     */
+    private final class Fetch {
+        private final int index;
+        private final String path;
+        private final CountDownLatch decided = new CountDownLatch(1);
+        private final List<byte[]> chunks = new ArrayList<>();
+        private volatile State state = State.PENDING;
+        private volatile FileMetadata metadata;
+        private volatile IOException failure;
+        private long length;
+        private long reserved;
+
+        private Fetch(int index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+
+        private void decide(State decision) {
+            state = decision;
+            decided.countDown();
+        }
+
+        private void fail(IOException e) {
+            failure = e;
+            decide(State.FAILED);
+        }
+
+        private void await() throws IOException {
+            try {
+                decided.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + path);
+            }
+        }
+
+        private synchronized void addChunk(byte[] chunk) {
+            chunks.add(chunk);
+        }
+
+        private synchronized void discardChunks() {
+            chunks.forEach(pool::release);
+            chunks.clear();
+            length = 0;
+        }
+
+        /**
+         * Give the buffers and the reserved memory back, once.
+         */
+        private synchronized void release() {
+            discardChunks();
+            if (reserved > 0) {
+                budget.release(reserved);
+                reserved = 0;
+            }
+        }
+    }
+
+    /**
+     * Memory of the prefetched files.
+     */
+    private static final class Budget {
+        private final long limit;
+        private long used;
+        private int head;
+
+        private Budget(long limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Wait for memory, unless the writer waits for this file.
+         *
+         * @return <code>false</code> if the file should be streamed by the writer instead
+         */
+        private synchronized boolean reserve(int index, long bytes) throws InterruptedIOException {
+            while (used + bytes > limit) {
+                if (index <= head) {
+                    return false;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            used += bytes;
+            return true;
+        }
+
+        private synchronized void release(long bytes) {
+            used -= bytes;
+            notifyAll();
+        }
+
+        private synchronized void advance(int index) {
+            head = index;
+            notifyAll();
+        }
+    }
+}
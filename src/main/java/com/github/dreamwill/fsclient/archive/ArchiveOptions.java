@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.archive;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * How {@link ArchiveExporter} fetches and names the files.
+ * <p>
+ * Up to <code>parallelism</code> files are fetched at once, a file is fetched ahead of the writer into memory if it
+ * is not larger than <code>maxBufferedBytes / parallelism</code> and the buffered files stay within
+ * <code>maxBufferedBytes</code>. Larger files are streamed once the writer gets to them. Files are buffered in
+ * whole 64 KiB buffers, so a file takes its size rounded up to the next buffer, plus one buffer when the size is an
+ * exact multiple.
+ */
+@Getter
+@Builder
+public class ArchiveOptions {
+    @Builder.Default
+    private ArchiveFormat format = ArchiveFormat.ZIP;
+
+    @Builder.Default
+    private int parallelism = 4;
+
+    @Builder.Default
+    private long maxBufferedBytes = 32L * 1024 * 1024;
+
+    /**
+     * entry names are relative to this directory if a path is inside it, otherwise they are the path without the
+     * leading separator
+     */
+    private String baseDir;
+
+    @Builder.Default
+    private BufferPool bufferPool = BufferPool.shared();
+
+    public static ArchiveOptions defaults() {
+        return ArchiveOptions.builder().build();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.archive;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What {@link ArchiveExporter} has written.
+ */
+@Getter
+public class ArchiveResult {
+    private final int entryCount;
+    /**
+     * content bytes of all entries, before compression
+     */
+    private final long byteCount;
+    /**
+     * paths which are not present, no entry has been written for them
+     */
+    private final List<String> missing;
+    /**
+     * paths which could not be read completely; an entry may have been written with the bytes read so far, tar
+     * entries are padded with zeros to the size announced in their header
+     */
+    private final Map<String, IOException> failures;
+
+    ArchiveResult(int entryCount, long byteCount, List<String> missing, Map<String, IOException> failures) {
+        this.entryCount = entryCount;
+        this.byteCount = byteCount;
+        this.missing = missing;
+        this.failures = failures;
+    }
+
+    public boolean isComplete() {
+        return missing.isEmpty() && failures.isEmpty();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the entries of an archive one after another. Closing it finishes the archive, the output stream is
+ * flushed but not closed.
+ */
+interface EntryWriter extends Closeable {
+    /**
+     * @param size  content length, tar needs it before the content
+     * @param mtime <code>null</code> if unknown
+     */
+    void begin(String name, long size, Instant mtime) throws IOException;
+
+    void write(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Finish the entry; tar entries shorter than announced are padded with zeros.
+     */
+    void end() throws IOException;
+
+    static EntryWriter of(ArchiveFormat format, OutputStream out) {
+        return format == ArchiveFormat.TAR ? new TarWriter(out) : new ZipWriter(out);
+    }
+
+    /**
+     * {@link ZipOutputStream} without closing the output stream.
+     */
+    final class ZipWriter implements EntryWriter {
+        private final OutputStream out;
+        private final ZipOutputStream zip;
+
+        ZipWriter(OutputStream out) {
+            this.out = out;
+            this.zip = new ZipOutputStream(out);
+        }
+
+        @Override
+        public void begin(String name, long size, Instant mtime) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            if (mtime != null) {
+                entry.setTime(mtime.toEpochMilli());
+            }
+            zip.putNextEntry(entry);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            zip.write(buffer, offset, length);
+        }
+
+        @Override
+        public void end() throws IOException {
+            zip.closeEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.finish();
+            out.flush();
+        }
+    }
+}
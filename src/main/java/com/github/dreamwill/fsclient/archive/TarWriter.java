@@ -0,0 +1,154 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * A minimal POSIX ustar writer for regular files.
+ * <p>
+ * Names up to 100 bytes, or up to 256 bytes when they can be split at a separator, fit into the ustar header;
+ * longer names are written as a GNU long name entry first. Sizes beyond the 11 octal digits of the header use the
+ * GNU base-256 encoding.
+ */
+final class TarWriter implements EntryWriter {
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final String LONG_NAME = "././@LongLink";
+
+    private final OutputStream out;
+    private final byte[] header = new byte[BLOCK];
+    private long size;
+    private long written;
+
+    TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(String name, long size, Instant mtime) throws IOException {
+        long seconds = mtime == null ? 0 : Math.max(0, mtime.getEpochSecond());
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int split = split(bytes);
+        if (bytes.length > NAME_LENGTH && split < 0) {
+            byte[] longName = Arrays.copyOf(bytes, bytes.length + 1);
+            writeHeader(LONG_NAME.getBytes(StandardCharsets.US_ASCII), null, longName.length, 0, 'L');
+            out.write(longName);
+            pad(longName.length);
+            writeHeader(Arrays.copyOf(bytes, NAME_LENGTH), null, size, seconds, '0');
+        } else if (bytes.length > NAME_LENGTH) {
+            writeHeader(Arrays.copyOfRange(bytes, split + 1, bytes.length), Arrays.copyOf(bytes, split), size,
+                    seconds, '0');
+        } else {
+            writeHeader(bytes, null, size, seconds, '0');
+        }
+        this.size = size;
+        this.written = 0;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        if (written + length > size) {
+            throw new IOException("Entry is larger than the " + size + " bytes announced in its header.");
+        }
+        out.write(buffer, offset, length);
+        written += length;
+    }
+
+    @Override
+    public void end() throws IOException {
+        byte[] zeros = new byte[BLOCK];
+        while (written < size) {
+            int n = (int) Math.min(zeros.length, size - written);
+            out.write(zeros, 0, n);
+            written += n;
+        }
+        pad(size);
+    }
+
+    /**
+     * Two zero blocks end the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        out.write(new byte[2 * BLOCK]);
+        out.flush();
+    }
+
+    /**
+     * @return index of the separator which splits the name into prefix and name, <code>-1</code> if there is none
+     */
+    private static int split(byte[] name) {
+        for (int i = Math.min(PREFIX_LENGTH, name.length - 1); i > 0; i--) {
+            if (name[i] == '/' && name.length - i - 1 <= NAME_LENGTH && name.length - i - 1 > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeHeader(byte[] name, byte[] prefix, long size, long mtime, char type) throws IOException {
+        Arrays.fill(header, (byte) 0);
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, NAME_LENGTH));
+        octal("0000644", 100);
+        octal("0000000", 108);
+        octal("0000000", 116);
+        if (size <= MAX_OCTAL_SIZE) {
+            octal(String.format("%011o", size), 124);
+        } else {
+            header[124] = (byte) 0x80;
+            for (int i = 135; i > 124; i--) {
+                header[i] = (byte) size;
+                size >>>= 8;
+            }
+        }
+        octal(String.format("%011o", Math.min(mtime, MAX_OCTAL_SIZE)), 136);
+        header[156] = (byte) type;
+        octal("ustar", 257);
+        header[263] = '0';
+        header[264] = '0';
+        if (prefix != null) {
+            System.arraycopy(prefix, 0, header, 345, Math.min(prefix.length, PREFIX_LENGTH));
+        }
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(String.format("%06o", checksum), 148);
+        header[154] = 0;
+        out.write(header);
+    }
+
+    private void octal(String value, int offset) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private void pad(long length) throws IOException {
+        int remainder = (int) (length % BLOCK);
+        if (remainder > 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+}
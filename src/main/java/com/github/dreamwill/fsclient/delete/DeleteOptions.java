@@ -0,0 +1,35 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.delete;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Getter
+@Builder
+public class DeleteOptions {
+    /**
+     * directories listed and paths removed at the same time; clients which serialize all their commands, like FTP,
+     * run them one after another, so there nothing overlaps
+     */
+    @Builder.Default
+    private int parallelism = 8;
+
+    public static DeleteOptions defaults() {
+        return DeleteOptions.builder().build();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.delete;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.Map;
+
+@Getter
+public class DeleteResult {
+    private final long fileCount;
+    private final long directoryCount;
+    /**
+     * paths which could not be listed or removed, the directories above them are kept
+     */
+    private final Map<String, IOException> failures;
+
+    DeleteResult(long fileCount, long directoryCount, Map<String, IOException> failures) {
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.failures = failures;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.delete;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Walks a tree with a pool of workers which list directories and remove files at the same time. Every directory
+ * counts its children which are not done yet, the last child to finish removes the directory, so children always go
+ * before their parents without waiting for the whole walk.
+ * <p>
+ * A client which serializes its commands, like {@link com.github.dreamwill.fsclient.impl.FtpClient}, runs them one
+ * at a time, so its tree is removed sequentially whatever the parallelism.
+ */
+@Slf4j
+public final class TreeDeleter {
+    private static final long TERMINATION_MILLIS = 10_000;
+
+    private final FileSystemClient client;
+    /**
+     * files to remove, null to remove the whole tree including the directories
+     */
+    private final Predicate<FileMetadata> filter;
+    private final DeleteOptions options;
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private final Map<String, IOException> failures = new ConcurrentHashMap<>();
+    private final AtomicLong fileCount = new AtomicLong();
+    private final AtomicLong directoryCount = new AtomicLong();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    private TreeDeleter(FileSystemClient client, Predicate<FileMetadata> filter, DeleteOptions options) {
+        if (options.getParallelism() <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive.");
+        }
+        this.client = client;
+        this.filter = filter;
+        this.options = options;
+    }
+
+    /**
+     * Remove the directory with all files and sub directories in it.
+     *
+     * @return what has been removed, or null if the directory is not present
+     */
+    public static DeleteResult deleteTree(@NonNull FileSystemClient client, @NonNull String dir,
+                                          @NonNull DeleteOptions options) throws IOException {
+        return new TreeDeleter(client, null, options).run(dir);
+    }
+
+    /**
+     * Remove the files of the whole tree which match the filter, the directories are kept.
+     *
+     * @return what has been removed, or null if the directory is not present
+     */
+    public static DeleteResult deleteMatching(@NonNull FileSystemClient client, @NonNull String dir,
+                                              @NonNull Predicate<FileMetadata> filter,
+                                              @NonNull DeleteOptions options) throws IOException {
+        return new TreeDeleter(client, filter, options).run(dir);
+    }
+
+    private DeleteResult run(String dir) throws IOException {
+        // the root is listed by the caller, so a missing directory or an unreachable server is reported directly
+        List<FileMetadata> files = client.listFiles(dir);
+        List<String> dirs = client.listDirectories(dir);
+        if (files == null || dirs == null) {
+            return null;
+        }
+        visited.add(key(dir));
+        executor = Executors.newFixedThreadPool(options.getParallelism(), new BasicThreadFactory.Builder()
+                .namingPattern("tree-delete-%d")
+                .daemon(true)
+                .build());
+        try {
+            expand(new Node(dir, null), files, dirs);
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deleting " + dir);
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+        return new DeleteResult(fileCount.get(), directoryCount.get(), new TreeMap<>(failures));
+    }
+
+    /**
+     * Runs on a worker.
+     */
+    private void list(Node node) {
+        List<FileMetadata> files;
+        List<String> dirs;
+        try {
+            files = client.listFiles(node.path);
+            dirs = client.listDirectories(node.path);
+        } catch (IOException e) {
+            fail(node, node.path, e);
+            finish(node);
+            return;
+        } catch (RuntimeException e) {
+            fail(node, node.path, new IOException(e));
+            finish(node);
+            return;
+        }
+        if (files == null || dirs == null) {
+            // removed by someone else meanwhile
+            finish(node);
+            return;
+        }
+        expand(node, files, dirs);
+    }
+
+    private void expand(Node node, List<FileMetadata> files, List<String> dirs) {
+        List<FileMetadata> targets = filter == null ? files
+                : files.stream().filter(filter).collect(Collectors.toList());
+        // links may lead back to a directory which has been walked already
+        List<String> children = dirs.stream().filter(child -> visited.add(key(child))).collect(Collectors.toList());
+        node.pending.addAndGet(targets.size() + children.size());
+        // directories first, so the walk keeps ahead of the removes queued behind it
+        for (String child : children) {
+            Node childNode = new Node(child, node);
+            executor.execute(() -> list(childNode));
+        }
+        for (FileMetadata file : targets) {
+            executor.execute(() -> {
+                remove(node, file.getPath());
+                finish(node);
+            });
+        }
+        // the listing itself is done
+        finish(node);
+    }
+
+    private void remove(Node node, String path) {
+        try {
+            if (client.deleteFile(path)) {
+                fileCount.incrementAndGet();
+            }
+        } catch (IOException e) {
+            fail(node, path, e);
+        } catch (RuntimeException e) {
+            fail(node, path, new IOException(e));
+        }
+    }
+
+    /**
+     * Called once for the listing and once for every child of the node, the last call removes the directory.
+     */
+    private void finish(Node node) {
+        if (node.pending.decrementAndGet() > 0) {
+            return;
+        }
+        if (filter == null) {
+            if (node.failed) {
+                // something is left inside, so the parent is not empty either
+                markFailed(node.parent);
+            } else {
+                try {
+                    if (client.deleteDirectory(node.path)) {
+                        directoryCount.incrementAndGet();
+                    } else if (client.listFiles(node.path) != null) {
+                        // still there, like with clients which can not remove directories
+                        fail(node.parent, node.path, new IOException("Directory " + node.path + " was not removed."));
+                    }
+                } catch (IOException e) {
+                    fail(node.parent, node.path, e);
+                } catch (RuntimeException e) {
+                    fail(node.parent, node.path, new IOException(e));
+                }
+            }
+        }
+        if (node.parent == null) {
+            done.countDown();
+        } else {
+            finish(node.parent);
+        }
+    }
+
+    private void fail(Node node, String path, IOException e) {
+        log.debug("Failed to delete {}.", path, e);
+        failures.put(path, e);
+        markFailed(node);
+    }
+
+    private static void markFailed(Node node) {
+        if (node != null) {
+            node.failed = true;
+        }
+    }
+
+    private static String key(String dir) {
+        return StringUtils.removeEnd(dir, "/");
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(TERMINATION_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Tree delete workers are still running.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Node {
+        private final String path;
+        private final Node parent;
+        /**
+         * children not done yet, plus one until the directory has been listed
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean failed;
+
+        private Node(String path, Node parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.CompressionMode;
+import com.github.dreamwill.fsclient.TransportOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides whether a single transfer should be compressed.
+ * <p>
+ * Compression pays off when the link is slower than the local deflater and the payload actually shrinks.
+ * The policy keeps moving averages of the wire throughput and of the deflate throughput, and compares the
+ * expected effective throughput of both choices.
+ */
+@Slf4j
+class CompressionPolicy {
+    /**
+     * well known formats which are already compressed
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "7z", "avi", "bz2", "docx", "gif", "gz", "jpeg", "jpg", "lz4", "mkv", "mov", "mp3", "mp4",
+            "pdf", "png", "pptx", "rar", "tgz", "webp", "xlsx", "xz", "zip", "zst"
+    ));
+    /**
+     * transfers smaller than this are dominated by latency and say nothing about throughput
+     */
+    private static final long MIN_MEASURED_BYTES = 256 * 1024L;
+    private static final double SMOOTHING = 0.3;
+    /**
+     * compressing must be expected to be at least this much faster
+     */
+    private static final double REQUIRED_GAIN = 1.1;
+    /**
+     * ratio assumed for downloads before anything has been sampled
+     */
+    private static final double DEFAULT_RATIO = 0.5;
+
+    private final TransportOptions options;
+    private double wireRate;
+    private double deflateRate;
+    private double ratio;
+
+    CompressionPolicy(TransportOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Decide for an upload. The stream must support mark/reset, its head is sampled and then reset.
+     */
+    boolean shouldCompress(InputStream in) throws IOException {
+        CompressionMode mode = options.getCompression();
+        if (mode != CompressionMode.ADAPTIVE) {
+            return mode == CompressionMode.ALWAYS;
+        }
+        BufferPool pool = options.getBufferPool();
+        int sampleSize = options.getCompressionSampleSize();
+        byte[] sample = pool.acquire(sampleSize);
+        try {
+            in.mark(sampleSize);
+            int length = IOUtils.read(in, sample, 0, sampleSize);
+            in.reset();
+            if (length == 0) {
+                return false;
+            }
+            return decide(sample(sample, length));
+        } finally {
+            pool.release(sample);
+        }
+    }
+
+    /**
+     * Decide for a download. Nothing can be sampled before the transfer, so the file extension and the
+     * ratios sampled from earlier uploads are used.
+     */
+    boolean shouldCompress(String path) {
+        CompressionMode mode = options.getCompression();
+        if (mode != CompressionMode.ADAPTIVE) {
+            return mode == CompressionMode.ALWAYS;
+        }
+        if (COMPRESSED_EXTENSIONS.contains(FilenameUtils.getExtension(path).toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        synchronized (this) {
+            return decide(ratio > 0 ? ratio : DEFAULT_RATIO);
+        }
+    }
+
+    /**
+     * Record a finished transfer.
+     *
+     * @param wireBytes bytes which went over the wire, compressed or not
+     * @param nanos     time spent transferring them
+     */
+    synchronized void record(long wireBytes, long nanos) {
+        if (wireBytes < MIN_MEASURED_BYTES || nanos <= 0) {
+            return;
+        }
+        wireRate = smooth(wireRate, wireBytes * 1e9 / nanos);
+        log.debug("Wire throughput is about {} bytes/s.", (long) wireRate);
+    }
+
+    private synchronized double sample(byte[] sample, int length) {
+        Deflater deflater = new Deflater(options.getCompressionLevel());
+        byte[] out = options.getBufferPool().acquire(BufferPool.MIN_BUFFER_SIZE);
+        long compressed = 0;
+        long start = System.nanoTime();
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(out);
+            }
+        } finally {
+            deflater.end();
+            options.getBufferPool().release(out);
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        double sampled = (double) compressed / length;
+        deflateRate = smooth(deflateRate, length * 1e9 / elapsed);
+        ratio = smooth(ratio, sampled);
+        return sampled;
+    }
+
+    private synchronized boolean decide(double expectedRatio) {
+        if (expectedRatio >= options.getCompressionRatioThreshold()) {
+            return false;
+        }
+        if (wireRate <= 0 || deflateRate <= 0) {
+            // nothing measured yet, the payload shrinks enough to be worth a try
+            return true;
+        }
+        double compressedRate = Math.min(wireRate / expectedRatio, deflateRate);
+        return compressedRate > wireRate * REQUIRED_GAIN;
+    }
+
+    private static double smooth(double average, double value) {
+        return average <= 0 ? value : average + SMOOTHING * (value - average);
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.Checksums;
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.watch.ChangeListener;
+import com.github.dreamwill.fsclient.watch.WatchOptions;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the content of downloaded files in a local directory.
+ * <p>
+ * Every {@link #getInputStream(String)} revalidates with {@link FileSystemClient#getFileMetadata(String)}: cached
+ * content is keyed by path, size and modification time, so a changed file is never served from the cache. Files
+ * without a modification time are not cached. The least recently used files are evicted once the cache grows over
+ * its byte budget, and concurrent readers of the same uncached file share one download.
+ * <p>
+ * Writes through this client invalidate the cached content of the paths they touch. The delegate must be safe for
+ * concurrent use if this client is used concurrently.
+ */
+@Slf4j
+public class ContentCachingFileSystemClient implements FileSystemClient {
+    private static final String PART_SUFFIX = ".part";
+    /**
+     * hex digits of a SHA-256
+     */
+    private static final int HASH_LENGTH = 64;
+
+    private final FileSystemClient delegate;
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final Object lock = new Object();
+    /**
+     * cache key to file size, in access order
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * hash of the remote path to its latest cache key, which starts with that hash, so entries reloaded from disk
+     * are found by their path as well
+     */
+    private final Map<String, String> keysByPath = new HashMap<>();
+    private final Map<String, CompletableFuture<Path>> downloads = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long totalBytes;
+
+    /**
+     * @param delegate the client which talks to the server
+     * @param cacheDir local directory for cached content, files left by an earlier run are reused
+     * @param maxBytes byte budget of the cache, larger files are never cached
+     */
+    public ContentCachingFileSystemClient(@NonNull FileSystemClient delegate, @NonNull Path cacheDir, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive.");
+        }
+        this.delegate = delegate;
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        Files.createDirectories(cacheDir);
+        loadExistingEntries();
+        delegate.connect();
+    }
+
+    @Override
+    public void warmUp(@NonNull Collection<String> paths) throws IOException {
+        delegate.warmUp(paths);
+    }
+
+    @Override
+    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        invalidate(path);
+        return delegate.createFile(path, in);
+    }
+
+    @Override
+    public boolean deleteFile(@NonNull String path) throws IOException {
+        invalidate(path);
+        return delegate.deleteFile(path);
+    }
+
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        return delegate.deleteDirectory(dir);
+    }
+
+    @Override
+    public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
+        invalidate(source);
+        invalidate(target);
+        return delegate.moveFile(source, target);
+    }
+
+    @Override
+    public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
+        invalidate(target);
+        return delegate.copyFile(source, target);
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path) throws IOException {
+        FileMetadata metadata = delegate.getFileMetadata(path);
+        if (metadata == null) {
+            invalidate(path);
+            return null;
+        }
+        if (metadata.getMtime() == null || !metadata.getMtime().isPresent()
+                || metadata.getSize() == null || metadata.getSize() > maxBytes) {
+            return delegate.getInputStream(path);
+        }
+        String key = key(path, metadata.getSize(), metadata.getMtime().get());
+        InputStream cached = openCached(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        if (download(path, key, metadata.getSize()) != null) {
+            cached = openCached(key);
+            if (cached != null) {
+                return cached;
+            }
+            log.debug("Content of {} was evicted right after its download, read it from the server.", path);
+        }
+        return delegate.getInputStream(path);
+    }
+
+    /**
+     * Opened under the lock, so the entry can not be evicted or invalidated between the lookup and the open.
+     *
+     * @return null if the content is not cached
+     */
+    private InputStream openCached(String key) throws IOException {
+        Path cached = cacheDir.resolve(key);
+        synchronized (lock) {
+            if (entries.get(key) == null || !Files.exists(cached)) {
+                return null;
+            }
+            track(key);
+            return Files.newInputStream(cached);
+        }
+    }
+
+    @Override
+    public String getChecksum(@NonNull String path, @NonNull String algorithm) throws IOException {
+        return delegate.getChecksum(path, algorithm);
+    }
+
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        invalidate(path);
+        return delegate.setModificationTime(path, mtime);
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(@NonNull String path) throws IOException {
+        return delegate.getFileMetadata(path);
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        return delegate.listFiles(dir);
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        return delegate.listFiles(dir, glob);
+    }
+
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        return delegate.listDirectories(dir);
+    }
+
+    @Override
+    public Closeable watch(@NonNull String dir, @NonNull ChangeListener listener, @NonNull WatchOptions options)
+            throws IOException {
+        return delegate.watch(dir, listener, options);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return bytes currently held by the cache
+     */
+    public long getCachedBytes() {
+        synchronized (lock) {
+            return totalBytes;
+        }
+    }
+
+    /**
+     * Download once per key, concurrent callers wait for the same download.
+     *
+     * @return the cached file, or null if the remote file changed while downloading
+     */
+    private Path download(String path, String key, long expectedSize) throws IOException {
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> running = downloads.putIfAbsent(key, future);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            future.complete(fetch(path, key, expectedSize));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            downloads.remove(key);
+        }
+        return await(future);
+    }
+
+    private Path fetch(String path, String key, long expectedSize) throws IOException {
+        Path part = cacheDir.resolve(key + '.' + UUID.randomUUID() + PART_SUFFIX);
+        try (InputStream in = delegate.getInputStream(path)) {
+            if (in == null) {
+                return null;
+            }
+            Files.copy(in, part);
+            long size = Files.size(part);
+            if (size != expectedSize) {
+                log.debug("File {} changed while downloading, do not cache it.", path);
+                return null;
+            }
+            Path cached = cacheDir.resolve(key);
+            Files.move(part, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (lock) {
+                track(key);
+                Long replaced = entries.put(key, size);
+                totalBytes += size - (replaced == null ? 0 : replaced);
+                evict(key);
+            }
+            return cached;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the budget is met, never the entry just added.
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(eldest.getKey());
+        }
+    }
+
+    /**
+     * Remember the latest key of a path, content cached for an older version of it is dropped.
+     */
+    private void track(String key) {
+        String previous = keysByPath.put(pathHash(key), key);
+        if (previous != null && !previous.equals(key)) {
+            remove(previous);
+        }
+    }
+
+    private void invalidate(String path) {
+        synchronized (lock) {
+            String key = keysByPath.remove(hash(path));
+            if (key != null) {
+                remove(key);
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            deleteQuietly(key);
+        }
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            // readers which already opened the file keep reading it on POSIX file systems
+            Files.deleteIfExists(cacheDir.resolve(key));
+        } catch (IOException e) {
+            log.warn("Fail to delete cached file {}.", key, e);
+        }
+    }
+
+    /**
+     * Reuse content cached by an earlier run, oldest first so they are evicted first and an older version of a path
+     * gives way to a newer one. Files which are not named like a cache key are left alone.
+     */
+    private void loadExistingEntries() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        List<Path> cached = files.stream()
+                                 .filter(file -> !file.getFileName().toString().endsWith(PART_SUFFIX))
+                                 .sorted(Comparator.comparing(ContentCachingFileSystemClient::lastModified))
+                                 .collect(Collectors.toList());
+        synchronized (lock) {
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(PART_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            for (Path file : cached) {
+                String key = file.getFileName().toString();
+                if (pathHash(key) != null && !entries.containsKey(key)) {
+                    long size = Files.size(file);
+                    entries.put(key, size);
+                    totalBytes += size;
+                    track(key);
+                }
+            }
+            evict(null);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        return file.toFile().lastModified();
+    }
+
+    /**
+     * The hash of the path, then the version of the file.
+     */
+    private static String key(String path, long size, Instant mtime) {
+        return hash(path) + '_' + size + '_' + mtime.toEpochMilli();
+    }
+
+    /**
+     * @return null if the name is not a cache key
+     */
+    private static String pathHash(String key) {
+        int end = key.indexOf('_');
+        return end == HASH_LENGTH ? key.substring(0, end) : null;
+    }
+
+    private static String hash(String path) {
+        return Checksums.toHex(Checksums.newDigest(Checksums.SHA_256).digest(path.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -16,54 +16,138 @@
 
 package com.github.dreamwill.fsclient.impl;
 
+import com.github.dreamwill.fsclient.Checksums;
+import com.github.dreamwill.fsclient.CompressionMode;
 import com.github.dreamwill.fsclient.FileMetadata;
 import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.FtpsOptions;
+import com.github.dreamwill.fsclient.TransportOptions;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.util.SSLContextUtils;
+import org.apache.commons.net.util.TrustManagerUtils;
 
+import javax.net.ssl.SSLContext;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * RFC 959 defines the File Transfer Protocol (FTP), and it is the only INTERNET STANDARD about FTP.
  * RFC 2228, RFC 2640, RFC 2773, RFC 3659, RFC 5797, RFC 7151 are extensions to FTP, and they are PROPOSED STANDARD except RFC 2773 (EXPERIMENTAL).
  * So some FTP servers do not support UTF-8 (proposed in RFC 2640) and others features.
+ * <p>
+ * Commands use absolute paths, the working directory is never changed. An FTP control connection carries one
+ * command at a time, so the commands of concurrent callers are serialized, and a stream returned by
+ * {@link #getInputStream(String)} holds the connection until it is closed.
+ * <p>
+ * With {@link FtpsOptions} the connections are protected by TLS (RFC 4217), explicitly after <code>AUTH TLS</code>
+ * or implicitly from the start. The data connections resume the session of the control connection, so a small file
+ * costs an abbreviated handshake instead of a full one.
  */
 @Slf4j
 public class FtpClient implements FileSystemClient {
-    private FTPClient client;
+    /**
+     * non-standard hash commands which predate the HASH command
+     */
+    private static final Map<String, String> LEGACY_HASH_COMMANDS = new HashMap<>();
+    private static final DateTimeFormatter MFMT_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    static {
+        LEGACY_HASH_COMMANDS.put(Checksums.MD5, "XMD5");
+        LEGACY_HASH_COMMANDS.put(Checksums.SHA_1, "XSHA1");
+        LEGACY_HASH_COMMANDS.put(Checksums.SHA_256, "XSHA256");
+        LEGACY_HASH_COMMANDS.put(Checksums.SHA_512, "XSHA512");
+        LEGACY_HASH_COMMANDS.put(Checksums.CRC_32, "XCRC");
+    }
+
+    private volatile FTPClient client;
     private String host;
     private Integer port;
     private String username;
     private String password;
+    private final TransportOptions options;
+    private final CompressionPolicy compressionPolicy;
+    private final FtpsOptions ftps;
+    private SSLContext sslContext;
+    private final Semaphore connection = new Semaphore(1);
+    /**
+     * the thread which opened the stream holding the connection, it would wait for itself
+     */
+    private volatile Thread streamOwner;
+    private boolean modeZSupported;
+    private boolean deflating;
+    private boolean mlstSupported;
+    private boolean mdtmSupported;
 
     public FtpClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password) {
+        this(host, port, username, password, TransportOptions.defaults());
+    }
+
+    public FtpClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password,
+                     @NonNull TransportOptions options) {
+        this(host, port, username, password, options, null);
+    }
+
+    /**
+     * @param ftps FTP over TLS, <code>null</code> for plain FTP
+     */
+    public FtpClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password,
+                     @NonNull TransportOptions options, FtpsOptions ftps) {
         this.host = host;
         this.port = port;
         this.username = username;
         this.password = password;
+        this.options = options;
+        this.compressionPolicy = new CompressionPolicy(options);
+        this.ftps = ftps;
     }
 
     @Override
     public void connect() throws IOException {
-        client = new FTPClient();
+        serially(() -> {
+            open();
+            return null;
+        });
+    }
+
+    private void open() throws IOException {
+        client = ftps == null ? new FTPClient() : createFtpsClient();
         // Detect whether the FTP server supports UTF8 or not.
         client.setAutodetectUTF8(true);
+        applyTransportOptions(TransportTuner.resolve(options, host, port));
 
         client.connect(host, port);
         if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
@@ -80,83 +164,332 @@ public class FtpClient implements FileSystemClient {
         }
         log.info("Successfully login to the FTP server.");
 
+        if (ftps != null) {
+            // RFC 4217, the buffer size is 0 for a stream protected by TLS
+            FTPSClient secure = (FTPSClient) client;
+            secure.execPBSZ(0);
+            secure.execPROT(ftps.isClearDataChannel() ? "C" : "P");
+        }
+
         if (!client.setFileType(FTP.BINARY_FILE_TYPE)) {
             log.error("Fail to set file type to binary.");
             throw new IOException();
         }
         client.enterLocalPassiveMode();
+
+        deflating = false;
+        modeZSupported = options.getCompression() != CompressionMode.NONE && client.hasFeature("MODE", "Z");
+        if (options.getCompression() != CompressionMode.NONE && !modeZSupported) {
+            log.info("The FTP server does not support MODE Z, transfers will not be compressed.");
+        }
+        mlstSupported = client.hasFeature("MLST");
+        mdtmSupported = client.hasFeature("MDTM");
     }
 
     @Override
     public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        return serially(() -> store(path, in));
+    }
+
+    private boolean store(String path, InputStream in) throws IOException {
         if (fileExists(path)) {
             return false;
         }
         String dir = FilenameUtils.getFullPath(path);
         createDirs(dir);
-        return client.storeFile(path, in);
+        if (!modeZSupported) {
+            return client.storeFile(path, in);
+        }
+        InputStream source = in.markSupported() ? in : new BufferedInputStream(in, options.getCompressionSampleSize());
+        boolean compress = switchTransferMode(compressionPolicy.shouldCompress(source));
+        Deflater deflater = new Deflater(options.getCompressionLevel());
+        try {
+            // the caller owns the input stream, so the wrappers are not closed here
+            CountingInputStream wire = new CountingInputStream(
+                    compress ? new DeflaterInputStream(source, deflater) : source);
+            long start = System.nanoTime();
+            boolean stored = client.storeFile(path, wire);
+            compressionPolicy.record(wire.getByteCount(), System.nanoTime() - start);
+            return stored;
+        } finally {
+            deflater.end();
+        }
     }
 
     @Override
     public boolean deleteFile(@NonNull String path) throws IOException {
-        if (fileExists(path)) {
-            return client.deleteFile(path);
-        } else {
-            return false;
-        }
+        // DELE fails with 550 for missing files, which saves a round trip per file
+        return serially(() -> client.deleteFile(path));
+    }
+
+    /**
+     * RMD fails alike for missing and non empty directories, so both return <code>false</code>.
+     */
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        return serially(() -> client.removeDirectory(StringUtils.removeEnd(dir, "/")));
     }
 
     @Override
     public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
-        if (validateBeforeMove(source, target)) {
-            return false;
-        }
-        return client.rename(source, target);
+        return serially(() -> !validateBeforeMove(source, target) && client.rename(source, target));
     }
 
     @Override
     public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
-        if (validateBeforeMove(source, target)) {
+        if (serially(() -> validateBeforeMove(source, target))) {
             return false;
         }
-        File tempFile = new File(FileUtils.getTempDirectory(), FilenameUtils.getName(source));
-        FileUtils.copyInputStreamToFile(getInputStream(source), tempFile);
-        close();
-        connect();
-        try (InputStream in = new FileInputStream(tempFile)) {
-            if (!createFile(target, in)) {
-                return false;
+        // the connection is released in between, so concurrent callers are not blocked for both transfers
+        File tempFile = Files.createTempFile("ftp-copy-", "-" + FilenameUtils.getName(source)).toFile();
+        try {
+            try (InputStream in = getInputStream(source)) {
+                if (in == null) {
+                    return false;
+                }
+                try (OutputStream out = new FileOutputStream(tempFile)) {
+                    options.getBufferPool().copy(in, out);
+                }
+            }
+            try (InputStream in = new FileInputStream(tempFile)) {
+                return createFile(target, in);
             }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
         }
-        Files.delete(tempFile.toPath());
-        return true;
     }
 
+    /**
+     * Note: The stream holds the connection until it is closed, so one stream is open at a time. Other calls wait for
+     * it, and calls from the thread which opened it fail with an {@link IOException}.
+     */
     @Override
     public InputStream getInputStream(@NonNull String path) throws IOException {
-        if (!fileExists(path)) {
+        return getInputStream(path, 0);
+    }
+
+    /**
+     * The offset is sent with REST, RFC 3659.
+     * <p>
+     * Note: The stream holds the connection until it is closed, see {@link #getInputStream(String)}.
+     */
+    @Override
+    public InputStream getInputStream(@NonNull String path, long offset) throws IOException {
+        acquireConnection();
+        InputStream in = null;
+        try {
+            in = fileExists(path) ? retrieve(path, offset) : null;
+            if (in != null) {
+                streamOwner = Thread.currentThread();
+            }
+            return in;
+        } finally {
+            if (in == null) {
+                connection.release();
+            }
+        }
+    }
+
+    /**
+     * @return the stream which releases the connection on close
+     */
+    private InputStream retrieve(String path, long offset) throws IOException {
+        if (!modeZSupported) {
+            client.setRestartOffset(offset);
+            return completeOnClose(client.retrieveFileStream(path));
+        }
+        // servers count the offset in bytes of the file, which only stream mode transfers as they are
+        boolean compress = switchTransferMode(offset == 0 && compressionPolicy.shouldCompress(path));
+        client.setRestartOffset(offset);
+        InputStream wire = completeOnClose(client.retrieveFileStream(path));
+        if (wire == null) {
             return null;
         }
-        return client.retrieveFileStream(path);
+        InputStream metered = new MeteredInputStream(wire, compressionPolicy::record);
+        return compress ? new InflaterInputStream(metered) : metered;
+    }
+
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        // MFMT, RFC 3659 drafts
+        return serially(() -> fileExists(path) && client.setModificationTime(path, MFMT_FORMATTER.format(mtime)));
     }
 
     @Override
     public FileMetadata getFileMetadata(@NonNull String path) throws IOException {
-        String dir = FilenameUtils.getFullPath(path);
-        if (!client.changeWorkingDirectory(dir)) {
+        return serially(() -> {
+            FTPFile ftpFile = findFile(path);
+            if (ftpFile == null) {
+                return null;
+            }
+            refineTimestamp(path, ftpFile);
+            return toFileMetadata(path, ftpFile);
+        });
+    }
+
+    /**
+     * LIST shows the modification time in the time zone of the server, only to the minute and for older files only
+     * to the day. MDTM and MLST report it in UTC to the second, listings keep the coarse one.
+     */
+    private void refineTimestamp(String path, FTPFile ftpFile) throws IOException {
+        FTPFile precise = mdtmSupported ? client.mdtmFile(path) : mlstSupported ? client.mlistFile(path) : null;
+        if (precise != null && precise.getTimestamp() != null) {
+            ftpFile.setTimestamp(precise.getTimestamp());
+        }
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        return serially(() -> isDirectory(dir) ? toFileMetadata(dir, client.listFiles(dir), "*") : null);
+    }
+
+    /**
+     * The glob is sent as the argument of LIST, which servers expand like <code>ls</code> does. Servers which take
+     * it literally list nothing. NLST would accept it as well, but only returns names.
+     */
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        return serially(() -> {
+            if (!isDirectory(dir)) {
+                return null;
+            }
+            return toFileMetadata(dir, client.listFiles(StringUtils.appendIfMissing(dir, "/") + glob), glob);
+        });
+    }
+
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        return serially(() -> {
+            if (!isDirectory(dir)) {
+                return null;
+            }
+            String prefix = StringUtils.appendIfMissing(dir, "/");
+            return directoryNames(prefix).stream()
+                                         .map(name -> prefix + name)
+                                         .collect(Collectors.toList());
+        });
+    }
+
+    @Override
+    public String getChecksum(@NonNull String path, @NonNull String algorithm) throws IOException {
+        if (!serially(() -> fileExists(path))) {
             return null;
         }
+        String name = Checksums.normalize(algorithm);
+        String checksum = serially(() -> {
+            String hash = hashCommand(path, name);
+            return hash != null ? hash : legacyHashCommand(path, name);
+        });
+        if (checksum == null) {
+            log.debug("The FTP server can not compute {} checksums, read the whole file.", name);
+            return FileSystemClient.super.getChecksum(path, name);
+        }
+        return checksum;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (client != null) {
+            client.disconnect();
+        }
+    }
+
+    /**
+     * Run a command, waiting while other commands or a retrieval use the connection.
+     */
+    private <T> T serially(Command<T> command) throws IOException {
+        acquireConnection();
+        try {
+            return command.run();
+        } finally {
+            connection.release();
+        }
+    }
+
+    private void acquireConnection() throws IOException {
+        if (streamOwner == Thread.currentThread()) {
+            throw new IOException("The FTP connection is held by a stream this thread has not closed yet.");
+        }
+        try {
+            connection.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private boolean fileExists(String path) throws IOException {
+        return findFile(path) != null;
+    }
+
+    /**
+     * LIST of a file path lists the file itself.
+     */
+    private FTPFile findFile(String path) throws IOException {
         String name = FilenameUtils.getName(path);
-        FTPFile[] ftpFiles = client.listFiles();
-        FTPFile ftpFile = Arrays.stream(ftpFiles)
-                .filter(Objects::nonNull)
-                .filter(FTPFile::isFile)
-                .filter(file -> file.getName().equals(name))
-                .findAny()
-                .orElse(null);
-        if (ftpFile == null) {
+        if (name.isEmpty()) {
             return null;
         }
+        return Arrays.stream(client.listFiles(path))
+                     .filter(Objects::nonNull)
+                     .filter(FTPFile::isFile)
+                     .filter(file -> FilenameUtils.getName(file.getName()).equals(name))
+                     .findAny()
+                     .orElse(null);
+    }
+
+    public boolean dirExists(String path) throws IOException {
+        return serially(() -> isDirectory(path));
+    }
+
+    /**
+     * MLST describes the path itself, without it the parent is listed.
+     */
+    private boolean isDirectory(String path) throws IOException {
+        String dir = StringUtils.removeEnd(path, "/");
+        if (dir.isEmpty()) {
+            return true;
+        }
+        if (mlstSupported) {
+            FTPFile ftpFile = client.mlistFile(dir);
+            return ftpFile != null && ftpFile.isDirectory();
+        }
+        return directoryNames(FilenameUtils.getFullPath(dir)).contains(FilenameUtils.getName(dir));
+    }
+
+    private List<String> directoryNames(String dir) throws IOException {
+        return Arrays.stream(client.listDirectories(dir))
+                     .filter(Objects::nonNull)
+                     .map(ftpFile -> FilenameUtils.getName(ftpFile.getName()))
+                     .filter(name -> StringUtils.isNotEmpty(name) && !".".equals(name) && !"..".equals(name))
+                     .collect(Collectors.toList());
+    }
+
+    private boolean createDirs(String path) throws IOException {
+        if (isDirectory(path)) {
+            return true;
+        } else {
+            String parent = Paths.get(path).getParent().toString();
+            createDirs(parent);
+            return client.makeDirectory(StringUtils.removeEnd(path, "/"));
+        }
+    }
+
+    /**
+     * Servers differ in how they match a LIST pattern and whether they echo the directory, so the names are matched
+     * again.
+     */
+    private static List<FileMetadata> toFileMetadata(String dir, FTPFile[] ftpFiles, String glob) {
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        return Arrays.stream(ftpFiles)
+                     .filter(Objects::nonNull)
+                     .filter(FTPFile::isFile)
+                     .filter(ftpFile -> FilenameUtils.wildcardMatch(FilenameUtils.getName(ftpFile.getName()), glob))
+                     .map(ftpFile -> toFileMetadata(prefix + FilenameUtils.getName(ftpFile.getName()), ftpFile))
+                     .collect(Collectors.toList());
+    }
+
+    private static FileMetadata toFileMetadata(String path, FTPFile ftpFile) {
         Optional<Instant> mtime = Optional.of(ftpFile)
                 .map(FTPFile::getTimestamp)
                 .map(Calendar::getTimeInMillis)
@@ -169,38 +502,131 @@ public class FtpClient implements FileSystemClient {
                            .build();
     }
 
-    @Override
-    public void close() throws IOException {
-        if (client != null) {
-            client.disconnect();
+    private FTPSClient createFtpsClient() throws IOException {
+        if (sslContext == null) {
+            sslContext = ftps.getSslContext() != null ? ftps.getSslContext() : SSLContextUtils.createSSLContext(
+                    ftps.getProtocol(), null, TrustManagerUtils.getValidateServerCertificateTrustManager());
         }
+        FTPSClient secure = ftps.isSessionReuse() ? new SessionReusingFtpsClient(ftps.isImplicit(), sslContext)
+                : new FTPSClient(ftps.isImplicit(), sslContext);
+        secure.setEndpointCheckingEnabled(ftps.isEndpointChecking());
+        return secure;
     }
 
-    private boolean fileExists(String path) throws IOException {
-        String dir = FilenameUtils.getFullPath(path);
-        if (client.changeWorkingDirectory(dir)) {
-            String name = FilenameUtils.getName(path);
-            FTPFile[] ftpFiles = client.listFiles();
-            return Arrays.stream(ftpFiles)
-                    .filter(Objects::nonNull)
-                    .filter(FTPFile::isFile)
-                    .anyMatch(file -> file.getName().equals(name));
+    private void applyTransportOptions(TransportOptions tuned) throws IOException {
+        if (tuned.getTimeout() != null) {
+            int timeout = (int) tuned.getTimeout().toMillis();
+            client.setConnectTimeout(timeout);
+            client.setDefaultTimeout(timeout);
+            client.setDataTimeout(timeout);
+        }
+        if (tuned.getSocketSendBufferSize() > 0) {
+            client.setSendBufferSize(tuned.getSocketSendBufferSize());
+            client.setSendDataSocketBufferSize(tuned.getSocketSendBufferSize());
+        }
+        if (tuned.getSocketReceiveBufferSize() > 0) {
+            client.setReceiveBufferSize(tuned.getSocketReceiveBufferSize());
+            client.setReceieveDataSocketBufferSize(tuned.getSocketReceiveBufferSize());
+        }
+        if (tuned.getFtpBufferSize() > 0) {
+            client.setBufferSize(tuned.getFtpBufferSize());
         }
-        return false;
     }
 
-    public boolean dirExists(String path) throws IOException {
-        return client.changeWorkingDirectory(path);
+    /**
+     * The HASH command, see draft-bryan-ftpext-hash. The reply looks like
+     * <code>213 SHA-256 0-49 169cd22282da7f147cb491e559e9dd filename</code>.
+     */
+    private String hashCommand(String path, String algorithm) throws IOException {
+        String[] values = client.featureValues("HASH");
+        if (values == null) {
+            return null;
+        }
+        boolean supported = Arrays.stream(values)
+                .flatMap(value -> Arrays.stream(value.split(";")))
+                .map(value -> StringUtils.removeEnd(value.trim(), "*"))
+                .anyMatch(algorithm::equalsIgnoreCase);
+        if (!supported
+                || !FTPReply.isPositiveCompletion(client.sendCommand("OPTS", "HASH " + algorithm))
+                || !FTPReply.isPositiveCompletion(client.sendCommand("HASH", path))) {
+            return null;
+        }
+        String[] tokens = client.getReplyString().trim().split("\\s+");
+        return tokens.length > 3 && Checksums.isValid(tokens[3], algorithm) ? tokens[3].toLowerCase(Locale.ROOT) : null;
     }
 
-    private boolean createDirs(String path) throws IOException {
-        if (dirExists(path)) {
-            return true;
+    /**
+     * XMD5, XSHA1, XCRC and friends, only sent when advertised by FEAT. Servers disagree on the reply format,
+     * so the first token which looks like a checksum is taken.
+     */
+    private String legacyHashCommand(String path, String algorithm) throws IOException {
+        String command = LEGACY_HASH_COMMANDS.get(algorithm);
+        if (command == null || !client.hasFeature(command)
+                || !FTPReply.isPositiveCompletion(client.sendCommand(command, path))) {
+            return null;
+        }
+        return Arrays.stream(client.getReplyString().trim().split("\\s+"))
+                .skip(1)
+                .filter(token -> Checksums.isValid(token, algorithm))
+                .map(token -> token.toLowerCase(Locale.ROOT))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * A retrieval is only finished after the server's transfer reply has been read, otherwise the reply is taken
+     * for the reply of the next command.
+     */
+    private InputStream completeOnClose(InputStream in) {
+        if (in == null) {
+            return null;
+        }
+        return new ProxyInputStream(in) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                    if (!client.completePendingCommand()) {
+                        log.warn("The FTP server reports a failed transfer: {}", client.getReplyString());
+                    }
+                } finally {
+                    streamOwner = null;
+                    connection.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Switch between MODE Z and MODE S if necessary.
+     *
+     * @return whether the next transfer is compressed
+     */
+    private boolean switchTransferMode(boolean compress) throws IOException {
+        if (compress == deflating) {
+            return deflating;
+        }
+        if (FTPReply.isPositiveCompletion(client.sendCommand("MODE", compress ? "Z" : "S"))) {
+            deflating = compress;
+        } else if (compress) {
+            log.warn("The FTP server rejects MODE Z, transfers will not be compressed any more.");
+            modeZSupported = false;
         } else {
-            String parent = Paths.get(path).getParent().toString();
-            createDirs(parent);
-            return client.makeDirectory(path);
+            log.error("Fail to switch back to MODE S.");
+            throw new IOException();
         }
+        return deflating;
+    }
+
+    @FunctionalInterface
+    private interface Command<T> {
+        T run() throws IOException;
     }
 
     private boolean validateBeforeMove(final String source, final String target) throws IOException {
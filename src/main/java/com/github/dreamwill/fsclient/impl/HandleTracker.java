@@ -0,0 +1,175 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks remote handles which outlive a call, like the file behind a stream, so they can be counted and closed once
+ * their owner forgot them. Only resources owned by the handle may be passed, not ones shared with other calls.
+ * <p>
+ * A handle not used for longer than the idle timeout is considered leaked, it is closed and its owner gets an
+ * error on the next use. Closing the tracker closes all handles.
+ */
+@Slf4j
+final class HandleTracker implements Closeable {
+    private static final long MIN_SWEEP_MILLIS = 10;
+    private static final long MAX_SWEEP_MILLIS = 60_000;
+
+    private final Set<Handle> handles = ConcurrentHashMap.newKeySet();
+    private final AtomicLong openedCount = new AtomicLong();
+    private final AtomicLong forceClosedCount = new AtomicLong();
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService reaper;
+
+    /**
+     * @param name        names the reaper thread
+     * @param idleTimeout <code>null</code> never closes a handle
+     */
+    HandleTracker(String name, Duration idleTimeout) {
+        if (idleTimeout == null) {
+            this.idleTimeoutNanos = Long.MAX_VALUE;
+            this.reaper = null;
+            return;
+        }
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.reaper = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                .namingPattern(name + "-reaper-%d")
+                .daemon(true)
+                .build());
+        long period = Math.min(Math.max(idleTimeout.toMillis() / 2, MIN_SWEEP_MILLIS), MAX_SWEEP_MILLIS);
+        reaper.scheduleWithFixedDelay(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param description names the handle in log messages, e.g. the path
+     * @param resources   closed in reverse order, like try-with-resources would
+     */
+    Handle open(String description, AutoCloseable... resources) {
+        Handle handle = new Handle(description, resources);
+        handles.add(handle);
+        openedCount.incrementAndGet();
+        return handle;
+    }
+
+    int getOpenCount() {
+        return handles.size();
+    }
+
+    long getOpenedCount() {
+        return openedCount.get();
+    }
+
+    long getForceClosedCount() {
+        return forceClosedCount.get();
+    }
+
+    @Override
+    public void close() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+        for (Handle handle : new ArrayList<>(handles)) {
+            handle.closeQuietly();
+        }
+    }
+
+    private void closeIdle() {
+        long now = System.nanoTime();
+        for (Handle handle : handles) {
+            long idle = now - handle.lastUsed;
+            if (idle > idleTimeoutNanos) {
+                log.warn("Close {}, it has not been used for {} ms. It was opened by {} and never closed.",
+                        handle.description, TimeUnit.NANOSECONDS.toMillis(idle), handle.owner);
+                handle.closeQuietly();
+                forceClosedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remote resources closed together.
+     */
+    final class Handle implements Closeable {
+        private final String description;
+        private final String owner = Thread.currentThread().getName();
+        private final AutoCloseable[] resources;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long lastUsed = System.nanoTime();
+
+        private Handle(String description, AutoCloseable[] resources) {
+            this.description = description;
+            this.resources = resources;
+        }
+
+        /**
+         * Record a use, so the handle is not taken for leaked.
+         *
+         * @throws IOException If it has been closed
+         */
+        void touch() throws IOException {
+            if (closed.get()) {
+                throw new IOException(description + " has been closed.");
+            }
+            lastUsed = System.nanoTime();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            handles.remove(this);
+            IOException failure = null;
+            for (int i = resources.length - 1; i >= 0; i--) {
+                try {
+                    resources[i].close();
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                close();
+            } catch (IOException e) {
+                log.debug("Fail to close {}.", description, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps files in memory. Useful as the floor remote clients are measured against, as a fast client in tests and as a
+ * hot tier in front of a remote client, for example as a replica of {@link ReplicatedFileSystemClient}.
+ * <p>
+ * Paths are kept in a sorted concurrent map, so a directory is listed by a range of keys. File content is never
+ * changed once stored, so readers and copies share it without copying a byte.
+ */
+@Slf4j
+public class InMemoryFileSystemClient implements FileSystemClient {
+    private static final String ROOT = "/";
+
+    private final ConcurrentNavigableMap<String, Node> nodes = new ConcurrentSkipListMap<>();
+    private final PathLocks pathLocks = new PathLocks();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public InMemoryFileSystemClient() {
+        nodes.put(ROOT, Node.directory());
+    }
+
+    @Override
+    public void connect() {
+        // nothing to connect to
+    }
+
+    @Override
+    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        String key = key(path);
+        if (nodes.containsKey(key)) {
+            return false;
+        }
+        byte[] content = IOUtils.toByteArray(in);
+        try (PathLocks.Held ignored = pathLocks.lock(key)) {
+            createDirs(parent(key));
+            if (nodes.putIfAbsent(key, Node.file(content, Instant.now())) != null) {
+                return false;
+            }
+        }
+        storedBytes.addAndGet(content.length);
+        return true;
+    }
+
+    @Override
+    public boolean deleteFile(@NonNull String path) throws IOException {
+        String key = key(path);
+        try (PathLocks.Held ignored = pathLocks.lock(key)) {
+            Node node = nodes.get(key);
+            if (node == null || node.content == null || !nodes.remove(key, node)) {
+                return false;
+            }
+            storedBytes.addAndGet(-node.content.length);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        String key = key(dir);
+        if (ROOT.equals(key)) {
+            throw new IOException("The root directory can not be deleted.");
+        }
+        try (PathLocks.Held ignored = pathLocks.lock(key)) {
+            Node node = nodes.get(key);
+            if (node == null || node.content != null) {
+                return false;
+            }
+            if (!children(key).isEmpty()) {
+                throw new IOException("Directory " + dir + " is not empty.");
+            }
+            return nodes.remove(key, node);
+        }
+    }
+
+    @Override
+    public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
+        String sourceKey = key(source);
+        String targetKey = key(target);
+        try (PathLocks.Held ignored = pathLocks.lock(sourceKey, targetKey)) {
+            Node node = validateBeforeMove(sourceKey, targetKey);
+            if (node == null) {
+                return false;
+            }
+            createDirs(parent(targetKey));
+            if (nodes.putIfAbsent(targetKey, node) != null) {
+                return false;
+            }
+            nodes.remove(sourceKey, node);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
+        String sourceKey = key(source);
+        String targetKey = key(target);
+        try (PathLocks.Held ignored = pathLocks.lock(sourceKey, targetKey)) {
+            Node node = validateBeforeMove(sourceKey, targetKey);
+            if (node == null) {
+                return false;
+            }
+            createDirs(parent(targetKey));
+            // the content is shared, it is never changed
+            if (nodes.putIfAbsent(targetKey, Node.file(node.content, Instant.now())) != null) {
+                return false;
+            }
+            storedBytes.addAndGet(node.content.length);
+            return true;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path) throws IOException {
+        return getInputStream(path, 0);
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path, long offset) throws IOException {
+        Node node = nodes.get(key(path));
+        if (node == null || node.content == null) {
+            return null;
+        }
+        int start = (int) Math.min(Math.max(0, offset), node.content.length);
+        return new ByteArrayInputStream(node.content, start, node.content.length - start);
+    }
+
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        String key = key(path);
+        try (PathLocks.Held ignored = pathLocks.lock(key)) {
+            Node node = nodes.get(key);
+            return node != null && node.content != null && nodes.replace(key, node, node.withMtime(mtime));
+        }
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(@NonNull String path) throws IOException {
+        Node node = nodes.get(key(path));
+        return node == null || node.content == null ? null : node.toFileMetadata(path);
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        String key = key(dir);
+        if (!isDirectory(key)) {
+            return null;
+        }
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<FileMetadata> files = new ArrayList<>();
+        children(key).forEach((child, node) -> {
+            if (node.content != null) {
+                files.add(node.toFileMetadata(prefix + FilenameUtils.getName(child)));
+            }
+        });
+        return files;
+    }
+
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        String key = key(dir);
+        if (!isDirectory(key)) {
+            return null;
+        }
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<String> dirs = new ArrayList<>();
+        children(key).forEach((child, node) -> {
+            if (node.content == null) {
+                dirs.add(prefix + FilenameUtils.getName(child));
+            }
+        });
+        return dirs;
+    }
+
+    @Override
+    public void close() {
+        // the files are kept until this client is garbage
+    }
+
+    /**
+     * Content bytes of all files, shared content counts once per file.
+     */
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    private boolean isDirectory(String key) {
+        Node node = nodes.get(key);
+        return node != null && node.content == null;
+    }
+
+    /**
+     * The direct children, the range of keys below the directory holds the whole sub tree.
+     */
+    private Map<String, Node> children(String key) {
+        String prefix = StringUtils.appendIfMissing(key, "/");
+        Map<String, Node> children = new LinkedHashMap<>();
+        nodes.subMap(prefix, false, prefix + Character.MAX_VALUE, false).forEach((child, node) -> {
+            if (child.indexOf('/', prefix.length()) < 0) {
+                children.put(child, node);
+            }
+        });
+        return children;
+    }
+
+    private void createDirs(String key) throws IOException {
+        if (ROOT.equals(key)) {
+            return;
+        }
+        Node existing = nodes.putIfAbsent(key, Node.directory());
+        if (existing == null) {
+            createDirs(parent(key));
+        } else if (existing.content != null) {
+            throw new IOException("Path " + key + " is a file.");
+        }
+    }
+
+    private Node validateBeforeMove(String source, String target) {
+        Node node = nodes.get(source);
+        if (node == null || node.content == null) {
+            log.error("Source file {} does not exist.", source);
+            return null;
+        }
+        if (nodes.containsKey(target)) {
+            log.error("Target file {} already exists.", target);
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * Absolute and normalized, without a trailing separator.
+     */
+    private static String key(String path) throws IOException {
+        String key = FilenameUtils.normalizeNoEndSeparator(StringUtils.prependIfMissing(path, "/"), true);
+        if (key == null) {
+            throw new IOException("Path " + path + " is outside of the root.");
+        }
+        return key.isEmpty() ? ROOT : key;
+    }
+
+    private static String parent(String key) {
+        String parent = key.substring(0, key.lastIndexOf('/'));
+        return parent.isEmpty() ? ROOT : parent;
+    }
+
+    /**
+     * Immutable, changes replace the node.
+     */
+    private static final class Node {
+        /**
+         * null for directories
+         */
+        private final byte[] content;
+        private final Instant ctime;
+        private final Instant mtime;
+
+        private Node(byte[] content, Instant ctime, Instant mtime) {
+            this.content = content;
+            this.ctime = ctime;
+            this.mtime = mtime;
+        }
+
+        static Node directory() {
+            Instant now = Instant.now();
+            return new Node(null, now, now);
+        }
+
+        static Node file(byte[] content, Instant now) {
+            return new Node(content, now, now);
+        }
+
+        Node withMtime(Instant mtime) {
+            return new Node(content, ctime, mtime);
+        }
+
+        FileMetadata toFileMetadata(String path) {
+            return FileMetadata.builder()
+                               .path(path)
+                               .size((long) content.length)
+                               .mtime(Optional.of(mtime))
+                               .ctime(Optional.of(ctime))
+                               .build();
+        }
+    }
+}
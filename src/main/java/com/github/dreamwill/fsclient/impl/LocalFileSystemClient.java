@@ -0,0 +1,312 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serves the files below a local directory, which stands for <code>/</code>. Useful as the floor remote clients are
+ * measured against, and as a fast client in tests.
+ * <p>
+ * New files are opened with <code>CREATE_NEW</code>, so concurrent creators of the same path can not both succeed.
+ * Copies are done by the kernel with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * and moves are atomic renames. Operations which check and then change a path lock it.
+ */
+@Slf4j
+public class LocalFileSystemClient implements FileSystemClient {
+    private final Path root;
+    private final BufferPool bufferPool;
+    private final PathLocks pathLocks = new PathLocks();
+
+    public LocalFileSystemClient(@NonNull Path root) {
+        this(root, BufferPool.shared());
+    }
+
+    public LocalFileSystemClient(@NonNull Path root, @NonNull BufferPool bufferPool) {
+        this.root = root.toAbsolutePath().normalize();
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        Files.createDirectories(root);
+    }
+
+    @Override
+    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        Path file = resolve(path);
+        Files.createDirectories(file.getParent());
+        FileChannel channel;
+        // a move checks the target under the lock, the new file is there once the lock is released
+        try (PathLocks.Held ignored = pathLocks.lock(path)) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        try (FileChannel out = channel) {
+            if (in instanceof FileInputStream) {
+                FileChannel source = ((FileInputStream) in).getChannel();
+                long position = 0;
+                long n;
+                while ((n = out.transferFrom(source, position, Long.MAX_VALUE)) > 0) {
+                    position += n;
+                }
+            } else {
+                bufferPool.copy(in, Channels.newOutputStream(out));
+            }
+        } catch (IOException | RuntimeException e) {
+            // like a failed upload, no partial file is left behind
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean deleteFile(@NonNull String path) throws IOException {
+        Path file = resolve(path);
+        try (PathLocks.Held ignored = pathLocks.lock(path)) {
+            return Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) && Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        Path directory = resolve(dir);
+        if (directory.equals(root)) {
+            throw new IOException("The root directory " + root + " can not be deleted.");
+        }
+        try (PathLocks.Held ignored = pathLocks.lock(dir)) {
+            return Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS) && Files.deleteIfExists(directory);
+        }
+    }
+
+    @Override
+    public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
+        Path sourceFile = resolve(source);
+        Path targetFile = resolve(target);
+        try (PathLocks.Held ignored = pathLocks.lock(source, target)) {
+            if (validateBeforeMove(sourceFile, targetFile)) {
+                return false;
+            }
+            Files.createDirectories(targetFile.getParent());
+            try {
+                Files.move(sourceFile, targetFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                // the root spans several file systems
+                Files.move(sourceFile, targetFile);
+            }
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            log.error("Fail to move {} to {}: {}", source, target, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
+        Path sourceFile = resolve(source);
+        Path targetFile = resolve(target);
+        try (PathLocks.Held ignored = pathLocks.lock(source, target)) {
+            if (validateBeforeMove(sourceFile, targetFile)) {
+                return false;
+            }
+            Files.createDirectories(targetFile.getParent());
+            try (FileChannel in = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+                try (FileChannel out = FileChannel.open(targetFile, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(targetFile);
+                    throw e;
+                }
+            }
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            log.error("Fail to copy {} to {}: {}", source, target, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path) throws IOException {
+        return getInputStream(path, 0);
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path, long offset) throws IOException {
+        Path file = resolve(path);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ).position(offset));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        Path file = resolve(path);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(mtime));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(@NonNull String path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(resolve(path), BasicFileAttributes.class);
+            return attributes.isRegularFile() ? toFileMetadata(path, attributes) : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        return listFiles(dir, "*");
+    }
+
+    /**
+     * The names are matched before the attributes are read, so only matching files cost a stat.
+     */
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        Path directory = resolve(dir);
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<FileMetadata> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                entry -> FilenameUtils.wildcardMatch(entry.getFileName().toString(), glob))) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // deleted meanwhile
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    files.add(toFileMetadata(prefix + entry.getFileName(), attributes));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return files;
+    }
+
+    /**
+     * Links to directories are not listed, so a walk can not leave the tree or run in circles.
+     */
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        Path directory = resolve(dir);
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<String> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                entry -> Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))) {
+            for (Path entry : entries) {
+                dirs.add(prefix + entry.getFileName());
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return dirs;
+    }
+
+    @Override
+    public void close() {
+        // nothing is held between calls
+    }
+
+    /**
+     * Map a path of this client to the local file, paths which lead out of the root are refused.
+     */
+    private Path resolve(String path) throws IOException {
+        Path file = root.resolve(StringUtils.stripStart(path.replace('\\', '/'), "/")).normalize();
+        if (!file.startsWith(root)) {
+            throw new IOException("Path " + path + " is outside of " + root);
+        }
+        return file;
+    }
+
+    private static boolean validateBeforeMove(Path source, Path target) {
+        if (!Files.isRegularFile(source)) {
+            log.error("Source file {} does not exist.", source);
+            return true;
+        }
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            log.error("Target file {} already exists.", target);
+            return true;
+        }
+        return false;
+    }
+
+    private static FileMetadata toFileMetadata(String path, BasicFileAttributes attributes) {
+        return FileMetadata.builder()
+                           .path(path)
+                           .size(attributes.size())
+                           .mtime(Optional.of(attributes.lastModifiedTime().toInstant()))
+                           .ctime(Optional.of(attributes.creationTime().toInstant()))
+                           .build();
+    }
+}
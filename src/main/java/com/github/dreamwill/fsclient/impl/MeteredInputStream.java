@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts the bytes read and the time spent blocked in <code>read</code>, so the time the consumer spends
+ * processing data is not mistaken for network time. The totals are reported once on close.
+ */
+class MeteredInputStream extends ProxyInputStream {
+    private final BiConsumer<Long, Long> onClose;
+    private long bytes;
+    private long nanos;
+    private long readStart;
+    private boolean closed;
+
+    /**
+     * @param in      the stream to meter
+     * @param onClose receives the byte count and the nanoseconds spent reading
+     */
+    MeteredInputStream(InputStream in, BiConsumer<Long, Long> onClose) {
+        super(in);
+        this.onClose = onClose;
+    }
+
+    @Override
+    protected void beforeRead(int n) {
+        readStart = System.nanoTime();
+    }
+
+    @Override
+    protected void afterRead(int n) {
+        nanos += System.nanoTime() - readStart;
+        if (n > 0) {
+            bytes += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!closed) {
+                closed = true;
+                onClose.accept(bytes, nanos);
+            }
+        }
+    }
+}
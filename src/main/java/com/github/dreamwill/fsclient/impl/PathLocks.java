@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks by path, so operations on the same path are serialized while all others run in parallel.
+ * <p>
+ * Paths are hashed onto a fixed number of locks, unrelated paths sharing a stripe merely wait for each other.
+ * Locks of several paths are taken in stripe order, so two operations on the same pair of paths can not deadlock.
+ * The locks are reentrant.
+ */
+final class PathLocks {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+
+    PathLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    PathLocks(int stripes) {
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Lock all given paths, the returned handle unlocks them.
+     */
+    Held lock(String... paths) {
+        int[] indexes = Arrays.stream(paths)
+                              .mapToInt(this::stripe)
+                              .distinct()
+                              .sorted()
+                              .toArray();
+        for (int index : indexes) {
+            stripes[index].lock();
+        }
+        return () -> {
+            for (int i = indexes.length - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        };
+    }
+
+    private int stripe(String path) {
+        String key = StringUtils.removeEnd(path.replace('\\', '/'), "/");
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
+    /**
+     * Locks held until closed.
+     */
+    @FunctionalInterface
+    interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps several reads at increasing offsets in flight, so a sequential reader does not wait a round trip per chunk.
+ * <p>
+ * The window starts at one chunk and doubles with every full chunk up to its limit, so small files cost a single
+ * read. A chunk shorter than requested marks the end of the file. Chunk buffers are recycled while reading and
+ * given back to the pool on close.
+ */
+@Slf4j
+class ReadAheadInputStream extends InputStream {
+    /**
+     * Positional read of the remote file.
+     */
+    interface RangeReader {
+        /**
+         * @return bytes read, or -1 at the end of the file
+         */
+        int read(byte[] buffer, long fileOffset, int offset, int length) throws IOException;
+    }
+
+    private final RangeReader reader;
+    private final int chunkSize;
+    private final int maxWindow;
+    private final ExecutorService executor;
+    private final Closeable onClose;
+    private final BufferPool pool;
+    private final Deque<Future<Chunk>> inflight = new ArrayDeque<>();
+    private final Deque<byte[]> freeBuffers = new ArrayDeque<>();
+    /**
+     * every buffer taken from the pool, at most one more than the window
+     */
+    private final List<byte[]> buffers = new ArrayList<>();
+    private int window = 1;
+    private long nextOffset;
+    private boolean endScheduled;
+    private Chunk current;
+    private int position;
+    private boolean closed;
+
+    /**
+     * @param reader    reads the remote file
+     * @param chunkSize bytes per read request
+     * @param maxWindow maximum reads in flight
+     * @param executor  runs the reads
+     * @param onClose   closed with this stream, after all reads finished
+     * @param pool      lends the chunk buffers
+     * @param offset    where in the remote file to start
+     */
+    ReadAheadInputStream(RangeReader reader, int chunkSize, int maxWindow, ExecutorService executor,
+                         Closeable onClose, BufferPool pool, long offset) {
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.maxWindow = Math.max(1, maxWindow);
+        this.executor = executor;
+        this.onClose = onClose;
+        this.pool = pool;
+        this.nextOffset = offset;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current.buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // wait for the reads in flight, the file handle must outlive them
+        for (Future<Chunk> future : inflight) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.debug("Read ahead failed after close.", e.getCause());
+            }
+        }
+        inflight.clear();
+        current = null;
+        freeBuffers.clear();
+        buffers.forEach(pool::release);
+        buffers.clear();
+        onClose.close();
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        while (current == null || position >= current.length) {
+            if (current != null) {
+                freeBuffers.push(current.buffer);
+                if (current.length == chunkSize) {
+                    window = Math.min(maxWindow, window * 2);
+                }
+                current = null;
+            }
+            schedule();
+            Future<Chunk> next = inflight.poll();
+            if (next == null) {
+                return false;
+            }
+            current = await(next);
+            position = 0;
+            if (current.length < chunkSize) {
+                // the reads behind this one are past the end of the file
+                endScheduled = true;
+            }
+            if (current.length <= 0) {
+                freeBuffers.push(current.buffer);
+                current = null;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void schedule() {
+        while (!endScheduled && inflight.size() < window) {
+            long offset = nextOffset;
+            byte[] buffer = freeBuffers.isEmpty() ? acquire() : freeBuffers.pop();
+            inflight.add(executor.submit(() -> fill(buffer, offset)));
+            nextOffset += chunkSize;
+        }
+    }
+
+    private byte[] acquire() {
+        byte[] buffer = pool.acquire(chunkSize);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Servers may return less than requested, keep reading until the chunk is full or the file ends.
+     */
+    private Chunk fill(byte[] buffer, long offset) throws IOException {
+        int length = 0;
+        while (length < chunkSize) {
+            int n = reader.read(buffer, offset + length, length, chunkSize - length);
+            if (n <= 0) {
+                break;
+            }
+            length += n;
+        }
+        return new Chunk(buffer, length);
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static final class Chunk {
+        private final byte[] buffer;
+        private final int length;
+
+        private Chunk(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
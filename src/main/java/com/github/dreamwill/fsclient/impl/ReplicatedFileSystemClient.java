@@ -0,0 +1,450 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.ReplicationOptions;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Serves identical file servers as one file system.
+ * <p>
+ * Reads go to the replica with the lowest observed latency weighted by its reads in flight. A read which takes longer
+ * than the replica usually does is sent again to the next replica, the first answer wins and the other one is
+ * discarded; a failed read moves on to the next replica immediately. Writes go to all replicas in parallel and
+ * succeed only if they succeed everywhere. A file which is created, copied or moved on some replicas only is removed
+ * or moved back there, so the replicas stay identical; deletes and modification times can not be undone, their
+ * diverging outcomes are logged per replica.
+ * <p>
+ * Calls run on the replica clients concurrently, which need to be safe for concurrent use.
+ */
+@Slf4j
+public class ReplicatedFileSystemClient implements FileSystemClient {
+    private final List<Replica> replicas;
+    private final ReplicationOptions options;
+    private ExecutorService executor;
+
+    public ReplicatedFileSystemClient(@NonNull List<FileSystemClient> replicas, @NonNull ReplicationOptions options) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required.");
+        }
+        this.replicas = replicas.stream().map(Replica::new).collect(Collectors.toList());
+        this.options = options;
+    }
+
+    public ReplicatedFileSystemClient(@NonNull FileSystemClient... replicas) {
+        this(Arrays.asList(replicas), ReplicationOptions.defaults());
+    }
+
+    @Override
+    public void connect() throws IOException {
+        executor = Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+                .namingPattern("replicated-client-%d")
+                .daemon(true)
+                .build());
+        forAll(FileSystemClient::connect);
+    }
+
+    @Override
+    public void warmUp(@NonNull Collection<String> paths) throws IOException {
+        forAll(client -> client.warmUp(paths));
+    }
+
+    @Override
+    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        if (replicas.size() == 1) {
+            return replicas.get(0).call(client -> client.createFile(path, in));
+        }
+        // every replica reads the content at its own pace
+        File spool = File.createTempFile("replicated", ".tmp");
+        try {
+            Files.copy(in, spool.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return allTrue(client -> {
+                try (InputStream copy = Files.newInputStream(spool.toPath())) {
+                    return client.createFile(path, copy);
+                }
+            }, client -> client.deleteFile(path));
+        } finally {
+            Files.deleteIfExists(spool.toPath());
+        }
+    }
+
+    @Override
+    public boolean deleteFile(@NonNull String path) throws IOException {
+        return allTrue(client -> client.deleteFile(path));
+    }
+
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        return allTrue(client -> client.deleteDirectory(dir));
+    }
+
+    @Override
+    public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
+        return allTrue(client -> client.moveFile(source, target), client -> client.moveFile(target, source));
+    }
+
+    @Override
+    public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
+        return allTrue(client -> client.copyFile(source, target), client -> client.deleteFile(target));
+    }
+
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        return allTrue(client -> client.setModificationTime(path, mtime));
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path) throws IOException {
+        return read(client -> client.getInputStream(path), IOUtils::closeQuietly);
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path, long offset) throws IOException {
+        return read(client -> client.getInputStream(path, offset), IOUtils::closeQuietly);
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(@NonNull String path) throws IOException {
+        return read(client -> client.getFileMetadata(path), metadata -> {
+        });
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        return read(client -> client.listFiles(dir), files -> {
+        });
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        return read(client -> client.listFiles(dir, glob), files -> {
+        });
+    }
+
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        return read(client -> client.listDirectories(dir), dirs -> {
+        });
+    }
+
+    @Override
+    public String getChecksum(@NonNull String path, @NonNull String algorithm) throws IOException {
+        return read(client -> client.getChecksum(path, algorithm), checksum -> {
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            forAll(FileSystemClient::close);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Read from the best replica, hedge to the next ones when it is slow or failed.
+     *
+     * @param discard releases results which lost the race
+     */
+    private <T> T read(Call<T> call, Consumer<T> discard) throws IOException {
+        List<Replica> ranked = new ArrayList<>(replicas);
+        ranked.sort(Comparator.comparingDouble(Replica::score));
+        BlockingQueue<CompletableFuture<T>> answers = new LinkedBlockingQueue<>();
+        List<IOException> failures = new ArrayList<>();
+        int next = 0;
+        int pending = 0;
+        Replica last = launch(ranked.get(next++), call, answers);
+        pending++;
+        try {
+            while (true) {
+                CompletableFuture<T> answer;
+                if (options.isHedgedReads() && next < ranked.size()) {
+                    answer = answers.poll(last.hedgeDelayNanos(options), TimeUnit.NANOSECONDS);
+                    if (answer == null) {
+                        log.debug("Read is slow, hedge it to another replica.");
+                        last = launch(ranked.get(next++), call, answers);
+                        pending++;
+                        continue;
+                    }
+                } else {
+                    answer = answers.take();
+                }
+                pending--;
+                try {
+                    T result = answer.get();
+                    discardLate(answers, pending, discard);
+                    return result;
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause()));
+                }
+                if (next < ranked.size()) {
+                    last = launch(ranked.get(next++), call, answers);
+                    pending++;
+                } else if (pending == 0) {
+                    IOException e = new IOException("All replicas failed.");
+                    failures.forEach(e::addSuppressed);
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private <T> Replica launch(Replica replica, Call<T> call, BlockingQueue<CompletableFuture<T>> answers) {
+        submit(replica, call).whenComplete((result, error) -> answers.add(
+                error == null ? CompletableFuture.completedFuture(result) : failed(error)));
+        return replica;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Release the answers of the losing replicas whenever they arrive.
+     */
+    private <T> void discardLate(BlockingQueue<CompletableFuture<T>> answers, int pending, Consumer<T> discard) {
+        if (pending == 0) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                for (int i = 0; i < pending; i++) {
+                    CompletableFuture<T> answer = answers.take();
+                    if (!answer.isCompletedExceptionally()) {
+                        discard.accept(answer.join());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Replica replica, Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(replica.call(call));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private boolean allTrue(Call<Boolean> call) throws IOException {
+        return allTrue(call, null);
+    }
+
+    /**
+     * @param undo reverts the call on the replicas where it succeeded while it did not succeed everywhere,
+     *             <code>null</code> if it can not be reverted
+     */
+    private boolean allTrue(Call<Boolean> call, Call<Boolean> undo) throws IOException {
+        Outcomes outcomes = new Outcomes(replicas.stream().map(replica -> submit(replica, call))
+                                                 .collect(Collectors.toList()));
+        if (outcomes.allTrue()) {
+            return true;
+        }
+        IOException failure = outcomes.failure;
+        if (outcomes.results.contains(true)) {
+            log.warn("Replicas diverged, outcome of each replica: {}.", describe(outcomes));
+            if (undo != null) {
+                failure = undo(outcomes, undo);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return false;
+    }
+
+    /**
+     * @return the failures of the call and of the undo
+     */
+    private IOException undo(Outcomes outcomes, Call<Boolean> undo) throws IOException {
+        List<Future<Boolean>> futures = new ArrayList<>(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            futures.add(Boolean.TRUE.equals(outcomes.results.get(i)) ? submit(replicas.get(i), undo)
+                    : CompletableFuture.completedFuture(true));
+        }
+        Outcomes undone = new Outcomes(futures);
+        if (!undone.allTrue()) {
+            log.error("Fail to undo the write on every replica, outcome of each undo: {}.", describe(undone));
+        }
+        if (outcomes.failure == null) {
+            return undone.failure;
+        }
+        if (undone.failure != null) {
+            outcomes.failure.addSuppressed(undone.failure);
+        }
+        return outcomes.failure;
+    }
+
+    private String describe(Outcomes outcomes) {
+        List<String> descriptions = new ArrayList<>(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Boolean result = outcomes.results.get(i);
+            descriptions.add(replicas.get(i).client + "=" + (result == null ? "failed" : result));
+        }
+        return String.join(", ", descriptions);
+    }
+
+    private void forAll(VoidCall call) throws IOException {
+        allTrue(client -> {
+            call.call(client);
+            return true;
+        });
+    }
+
+    /**
+     * The result of a call on each replica, <code>null</code> where it failed.
+     */
+    private static final class Outcomes {
+        private final List<Boolean> results = new ArrayList<>();
+        private IOException failure;
+
+        private Outcomes(List<Future<Boolean>> futures) throws IOException {
+            for (Future<Boolean> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    results.add(null);
+                    IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        }
+
+        private boolean allTrue() {
+            return results.stream().allMatch(Boolean.TRUE::equals);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call(FileSystemClient client) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface VoidCall {
+        void call(FileSystemClient client) throws IOException;
+    }
+
+    /**
+     * A replica with its recent latencies.
+     */
+    private static final class Replica {
+        private static final int WINDOW = 128;
+        private static final double SMOOTHING = 0.2;
+
+        private final FileSystemClient client;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final long[] latencies = new long[WINDOW];
+        private int samples;
+        private double averageNanos;
+
+        private Replica(FileSystemClient client) {
+            this.client = client;
+        }
+
+        private <T> T call(Call<T> call) throws IOException {
+            inflight.incrementAndGet();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                T result = call.call(client);
+                failed = false;
+                return result;
+            } finally {
+                inflight.decrementAndGet();
+                record(System.nanoTime() - start, failed);
+            }
+        }
+
+        private synchronized void record(long nanos, boolean failed) {
+            // a failure counts as a slow answer, so a broken replica drifts to the end of the ranking
+            long sample = failed ? Math.max(nanos, (long) averageNanos) * 4 : nanos;
+            latencies[samples % WINDOW] = sample;
+            samples++;
+            averageNanos = averageNanos == 0 ? sample : averageNanos + SMOOTHING * (sample - averageNanos);
+        }
+
+        /**
+         * Unmeasured replicas score 0, so each one is tried early.
+         */
+        private synchronized double score() {
+            return averageNanos * (inflight.get() + 1);
+        }
+
+        private synchronized long hedgeDelayNanos(ReplicationOptions options) {
+            long min = options.getMinHedgeDelay().toNanos();
+            if (samples < WINDOW / 8) {
+                return Math.max(min, options.getInitialHedgeDelay().toNanos());
+            }
+            long[] sorted = Arrays.copyOf(latencies, Math.min(samples, WINDOW));
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(options.getHedgePercentile() * sorted.length) - 1);
+            return Math.max(min, sorted[Math.max(0, index)]);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.net.ftp.FTPSClient;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.Locale;
+
+/**
+ * Resumes the TLS session of the control connection on the data connections. The JDK looks a session up by the
+ * host and port of the peer, and every passive data connection goes to another port, so the session is cached under
+ * the data address before the handshake. The cache is internal to the JDK; where it can not be reached, each data
+ * connection negotiates a session of its own.
+ */
+@Slf4j
+class SessionReusingFtpsClient extends FTPSClient {
+    private volatile boolean unsupported;
+
+    SessionReusingFtpsClient(boolean implicit, SSLContext context) {
+        super(implicit, context);
+    }
+
+    @Override
+    protected void _prepareDataSocket_(Socket socket) throws IOException {
+        if (unsupported || !(socket instanceof SSLSocket) || !(_socket_ instanceof SSLSocket)) {
+            return;
+        }
+        SSLSession session = ((SSLSocket) _socket_).getSession();
+        SSLSessionContext context = session.getSessionContext();
+        if (!session.isValid() || context == null) {
+            return;
+        }
+        try {
+            Field field = context.getClass().getDeclaredField("sessionHostPortCache");
+            field.setAccessible(true);
+            Object cache = field.get(context);
+            Method put = cache.getClass().getDeclaredMethod("put", Object.class, Object.class);
+            put.setAccessible(true);
+            // the key is the host name the socket was opened with, or its address; toString does not look a name up
+            String name = StringUtils.substringBefore(socket.getInetAddress().toString(), "/");
+            for (String host : new String[]{name, socket.getInetAddress().getHostAddress()}) {
+                if (!host.isEmpty()) {
+                    put.invoke(cache, (host + ":" + socket.getPort()).toLowerCase(Locale.ENGLISH), session);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsupported = true;
+            log.warn("Fail to share the TLS session with data connections, every file transfer pays a full "
+                    + "handshake. Run with --add-opens java.base/sun.security.ssl=ALL-UNNAMED.", e);
+        }
+    }
+}
@@ -16,8 +16,12 @@
 
 package com.github.dreamwill.fsclient.impl;
 
+import com.github.dreamwill.fsclient.Checksums;
+import com.github.dreamwill.fsclient.CompressionMode;
 import com.github.dreamwill.fsclient.FileMetadata;
 import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.TransportOptions;
+import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
@@ -26,132 +30,331 @@ import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.lang3.StringUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
+/**
+ * One SSH session carries several SFTP channels, each operation borrows a channel, so independent operations of
+ * concurrent callers run in parallel. Operations which check and then change a path lock it, path locks are always
+ * taken before a channel. A stream returned by {@link #getInputStream(String)} keeps its channel until it is closed.
+ */
 @Slf4j
 public class SftpClient implements FileSystemClient {
+    /**
+     * delayed compression first, so the authentication is never compressed
+     */
+    private static final String COMPRESSION_ALGORITHMS = "zlib@openssh.com,zlib,none";
+    /**
+     * JSch can not send the check-file or md5-hash SFTP extensions, so the hash is computed by the coreutils of
+     * the server if the account may execute commands.
+     */
+    private static final Map<String, String> HASH_COMMANDS = new HashMap<>();
+    /**
+     * for the server to answer a hash command, SFTP-only accounts may accept it and never answer
+     */
+    private static final long EXEC_TIMEOUT_MILLIS = 10_000;
+    /**
+     * more time for larger files, hashing is assumed to run at 50 MiB/s at least
+     */
+    private static final long EXEC_BYTES_PER_MILLI = 50 * 1024 * 1024 / 1000;
+
+    static {
+        HASH_COMMANDS.put(Checksums.MD5, "md5sum");
+        HASH_COMMANDS.put(Checksums.SHA_1, "sha1sum");
+        HASH_COMMANDS.put(Checksums.SHA_256, "sha256sum");
+        HASH_COMMANDS.put(Checksums.SHA_512, "sha512sum");
+    }
+
     private JSch jsch;
-    private Session session;
-    private ChannelSftp client;
+    private volatile Session session;
+    private final Deque<ChannelSftp> idleChannels = new ConcurrentLinkedDeque<>();
+    private final PathLocks pathLocks = new PathLocks();
+    private volatile Semaphore channelPermits;
+    private int bulkRequests;
     private final String host;
     private final Integer port;
     private final String username;
     private final String password;
+    private final TransportOptions options;
+    private volatile boolean execAllowed;
 
     public SftpClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password) {
+        this(host, port, username, password, TransportOptions.defaults());
+    }
+
+    public SftpClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password,
+                      @NonNull TransportOptions options) {
         this.host = host;
         this.port = port;
         this.username = username;
         this.password = password;
+        this.options = options;
     }
 
     @Override
     public void connect() throws IOException {
         jsch = new JSch();
+        TransportOptions tuned = TransportTuner.resolve(options, host, port);
         try {
             session = jsch.getSession(username, host, port);
             session.setPassword(password);
             session.setConfig("StrictHostKeyChecking", "no");
+            applyTransportOptions(tuned);
+            if (options.getCompression() != CompressionMode.NONE) {
+                // compression is negotiated once per session, ADAPTIVE can only offer it
+                session.setConfig("compression.s2c", COMPRESSION_ALGORITHMS);
+                session.setConfig("compression.c2s", COMPRESSION_ALGORITHMS);
+                session.setConfig("compression_level", String.valueOf(options.getCompressionLevel()));
+            }
             session.connect();
-            client = (ChannelSftp) session.openChannel("sftp");
-            client.connect();
+            execAllowed = true;
+            bulkRequests = tuned.getSftpBulkRequests();
+            channelPermits = new Semaphore(Math.max(1, options.getSftpMaxChannels()));
+            // fail early if the server has no SFTP subsystem
+            idleChannels.push(openChannel());
         } catch (JSchException e) {
             throw new IOException(e);
         }
     }
 
+    /**
+     * Opens up to <code>sftpMaxChannels</code> channels, each costs round trips of its own, then looks the paths up.
+     */
     @Override
-    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
-        if (fileExists(path)) {
-            return false;
-        }
-        String dirPath = FilenameUtils.getFullPathNoEndSeparator(path);
+    public void warmUp(@NonNull Collection<String> paths) throws IOException {
+        List<ChannelSftp> channels = new ArrayList<>();
         try {
-            createDirs(dirPath);
-            client.put(in, path);
-            return true;
-        } catch (SftpException e) {
-            throw new IOException(e);
+            while (channels.size() < options.getSftpMaxChannels() && channelPermits.availablePermits() > 0) {
+                channels.add(acquireChannel());
+            }
+        } finally {
+            channels.forEach(this::releaseChannel);
         }
+        FileSystemClient.super.warmUp(paths);
     }
 
     @Override
-    public boolean deleteFile(@NonNull String path) throws IOException {
-        try {
-            if (fileExists(path)) {
-                client.rm(path);
+    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(path)) {
+            return withChannel(channel -> {
+                if (fileExists(channel, path)) {
+                    return false;
+                }
+                createDirs(channel, FilenameUtils.getFullPathNoEndSeparator(path));
+                channel.put(in, path);
                 return true;
-            } else {
-                return false;
-            }
-        } catch (SftpException e) {
-            throw new IOException(e);
+            });
         }
     }
 
     @Override
-    public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
-        if (validateBeforeMove(source, target)) {
-            return false;
+    public boolean deleteFile(@NonNull String path) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(path)) {
+            // removed right away, the status tells whether it was present, which saves a round trip per file
+            return withChannel(channel -> {
+                try {
+                    channel.rm(path);
+                    return true;
+                } catch (SftpException e) {
+                    if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                        return false;
+                    }
+                    throw e;
+                }
+            });
         }
-        try {
-            client.rename(source, target);
-            return true;
-        } catch (SftpException e) {
-            throw new IOException(e);
+    }
+
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(dir)) {
+            return withChannel(channel -> {
+                try {
+                    channel.rmdir(dir);
+                    return true;
+                } catch (SftpException e) {
+                    if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                        return false;
+                    }
+                    throw e;
+                }
+            });
         }
     }
 
     @Override
-    public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
-        if (validateBeforeMove(source, target)) {
-            return false;
+    public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(source, target)) {
+            return withChannel(channel -> {
+                if (validateBeforeMove(channel, source, target)) {
+                    return false;
+                }
+                channel.rename(source, target);
+                return true;
+            });
         }
-        File tempFile = new File(FileUtils.getTempDirectory(), FilenameUtils.getName(source));
-        FileUtils.copyInputStreamToFile(getInputStream(source), tempFile);
-        try (InputStream in = new FileInputStream(tempFile)) {
-            if (!createFile(target, in)) {
+    }
+
+    @Override
+    public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(source, target)) {
+            if (withChannel(channel -> validateBeforeMove(channel, source, target))) {
                 return false;
             }
+            File tempFile = Files.createTempFile("sftp-copy-", "-" + FilenameUtils.getName(source)).toFile();
+            try {
+                try (InputStream in = getInputStream(source)) {
+                    if (in == null) {
+                        return false;
+                    }
+                    try (OutputStream out = new FileOutputStream(tempFile)) {
+                        options.getBufferPool().copy(in, out);
+                    }
+                }
+                try (InputStream in = new FileInputStream(tempFile)) {
+                    return createFile(target, in);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
         }
-        Files.delete(tempFile.toPath());
-        return true;
     }
 
     @Override
     public InputStream getInputStream(@NonNull String path) throws IOException {
-        if (!fileExists(path)) {
-            return null;
-        }
+        return getInputStream(path, 0);
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path, long offset) throws IOException {
+        ChannelSftp channel = acquireChannel();
+        InputStream in = null;
         try {
-            return client.get(path);
+            if (fileExists(channel, path)) {
+                in = releaseOnClose(channel.get(path, null, offset), channel);
+            }
+            return in;
         } catch (SftpException e) {
             throw new IOException(e);
+        } finally {
+            if (in == null) {
+                releaseChannel(channel);
+            }
         }
     }
 
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        return withChannel(channel -> {
+            if (!fileExists(channel, path)) {
+                return false;
+            }
+            channel.setMtime(path, (int) mtime.getEpochSecond());
+            return true;
+        });
+    }
+
     @Override
     public FileMetadata getFileMetadata(@NonNull String path) throws IOException {
-        if (!fileExists(path)) {
+        return withChannel(channel -> {
+            SftpATTRS attrs = stat(channel, path);
+            return attrs == null ? null : toFileMetadata(path, attrs);
+        });
+    }
+
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        return listFiles(dir, "*");
+    }
+
+    /**
+     * SFTP has no server side filtering, the glob is passed to <code>ls</code> and JSch matches it while the
+     * directory entries arrive, so only matching entries are kept.
+     */
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<FileMetadata> files = new ArrayList<>();
+        boolean listed = withChannel(channel -> ls(channel, dir, prefix + glob, entry -> {
+            if (entry.getAttrs().isReg()) {
+                files.add(toFileMetadata(prefix + entry.getFilename(), entry.getAttrs()));
+            }
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        }));
+        return listed ? files : null;
+    }
+
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<String> dirs = new ArrayList<>();
+        boolean listed = withChannel(channel -> ls(channel, dir, dir, entry -> {
+            String name = entry.getFilename();
+            if (entry.getAttrs().isDir() && !".".equals(name) && !"..".equals(name)) {
+                dirs.add(prefix + name);
+            }
+            return ChannelSftp.LsEntrySelector.CONTINUE;
+        }));
+        return listed ? dirs : null;
+    }
+
+    @Override
+    public String getChecksum(@NonNull String path, @NonNull String algorithm) throws IOException {
+        FileMetadata metadata = getFileMetadata(path);
+        if (metadata == null) {
             return null;
         }
-        SftpATTRS attrs;
-        try {
-            attrs = client.stat(path);
-        } catch (SftpException e) {
-            throw new IOException(e);
+        String name = Checksums.normalize(algorithm);
+        String checksum = execHashCommand(path, name, metadata.getSize());
+        if (checksum == null) {
+            log.debug("The SFTP server can not compute {} checksums, read the whole file.", name);
+            return FileSystemClient.super.getChecksum(path, name);
+        }
+        return checksum;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ChannelSftp channel;
+        while ((channel = idleChannels.poll()) != null) {
+            channel.disconnect();
+        }
+        // channels still in use are closed with the session
+        if (session != null) {
+            session.disconnect();
         }
+        jsch = null;
+        session = null;
+    }
+
+    private static FileMetadata toFileMetadata(String path, SftpATTRS attrs) {
         Optional<Instant> mtime = Optional.of(attrs)
                                           .map(SftpATTRS::getMTime)
                                           .map(Instant::ofEpochSecond);
@@ -163,67 +366,230 @@ public class SftpClient implements FileSystemClient {
                            .build();
     }
 
-    @Override
-    public void close() throws IOException {
-        if (client != null) {
-            client.disconnect();
+    private void applyTransportOptions(TransportOptions tuned) throws JSchException {
+        if (tuned.getTimeout() != null) {
+            session.setTimeout((int) tuned.getTimeout().toMillis());
         }
-        if (session != null) {
-            session.disconnect();
+        if (TunedSocketFactory.isNeeded(tuned)) {
+            session.setSocketFactory(new TunedSocketFactory(tuned).forJsch());
+        }
+        List<String> ciphers = tuned.getPreferredCiphers()
+                                    .stream()
+                                    .filter(cipher -> {
+                                        boolean known = JSch.getConfig(cipher) != null;
+                                        if (!known) {
+                                            log.warn("Cipher {} is not supported by JSch, skip it.", cipher);
+                                        }
+                                        return known;
+                                    })
+                                    .collect(Collectors.toList());
+        if (!ciphers.isEmpty()) {
+            LinkedHashSet<String> proposal = new LinkedHashSet<>(ciphers);
+            proposal.addAll(Arrays.asList(session.getConfig("cipher.c2s").split(",")));
+            session.setConfig("cipher.c2s", String.join(",", proposal));
+            session.setConfig("cipher.s2c", String.join(",", proposal));
         }
-        jsch = null;
-        session = null;
-        client = null;
     }
 
-    private boolean fileExists(String path) throws IOException {
+    /**
+     * @return null if the command is not available or fails, once it can not be run or does not answer in time it is
+     * not tried again in this session
+     */
+    private String execHashCommand(String path, String algorithm, Long size) throws IOException {
+        String command = HASH_COMMANDS.get(algorithm);
+        if (command == null || !execAllowed) {
+            return null;
+        }
+        long timeout = EXEC_TIMEOUT_MILLIS + (size == null ? 0 : size / EXEC_BYTES_PER_MILLI);
+        long deadline = System.currentTimeMillis() + timeout;
+        ChannelExec exec = null;
         try {
-            client.stat(path);
-            return true;
-        } catch (SftpException e) {
-            if (Objects.equals(e.getMessage(), "No such file")) {
-                return false;
+            exec = (ChannelExec) session.openChannel("exec");
+            exec.setCommand(command + " -- '" + path.replace("'", "'\\''") + "'");
+            InputStream out = exec.getInputStream();
+            exec.connect((int) EXEC_TIMEOUT_MILLIS);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            // the channel input blocks without a timeout, so only what is available is read
+            while (out.available() > 0 || !exec.isClosed()) {
+                if (out.available() > 0) {
+                    output.write(buffer, 0, out.read(buffer, 0, Math.min(buffer.length, out.available())));
+                } else if (System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                } else {
+                    disableExec(command + " did not answer within " + timeout + " ms", null);
+                    return null;
+                }
+            }
+            int status = exec.getExitStatus();
+            if (status == 126 || status == 127) {
+                disableExec(command + " is not available, exit status " + status, null);
+                return null;
             }
+            if (status != 0) {
+                return null;
+            }
+            String checksum = output.toString(StandardCharsets.UTF_8.name()).trim().split("\\s+")[0];
+            return Checksums.isValid(checksum, algorithm) ? checksum.toLowerCase(Locale.ROOT) : null;
+        } catch (JSchException | IOException e) {
+            disableExec("the SSH server does not allow to execute commands", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new IOException(e);
+        } finally {
+            if (exec != null) {
+                exec.disconnect();
+            }
         }
     }
 
-    private boolean dirExists(String path) throws IOException {
+    private void disableExec(String reason, Exception e) {
+        execAllowed = false;
+        log.info("Checksums of {} are computed by reading the files, {}.", host, reason, e);
+    }
+
+    /**
+     * @return <code>false</code> if the directory is not present
+     */
+    private boolean ls(ChannelSftp channel, String dir, String pattern, ChannelSftp.LsEntrySelector selector)
+            throws SftpException {
+        SftpATTRS attrs = stat(channel, dir);
+        if (attrs == null || !attrs.isDir()) {
+            return false;
+        }
+        channel.ls(pattern, selector);
+        return true;
+    }
+
+    /**
+     * @return <code>null</code> if the path is not present
+     */
+    private static SftpATTRS stat(ChannelSftp channel, String path) throws SftpException {
         try {
-            client.cd(path);
-            return true;
+            return channel.stat(path);
         } catch (SftpException e) {
             if (Objects.equals(e.getMessage(), "No such file")) {
-                return false;
-            } else {
-                throw new IOException(e);
+                return null;
             }
+            throw e;
         }
     }
 
-    private void createDirs(String path) throws IOException {
-        if (!dirExists(path)) {
+    private static boolean fileExists(ChannelSftp channel, String path) throws SftpException {
+        return stat(channel, path) != null;
+    }
+
+    private static boolean dirExists(ChannelSftp channel, String path) throws SftpException {
+        SftpATTRS attrs = stat(channel, path);
+        return attrs != null && attrs.isDir();
+    }
+
+    private static void createDirs(ChannelSftp channel, String path) throws SftpException {
+        if (!dirExists(channel, path)) {
             String parent = Paths.get(path).getParent().toString();
-            createDirs(parent);
+            createDirs(channel, parent);
             try {
-                client.mkdir(path);
+                channel.mkdir(path);
             } catch (SftpException e) {
-                throw new IOException(e);
+                // another caller may have created it meanwhile
+                if (!dirExists(channel, path)) {
+                    throw e;
+                }
             }
         }
     }
 
-    private boolean validateBeforeMove(final String source, final String target) throws IOException {
-        if (!fileExists(source)) {
+    /**
+     * Borrow a channel for one operation.
+     */
+    private <T> T withChannel(SftpCall<T> call) throws IOException {
+        ChannelSftp channel = acquireChannel();
+        try {
+            return call.call(channel);
+        } catch (SftpException e) {
+            throw new IOException(e);
+        } finally {
+            releaseChannel(channel);
+        }
+    }
+
+    /**
+     * Take an idle channel or open another one, waiting while <code>sftpMaxChannels</code> are in use.
+     */
+    private ChannelSftp acquireChannel() throws IOException {
+        try {
+            channelPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        try {
+            ChannelSftp channel;
+            while ((channel = idleChannels.poll()) != null) {
+                if (channel.isConnected()) {
+                    return channel;
+                }
+            }
+            return openChannel();
+        } catch (JSchException e) {
+            channelPermits.release();
+            throw new IOException(e);
+        }
+    }
+
+    private void releaseChannel(ChannelSftp channel) {
+        if (channel.isConnected()) {
+            idleChannels.push(channel);
+        }
+        channelPermits.release();
+    }
+
+    private ChannelSftp openChannel() throws JSchException {
+        ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+        channel.connect();
+        if (bulkRequests > 0) {
+            channel.setBulkRequests(bulkRequests);
+        }
+        return channel;
+    }
+
+    private InputStream releaseOnClose(InputStream in, ChannelSftp channel) {
+        return new ProxyInputStream(in) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    releaseChannel(channel);
+                }
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface SftpCall<T> {
+        T call(ChannelSftp channel) throws IOException, SftpException;
+    }
+
+    private static boolean validateBeforeMove(ChannelSftp channel, String source, String target)
+            throws SftpException {
+        if (!fileExists(channel, source)) {
             log.error("Source file {} does not exist.", source);
             return true;
         }
-        if (fileExists(target)) {
+        if (fileExists(channel, target)) {
             log.error("Target file {} already exists.", target);
             return true;
         }
         // make sure necessary dirs exist
-        createDirs(FilenameUtils.getFullPath(target));
+        createDirs(channel, FilenameUtils.getFullPathNoEndSeparator(target));
         return false;
     }
 }
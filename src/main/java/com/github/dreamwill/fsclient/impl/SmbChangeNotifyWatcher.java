@@ -0,0 +1,247 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.watch.ChangeEvent;
+import com.github.dreamwill.fsclient.watch.ChangeListener;
+import com.github.dreamwill.fsclient.watch.DirectorySnapshot;
+import com.github.dreamwill.fsclient.watch.WatchOptions;
+import com.hierynomus.mserref.NtStatus;
+import com.hierynomus.msfscc.directory.FileNotifyInformation;
+import com.hierynomus.mssmb2.SMB2CompletionFilter;
+import com.hierynomus.mssmb2.messages.SMB2ChangeNotifyResponse;
+import com.hierynomus.smbj.common.SMBRuntimeException;
+import com.hierynomus.smbj.share.Directory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Waits for SMB2 CHANGE_NOTIFY responses on an open directory and turns the reported file names into events. Only
+ * the reported files are looked up, unless the server could not keep track (STATUS_NOTIFY_ENUM_DIR) or the
+ * connection was lost, then the directory is listed and compared with the snapshot of the files seen so far.
+ * <p>
+ * The watch is always armed before the directory is listed, so a change made while listing is reported afterwards
+ * instead of being lost.
+ */
+@Slf4j
+class SmbChangeNotifyWatcher implements Closeable {
+    private static final Set<SMB2CompletionFilter> FILTERS = EnumSet.of(
+            SMB2CompletionFilter.FILE_NOTIFY_CHANGE_FILE_NAME,
+            SMB2CompletionFilter.FILE_NOTIFY_CHANGE_SIZE,
+            SMB2CompletionFilter.FILE_NOTIFY_CHANGE_LAST_WRITE
+    );
+
+    private final SmbClient client;
+    private final String dir;
+    private final ChangeListener listener;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ExecutorService executor;
+    private DirectorySnapshot snapshot;
+    private volatile boolean closed;
+
+    private SmbChangeNotifyWatcher(SmbClient client, String dir, ChangeListener listener, WatchOptions options,
+                                   DirectorySnapshot snapshot) {
+        this.client = client;
+        this.dir = dir;
+        this.listener = listener;
+        this.minBackoffMillis = Math.max(1, options.getMinInterval().toMillis());
+        this.maxBackoffMillis = Math.max(minBackoffMillis, options.getMaxInterval().toMillis());
+        this.snapshot = snapshot;
+        this.executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("smb-watch-%d")
+                .daemon(true)
+                .build());
+    }
+
+    /**
+     * Arm the watch, list the directory as the baseline and start waiting for changes.
+     *
+     * @return the running watcher, or null if the directory is not present
+     */
+    static SmbChangeNotifyWatcher start(SmbClient client, String dir, ChangeListener listener, WatchOptions options)
+            throws IOException {
+        String path = StringUtils.removeEnd(dir, "/");
+        Directory directory = client.openDirectoryIfPresent(path);
+        if (directory == null) {
+            return null;
+        }
+        try {
+            Future<SMB2ChangeNotifyResponse> armed = directory.watchAsync(FILTERS, false);
+            List<FileMetadata> files = client.listFiles(path);
+            if (files == null) {
+                closeQuietly(directory);
+                return null;
+            }
+            SmbChangeNotifyWatcher watcher = new SmbChangeNotifyWatcher(client, path, listener, options,
+                    DirectorySnapshot.of(files));
+            watcher.executor.execute(() -> watcher.run(directory, armed));
+            return watcher;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(directory);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+    }
+
+    private void run(Directory armedDirectory, Future<SMB2ChangeNotifyResponse> armed) {
+        Directory directory = armedDirectory;
+        Future<SMB2ChangeNotifyResponse> pending = armed;
+        long backoffMillis = minBackoffMillis;
+        boolean resync = false;
+        while (!closed) {
+            try {
+                if (directory == null) {
+                    directory = client.openDirectory(dir);
+                    pending = directory.watchAsync(FILTERS, false);
+                }
+                if (resync) {
+                    // changes may have been missed, a removed directory reports its files as deleted
+                    rescan();
+                    resync = false;
+                }
+                backoffMillis = minBackoffMillis;
+                watch(directory, pending);
+                // the server has closed the watch
+                resync = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | IOException | SMBRuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                log.debug("Fail to watch directory {}, retry in {} ms.", dir, backoffMillis, e);
+                listener.onError(e instanceof IOException ? (IOException) e : new IOException(e));
+                resync = true;
+                if (!sleep(backoffMillis)) {
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            } finally {
+                if (directory != null) {
+                    closeQuietly(directory);
+                    directory = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the responses until the server cleans the watch up.
+     */
+    private void watch(Directory directory, Future<SMB2ChangeNotifyResponse> armed)
+            throws InterruptedException, ExecutionException, IOException {
+        Future<SMB2ChangeNotifyResponse> pending = armed;
+        while (!closed) {
+            SMB2ChangeNotifyResponse response = pending.get();
+            long status = response.getHeader().getStatusCode();
+            if (status == NtStatus.STATUS_NOTIFY_CLEANUP.getValue()) {
+                return;
+            }
+            // armed again before the changes are looked up
+            pending = directory.watchAsync(FILTERS, false);
+            List<FileNotifyInformation> changes = response.getFileNotifyInfoList();
+            if (status == NtStatus.STATUS_NOTIFY_ENUM_DIR.getValue() || changes.isEmpty()) {
+                rescan();
+            } else {
+                lookUp(changes);
+            }
+        }
+    }
+
+    private void lookUp(List<FileNotifyInformation> changes) throws IOException {
+        // the latest state of every reported file, a file may be reported several times in a row
+        Map<String, FileMetadata> current = new LinkedHashMap<>();
+        for (FileNotifyInformation change : changes) {
+            String path = dir + "/" + change.getFileName().replace('\\', '/');
+            if (!current.containsKey(path)) {
+                // directories and files which are gone already have no metadata
+                current.put(path, client.getFileMetadata(path));
+            }
+        }
+        List<ChangeEvent> events = new ArrayList<>();
+        current.forEach((path, metadata) -> {
+            ChangeEvent event = snapshot.change(path, metadata);
+            if (event != null) {
+                events.add(event);
+            }
+        });
+        publish(events);
+    }
+
+    private void rescan() throws IOException {
+        List<FileMetadata> files = client.listFiles(dir);
+        publish(snapshot.diff(files == null ? Collections.emptyList() : files));
+    }
+
+    private void publish(List<ChangeEvent> events) {
+        snapshot = snapshot.apply(events);
+        for (ChangeEvent event : events) {
+            if (closed) {
+                return;
+            }
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                log.warn("Change listener fails on {}.", event, e);
+            }
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The share stays connected, it is used by the other calls of the client.
+     */
+    private static void closeQuietly(Directory directory) {
+        try {
+            directory.close();
+        } catch (SMBRuntimeException e) {
+            log.debug("Fail to close the watched directory.", e);
+        }
+    }
+}
@@ -18,75 +18,166 @@ package com.github.dreamwill.fsclient.impl;
 
 import com.github.dreamwill.fsclient.FileMetadata;
 import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.TransportOptions;
+import com.github.dreamwill.fsclient.watch.ChangeListener;
+import com.github.dreamwill.fsclient.watch.WatchOptions;
 import com.hierynomus.msdtyp.AccessMask;
 import com.hierynomus.msdtyp.FileTime;
+import com.hierynomus.mserref.NtStatus;
 import com.hierynomus.msfscc.FileAttributes;
 import com.hierynomus.msfscc.fileinformation.FileAllInformation;
 import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
+import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
 import com.hierynomus.mssmb2.SMB2CreateDisposition;
 import com.hierynomus.mssmb2.SMB2CreateOptions;
 import com.hierynomus.mssmb2.SMB2ShareAccess;
+import com.hierynomus.mssmb2.SMBApiException;
+import com.hierynomus.protocol.commons.EnumWithValue;
 import com.hierynomus.protocol.commons.buffer.Buffer;
+import com.hierynomus.smbj.common.SMBRuntimeException;
 import com.hierynomus.smbj.SMBClient;
+import com.hierynomus.smbj.SmbConfig;
 import com.hierynomus.smbj.auth.AuthenticationContext;
 import com.hierynomus.smbj.connection.Connection;
 import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.Directory;
 import com.hierynomus.smbj.share.DiskShare;
 import com.hierynomus.smbj.utils.SmbFiles;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * SMB multiplexes requests over one connection and smbj sessions may be shared by threads, so operations of
+ * concurrent callers run in parallel. Operations which check and then change a path lock it.
+ * <p>
+ * smbj hands every caller of a share the same tree connect, so shares stay connected until the client is closed;
+ * closing one after a call would disconnect it under concurrent calls, open streams and watches.
+ */
 @Slf4j
 public class SmbClient implements FileSystemClient {
+    private static final int DEFAULT_READ_AHEAD_CHUNK_SIZE = 1024 * 1024;
+
     private SMBClient client;
+    private Connection connection;
     private Session session;
+    private ExecutorService readAheadExecutor;
+    private HandleTracker handles;
+    private int readAheadChunkSize;
     private String host;
     private Integer port;
     private String username;
     private String password;
+    private final TransportOptions options;
+    private final PathLocks pathLocks = new PathLocks();
+    private final Map<String, DiskShare> shares = new ConcurrentHashMap<>();
 
     public SmbClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password) {
+        this(host, port, username, password, TransportOptions.defaults());
+    }
+
+    public SmbClient(@NonNull String host, @NonNull Integer port, @NonNull String username, @NonNull String password,
+                     @NonNull TransportOptions options) {
         this.host = host;
         this.port = port;
         this.username = username;
         this.password = password;
+        this.options = options;
     }
 
     @Override
     public void connect() throws IOException {
-        client = new SMBClient();
-        Connection connection = client.connect(host, port);
+        TransportOptions tuned = TransportTuner.resolve(options, host, port);
+        client = new SMBClient(buildConfig(tuned));
+        connection = client.connect(host, port);
         AuthenticationContext ac;
         if (StringUtils.isNotBlank(username)) {
             ac = new AuthenticationContext(username, password.toCharArray(), host);
         } else {
             ac = AuthenticationContext.anonymous();
         }
-        session = connection.authenticate(ac);
+        attach(connection.authenticate(ac), tuned, connection.getNegotiatedProtocol().getMaxReadSize());
+    }
+
+    /**
+     * Work on an authenticated session, tests pass a double.
+     */
+    void attach(Session session, TransportOptions tuned, int maxReadSize) {
+        this.session = session;
+        shares.clear();
+        if (handles != null) {
+            // the handles belong to the previous session
+            handles.close();
+        }
+        handles = new HandleTracker("smb-handle", tuned.getSmbHandleIdleTimeout());
+
+        int chunkSize = tuned.getReadAheadChunkSize() > 0 ? tuned.getReadAheadChunkSize()
+                : tuned.getSmbReadBufferSize() > 0 ? tuned.getSmbReadBufferSize() : DEFAULT_READ_AHEAD_CHUNK_SIZE;
+        readAheadChunkSize = Math.min(chunkSize, maxReadSize);
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+            readAheadExecutor = null;
+        }
+        if (tuned.getReadAheadWindow() > 1) {
+            // bounded, every open stream keeps up to readAheadWindow reads in flight
+            int threads = Math.max(1, tuned.getReadAheadThreads());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new BasicThreadFactory.Builder()
+                    .namingPattern("smb-read-ahead-%d")
+                    .daemon(true)
+                    .build());
+            executor.allowCoreThreadTimeOut(true);
+            readAheadExecutor = executor;
+        }
     }
 
+    /**
+     * Connects the share of every path, it stays connected until the client is closed.
+     */
     @Override
-    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
-        if (fileExists(path)) {
-            return false;
+    public void warmUp(@NonNull Collection<String> paths) throws IOException {
+        for (String path : paths) {
+            try {
+                getDiskShare(path);
+            } catch (SMBApiException e) {
+                throw new IOException("Fail to connect the share " + shareName(path) + ".", e);
+            }
         }
-        String dir = FilenameUtils.getFullPathNoEndSeparator(path);
-        createDirs(dir);
+    }
+
+    @Override
+    public boolean createFile(@NonNull String path, @NonNull InputStream in) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(path)) {
+            if (fileExists(path)) {
+                return false;
+            }
+            String dir = FilenameUtils.getFullPathNoEndSeparator(path);
+            createDirs(dir);
 
-        try (DiskShare diskShare = getDiskShare(path)) {
+            DiskShare diskShare = getDiskShare(path);
             String filePath = cutShareName(path, diskShare);
             Set<AccessMask> accessMask = new HashSet<>();
             accessMask.add(AccessMask.GENERIC_WRITE);
@@ -105,7 +196,7 @@ public class SmbClient implements FileSystemClient {
                             createOptions
                     ); OutputStream os = file.getOutputStream()
             ) {
-                IOUtils.copyLarge(in, os);
+                options.getBufferPool().copy(in, os);
             }
             return true;
         }
@@ -113,87 +204,180 @@ public class SmbClient implements FileSystemClient {
 
     @Override
     public boolean deleteFile(@NonNull String path) throws IOException {
-        if (fileExists(path)) {
-            try (DiskShare diskShare = getDiskShare(path)) {
-                String filePath = cutShareName(path, diskShare);
-                diskShare.rm(filePath);
+        // removed right away, the status tells whether it was present, which saves a round trip per file
+        try (PathLocks.Held ignored = pathLocks.lock(path)) {
+            DiskShare diskShare = getDiskShare(path);
+            diskShare.rm(cutShareName(path, diskShare));
+            return true;
+        } catch (SMBApiException e) {
+            if (isNotFound(e) || e.getStatus() == NtStatus.STATUS_FILE_IS_A_DIRECTORY) {
+                return false;
             }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean deleteDirectory(@NonNull String dir) throws IOException {
+        try (PathLocks.Held ignored = pathLocks.lock(dir)) {
+            DiskShare diskShare = getDiskShare(dir);
+            diskShare.rmdir(cutShareName(StringUtils.removeEnd(dir, "/"), diskShare), false);
             return true;
+        } catch (SMBApiException e) {
+            if (isNotFound(e) || e.getStatus() == NtStatus.STATUS_NOT_A_DIRECTORY) {
+                return false;
+            }
+            throw e;
         }
-        return false;
     }
 
     @Override
     public boolean moveFile(@NonNull String source, @NonNull String target) throws IOException {
-        if (validateBeforeMove(source, target)) {
-            return false;
-        }
-        DiskShare diskShare = getDiskShare(source);
-        String filePath = cutShareName(source, diskShare);
-        try (
-                com.hierynomus.smbj.share.File file = diskShare.openFile(
-                        filePath,
-                        EnumSet.of(AccessMask.DELETE, AccessMask.GENERIC_WRITE),
-                        EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
-                        SMB2ShareAccess.ALL,
-                        SMB2CreateDisposition.FILE_OPEN,
-                        null
-                )
-        ) {
-            String newName = cutShareName(target, getDiskShare(target)).replace("/", "\\");
-            file.rename(newName, true);
+        try (PathLocks.Held ignored = pathLocks.lock(source, target)) {
+            if (validateBeforeMove(source, target)) {
+                return false;
+            }
+            DiskShare diskShare = getDiskShare(source);
+            try (
+                    com.hierynomus.smbj.share.File file = diskShare.openFile(
+                            cutShareName(source, diskShare),
+                            EnumSet.of(AccessMask.DELETE, AccessMask.GENERIC_WRITE),
+                            EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
+                            SMB2ShareAccess.ALL,
+                            SMB2CreateDisposition.FILE_OPEN,
+                            null
+                    )
+            ) {
+                // a file can only be renamed within its share
+                String newName = target.substring(shareName(target).length() + 1).replace("/", "\\");
+                file.rename(newName, true);
+            }
+            return true;
         }
-        return true;
     }
 
     @Override
     public boolean copyFile(@NonNull String source, @NonNull String target) throws IOException {
-        if (validateBeforeMove(source, target)) {
-            return false;
-        }
-        DiskShare sourceDiskShare = getDiskShare(source);
-        DiskShare targetDiskShare = getDiskShare(target);
-        try (
-                com.hierynomus.smbj.share.File sourceFile = sourceDiskShare.openFile(
-                        cutShareName(source, sourceDiskShare),
-                        EnumSet.of(AccessMask.FILE_READ_DATA),
-                        EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
-                        SMB2ShareAccess.ALL,
-                        SMB2CreateDisposition.FILE_OPEN,
-                        null
-                );
-                com.hierynomus.smbj.share.File targetFile = targetDiskShare.openFile(
-                        cutShareName(target, targetDiskShare),
-                        EnumSet.of(AccessMask.FILE_WRITE_DATA),
-                        EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
-                        SMB2ShareAccess.ALL,
-                        SMB2CreateDisposition.FILE_OVERWRITE_IF,
-                        EnumSet.of(SMB2CreateOptions.FILE_RANDOM_ACCESS)
-                )
-        ) {
-            sourceFile.remoteCopyTo(targetFile);
-            return true;
-        } catch (Buffer.BufferException e) {
-            throw new IOException(e);
+        try (PathLocks.Held ignored = pathLocks.lock(source, target)) {
+            if (validateBeforeMove(source, target)) {
+                return false;
+            }
+            DiskShare sourceDiskShare = getDiskShare(source);
+            DiskShare targetDiskShare = getDiskShare(target);
+            try (
+                    com.hierynomus.smbj.share.File sourceFile = sourceDiskShare.openFile(
+                            cutShareName(source, sourceDiskShare),
+                            EnumSet.of(AccessMask.FILE_READ_DATA),
+                            EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
+                            SMB2ShareAccess.ALL,
+                            SMB2CreateDisposition.FILE_OPEN,
+                            null
+                    );
+                    com.hierynomus.smbj.share.File targetFile = targetDiskShare.openFile(
+                            cutShareName(target, targetDiskShare),
+                            EnumSet.of(AccessMask.FILE_WRITE_DATA),
+                            EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
+                            SMB2ShareAccess.ALL,
+                            SMB2CreateDisposition.FILE_OVERWRITE_IF,
+                            EnumSet.of(SMB2CreateOptions.FILE_RANDOM_ACCESS)
+                    )
+            ) {
+                sourceFile.remoteCopyTo(targetFile);
+                return true;
+            } catch (Buffer.BufferException e) {
+                throw new IOException(e);
+            }
         }
     }
 
     @Override
     public InputStream getInputStream(@NonNull String path) throws IOException {
+        return getInputStream(path, 0);
+    }
+
+    @Override
+    public InputStream getInputStream(@NonNull String path, long offset) throws IOException {
         if (!fileExists(path)) {
             return null;
         }
         DiskShare diskShare = getDiskShare(path);
-        String filePath = cutShareName(path, diskShare);
         com.hierynomus.smbj.share.File remoteFile = diskShare.openFile(
-                filePath,
+                cutShareName(path, diskShare),
                 EnumSet.of(AccessMask.GENERIC_READ),
                 null,
                 SMB2ShareAccess.ALL,
                 SMB2CreateDisposition.FILE_OPEN,
                 null
         );
-        return remoteFile.getInputStream();
+        // the file lives as long as the stream, the share is used by other calls and stays connected
+        HandleTracker.Handle handle = handles.open(path, remoteFile);
+        try {
+            if (readAheadExecutor == null) {
+                InputStream in = remoteFile.getInputStream();
+                // smbj only moves the offset of the next read request
+                if (in.skip(offset) != offset) {
+                    throw new IOException("Fail to skip to offset " + offset + " of " + path + ".");
+                }
+                return new ProxyInputStream(in) {
+                    @Override
+                    protected void beforeRead(int n) throws IOException {
+                        handle.touch();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            handle.close();
+                        }
+                    }
+                };
+            }
+            return new ReadAheadInputStream(
+                    (buffer, fileOffset, bufferOffset, length) -> {
+                        handle.touch();
+                        return remoteFile.read(buffer, fileOffset, bufferOffset, length);
+                    },
+                    readAheadChunkSize,
+                    options.getReadAheadWindow(),
+                    readAheadExecutor,
+                    handle,
+                    options.getBufferPool(),
+                    offset
+            );
+        } catch (IOException | RuntimeException e) {
+            handle.closeQuietly();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean setModificationTime(@NonNull String path, @NonNull Instant mtime) throws IOException {
+        if (!fileExists(path)) {
+            return false;
+        }
+        DiskShare diskShare = getDiskShare(path);
+        try (
+                com.hierynomus.smbj.share.File remoteFile = diskShare.openFile(
+                        cutShareName(path, diskShare),
+                        EnumSet.of(AccessMask.FILE_WRITE_ATTRIBUTES),
+                        null,
+                        SMB2ShareAccess.ALL,
+                        SMB2CreateDisposition.FILE_OPEN,
+                        null
+                )
+        ) {
+            // file attributes 0 leaves them unchanged
+            remoteFile.setFileInformation(new FileBasicInformation(
+                    FileBasicInformation.DONT_SET,
+                    FileBasicInformation.DONT_SET,
+                    FileTime.ofEpochMillis(mtime.toEpochMilli()),
+                    FileBasicInformation.DONT_SET,
+                    0
+            ));
+        }
+        return true;
     }
 
     @Override
@@ -201,12 +385,11 @@ public class SmbClient implements FileSystemClient {
         if (!fileExists(path)) {
             return null;
         }
-        DiskShare diskShare = getDiskShare(path);
-        String filePath = cutShareName(path, diskShare);
         FileAllInformation fileAllInformation;
+        DiskShare diskShare = getDiskShare(path);
         try (
                 com.hierynomus.smbj.share.File remoteFile = diskShare.openFile(
-                        filePath,
+                        cutShareName(path, diskShare),
                         EnumSet.of(AccessMask.GENERIC_READ),
                         null,
                         SMB2ShareAccess.ALL,
@@ -234,35 +417,214 @@ public class SmbClient implements FileSystemClient {
                            .build();
     }
 
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir) throws IOException {
+        return listFiles(dir, "*");
+    }
+
+    /**
+     * The glob is the search pattern of QUERY_DIRECTORY, so the server only returns matching entries. Servers match
+     * case insensitively, the names are matched again to keep the glob case sensitive.
+     */
+    @Override
+    public List<FileMetadata> listFiles(@NonNull String dir, @NonNull String glob) throws IOException {
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<FileIdBothDirectoryInformation> entries = list(dir, glob);
+        if (entries == null) {
+            return null;
+        }
+        return entries.stream()
+                      .filter(info -> !isDirectory(info))
+                      .filter(info -> FilenameUtils.wildcardMatch(info.getFileName(), glob))
+                      .map(info -> FileMetadata.builder()
+                                               .path(prefix + info.getFileName())
+                                               .size(info.getEndOfFile())
+                                               .mtime(Optional.of(info.getLastWriteTime())
+                                                              .map(FileTime::toEpochMillis)
+                                                              .map(Instant::ofEpochMilli))
+                                               .ctime(Optional.of(info.getCreationTime())
+                                                              .map(FileTime::toEpochMillis)
+                                                              .map(Instant::ofEpochMilli))
+                                               .build())
+                      .collect(Collectors.toList());
+    }
+
+    /**
+     * Junctions and links to directories are left out, like {@link LocalFileSystemClient} does not follow links, so
+     * walking or deleting a tree never leaves it.
+     */
+    @Override
+    public List<String> listDirectories(@NonNull String dir) throws IOException {
+        String prefix = StringUtils.appendIfMissing(dir, "/");
+        List<FileIdBothDirectoryInformation> entries = list(dir, null);
+        if (entries == null) {
+            return null;
+        }
+        return entries.stream()
+                      .filter(SmbClient::isDirectory)
+                      .filter(info -> !EnumWithValue.EnumUtils.isSet(info.getFileAttributes(),
+                              FileAttributes.FILE_ATTRIBUTE_REPARSE_POINT))
+                      .map(FileIdBothDirectoryInformation::getFileName)
+                      .filter(name -> !".".equals(name) && !"..".equals(name))
+                      .map(name -> prefix + name)
+                      .collect(Collectors.toList());
+    }
+
+    /**
+     * Watch the directory with SMB2 CHANGE_NOTIFY, the server reports changes as they happen and nothing is sent
+     * while the directory is idle. The options are only used to back off while the server can not be reached.
+     */
+    @Override
+    public Closeable watch(@NonNull String dir, @NonNull ChangeListener listener, @NonNull WatchOptions options)
+            throws IOException {
+        return SmbChangeNotifyWatcher.start(this, dir, listener, options);
+    }
+
+    /**
+     * @return streams which hold a file open
+     */
+    public int getOpenHandleCount() {
+        return handles == null ? 0 : handles.getOpenCount();
+    }
+
+    /**
+     * @return streams closed because they have not been used for <code>smbHandleIdleTimeout</code>
+     */
+    public long getForceClosedHandleCount() {
+        return handles == null ? 0 : handles.getForceClosedCount();
+    }
+
     @Override
     public void close() throws IOException {
+        if (handles != null) {
+            handles.close();
+        }
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+            readAheadExecutor = null;
+        }
+        for (DiskShare diskShare : shares.values()) {
+            try {
+                diskShare.close();
+            } catch (IOException | SMBRuntimeException e) {
+                log.debug("Fail to close the share {}.", diskShare.getSmbPath(), e);
+            }
+        }
+        shares.clear();
         if (client != null) {
             client.close();
         }
     }
 
+    private static SmbConfig buildConfig(TransportOptions tuned) {
+        SmbConfig.Builder builder = SmbConfig.builder();
+        if (tuned.getSmbReadBufferSize() > 0) {
+            builder.withReadBufferSize(tuned.getSmbReadBufferSize());
+        }
+        if (tuned.getSmbWriteBufferSize() > 0) {
+            builder.withWriteBufferSize(tuned.getSmbWriteBufferSize());
+        }
+        if (tuned.getSmbTransactBufferSize() > 0) {
+            builder.withTransactBufferSize(tuned.getSmbTransactBufferSize());
+        }
+        if (tuned.getTimeout() != null) {
+            builder.withTimeout(tuned.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            builder.withSoTimeout(tuned.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (TunedSocketFactory.isNeeded(tuned)) {
+            builder.withSocketFactory(new TunedSocketFactory(tuned));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the open directory, or null if it is not present
+     */
+    Directory openDirectoryIfPresent(String dir) throws IOException {
+        try {
+            return openDirectory(dir);
+        } catch (SMBApiException e) {
+            if (isNotFound(e) || e.getStatus() == NtStatus.STATUS_NOT_A_DIRECTORY) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    Directory openDirectory(String dir) throws IOException {
+        DiskShare diskShare = getDiskShare(dir);
+        return diskShare.openDirectory(
+                cutShareName(dir, diskShare),
+                EnumSet.of(AccessMask.FILE_LIST_DIRECTORY),
+                null,
+                SMB2ShareAccess.ALL,
+                SMB2CreateDisposition.FILE_OPEN,
+                null
+        );
+    }
+
+    /**
+     * @return the entries matching the search pattern, or null if the directory is not present
+     */
+    private List<FileIdBothDirectoryInformation> list(String dir, String searchPattern) throws IOException {
+        DiskShare diskShare = getDiskShare(dir);
+        String dirPath = cutShareName(dir, diskShare);
+        if (!diskShare.folderExists(dirPath)) {
+            return null;
+        }
+        return diskShare.list(dirPath, searchPattern);
+    }
+
+    private static boolean isNotFound(SMBApiException e) {
+        return e.getStatus() == NtStatus.STATUS_OBJECT_NAME_NOT_FOUND
+                || e.getStatus() == NtStatus.STATUS_OBJECT_PATH_NOT_FOUND;
+    }
+
+    private static boolean isDirectory(FileIdBothDirectoryInformation info) {
+        return EnumWithValue.EnumUtils.isSet(info.getFileAttributes(), FileAttributes.FILE_ATTRIBUTE_DIRECTORY);
+    }
+
+    /**
+     * @return the connected share of this path, it is not closed after use
+     */
     private DiskShare getDiskShare(String path) {
-        String shareName = Arrays.stream(path.split("/"))
-                                 .filter(StringUtils::isNotBlank)
-                                 .findFirst()
-                                 .orElseThrow(IllegalArgumentException::new);
-        return (DiskShare) session.connectShare(shareName);
+        String shareName = shareName(path);
+        DiskShare diskShare = shares.get(shareName);
+        if (diskShare != null && diskShare.isConnected()) {
+            return diskShare;
+        }
+        // connected again if the server has dropped it
+        return shares.compute(shareName, (name, share) ->
+                share != null && share.isConnected() ? share : (DiskShare) session.connectShare(name));
+    }
+
+    private static String shareName(String path) {
+        return Arrays.stream(path.split("/"))
+                     .filter(StringUtils::isNotBlank)
+                     .findFirst()
+                     .orElseThrow(IllegalArgumentException::new);
     }
 
     private void createDirs(String path) throws IOException {
-        try (DiskShare diskShare = getDiskShare(path)) {
-            new SmbFiles().mkdirs(diskShare, cutShareName(path, diskShare));
+        DiskShare diskShare = getDiskShare(path);
+        String dirPath = cutShareName(path, diskShare);
+        try {
+            new SmbFiles().mkdirs(diskShare, dirPath);
+        } catch (SMBApiException e) {
+            // another caller may have created it meanwhile
+            if (!diskShare.folderExists(dirPath)) {
+                throw e;
+            }
         }
     }
 
     private boolean fileExists(String path) throws IOException {
-        try (DiskShare diskShare = getDiskShare(path)) {
-            if (diskShare.folderExists(cutShareName(FilenameUtils.getFullPathNoEndSeparator(path), diskShare))) {
-                String filePath = cutShareName(path, diskShare);
-                return diskShare.fileExists(filePath);
-            } else {
-                return false;
-            }
+        DiskShare diskShare = getDiskShare(path);
+        if (diskShare.folderExists(cutShareName(FilenameUtils.getFullPathNoEndSeparator(path), diskShare))) {
+            String filePath = cutShareName(path, diskShare);
+            return diskShare.fileExists(filePath);
+        } else {
+            return false;
         }
     }
 
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.TransportOptions;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Sizes buffers and windows to the bandwidth-delay product of the link.
+ * <p>
+ * The round trip time is the fastest of a few TCP handshakes with the server, the bandwidth comes from
+ * {@link TransportOptions#getBandwidthHint()}.
+ */
+@Slf4j
+final class TransportTuner {
+    private static final int PROBES = 3;
+    private static final int PROBE_TIMEOUT_MILLIS = 5000;
+    private static final int MIN_WINDOW = 64 * 1024;
+    private static final int MAX_SOCKET_BUFFER = 16 * 1024 * 1024;
+    private static final int MAX_FTP_BUFFER = 1024 * 1024;
+    private static final int MAX_SMB_BUFFER = 8 * 1024 * 1024;
+    /**
+     * JSch sends at most 32 KiB per SFTP request
+     */
+    private static final int SFTP_REQUEST_SIZE = 32 * 1024;
+    private static final int MIN_SFTP_BULK_REQUESTS = 16;
+    private static final int MAX_SFTP_BULK_REQUESTS = 512;
+
+    private TransportTuner() {
+    }
+
+    /**
+     * Return the options to connect with: unchanged unless auto tuning is on, otherwise with every size left at
+     * <code>0</code> filled in. Explicit sizes always win.
+     */
+    static TransportOptions resolve(TransportOptions options, String host, int port) {
+        if (!options.isAutoTune()) {
+            return options;
+        }
+        long rttNanos;
+        try {
+            rttNanos = measureRtt(host, port);
+        } catch (IOException e) {
+            log.warn("Fail to measure the round trip time to {}:{}, transport settings are not tuned.", host, port, e);
+            return options;
+        }
+        long bdp = Math.max(1, options.getBandwidthHint() * rttNanos / 1_000_000_000L);
+        log.info("Round trip time to {}:{} is {} µs, bandwidth-delay product is {} bytes.",
+                host, port, rttNanos / 1000, bdp);
+        TransportOptions.TransportOptionsBuilder builder = options.toBuilder();
+        if (options.getSocketSendBufferSize() == 0) {
+            builder.socketSendBufferSize(clamp(bdp, MIN_WINDOW, MAX_SOCKET_BUFFER));
+        }
+        if (options.getSocketReceiveBufferSize() == 0) {
+            builder.socketReceiveBufferSize(clamp(bdp, MIN_WINDOW, MAX_SOCKET_BUFFER));
+        }
+        if (options.getFtpBufferSize() == 0) {
+            builder.ftpBufferSize(clamp(bdp, MIN_WINDOW, MAX_FTP_BUFFER));
+        }
+        if (options.getSmbReadBufferSize() == 0) {
+            builder.smbReadBufferSize(clamp(bdp, MIN_WINDOW, MAX_SMB_BUFFER));
+        }
+        if (options.getSmbWriteBufferSize() == 0) {
+            builder.smbWriteBufferSize(clamp(bdp, MIN_WINDOW, MAX_SMB_BUFFER));
+        }
+        if (options.getSftpBulkRequests() == 0) {
+            long requests = (bdp + SFTP_REQUEST_SIZE - 1) / SFTP_REQUEST_SIZE;
+            builder.sftpBulkRequests(clamp(requests, MIN_SFTP_BULK_REQUESTS, MAX_SFTP_BULK_REQUESTS));
+        }
+        return builder.build();
+    }
+
+    /**
+     * A TCP handshake takes one round trip, the fastest of a few is the least disturbed by queuing.
+     */
+    static long measureRtt(String host, int port) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < PROBES; i++) {
+            try (Socket socket = new Socket()) {
+                long start = System.nanoTime();
+                socket.connect(address, PROBE_TIMEOUT_MILLIS);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Clamp and round up to a power of two, which buffer implementations tend to prefer.
+     */
+    private static int clamp(long value, int min, int max) {
+        long clamped = Math.max(min, Math.min(max, value));
+        return (int) Math.min(max, Long.highestOneBit(clamped - 1) << 1);
+    }
+}
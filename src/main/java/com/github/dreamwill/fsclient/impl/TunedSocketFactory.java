@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.TransportOptions;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+
+/**
+ * Creates sockets with the buffer sizes of {@link TransportOptions}. Buffers are set before connecting, otherwise
+ * the TCP window scale is already negotiated.
+ */
+class TunedSocketFactory extends SocketFactory {
+    private final int sendBufferSize;
+    private final int receiveBufferSize;
+    private final int connectTimeout;
+
+    TunedSocketFactory(TransportOptions options) {
+        this.sendBufferSize = options.getSocketSendBufferSize();
+        this.receiveBufferSize = options.getSocketReceiveBufferSize();
+        Duration timeout = options.getTimeout();
+        this.connectTimeout = timeout == null ? 0 : (int) timeout.toMillis();
+    }
+
+    static boolean isNeeded(TransportOptions options) {
+        return options.getSocketSendBufferSize() > 0 || options.getSocketReceiveBufferSize() > 0;
+    }
+
+    @Override
+    public Socket createSocket() throws SocketException {
+        Socket socket = new Socket();
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = createSocket();
+        socket.connect(new InetSocketAddress(host, port), connectTimeout);
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException {
+        Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        socket.connect(new InetSocketAddress(host, port), connectTimeout);
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port) throws IOException {
+        Socket socket = createSocket();
+        socket.connect(new InetSocketAddress(address, port), connectTimeout);
+        return socket;
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        Socket socket = createSocket();
+        socket.bind(new InetSocketAddress(localAddress, localPort));
+        socket.connect(new InetSocketAddress(address, port), connectTimeout);
+        return socket;
+    }
+
+    /**
+     * Adapt to the socket factory interface of JSch.
+     */
+    com.jcraft.jsch.SocketFactory forJsch() {
+        return new com.jcraft.jsch.SocketFactory() {
+            @Override
+            public Socket createSocket(String host, int port) throws IOException {
+                return TunedSocketFactory.this.createSocket(host, port);
+            }
+
+            @Override
+            public InputStream getInputStream(Socket socket) throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream(Socket socket) throws IOException {
+                return socket.getOutputStream();
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+/**
+ * Priority class of a transfer. Classes share the transfer slots by weight, so lower classes slow down under load
+ * but never starve.
+ */
+public enum Priority {
+    /**
+     * small transfers somebody is waiting for
+     */
+    INTERACTIVE(16),
+
+    NORMAL(4),
+
+    /**
+     * bulk exports and imports
+     */
+    BATCH(1);
+
+    private final int weight;
+
+    Priority(int weight) {
+        this.weight = weight;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a file from one client to another without a temporary file. Readers fill a bounded ring of buffers while
+ * the target client consumes them on the calling thread, so reading and writing overlap.
+ * <p>
+ * A large file may be split into ranges which several readers fetch at the same time, see
+ * {@link StreamingTransferOptions#getParallelism()}. The ranges are opened strictly in order and each reader has its
+ * own share of the ring, so the range which is written next always makes progress. A later range never takes the
+ * connection of a source with fewer connections than readers, like FTP, before an earlier one; such a source simply
+ * reads fewer ranges at the same time.
+ */
+@Slf4j
+public final class StreamingTransfer {
+    private static final long TERMINATION_MILLIS = 10_000;
+
+    private final FileSystemClient from;
+    private final String source;
+    private final StreamingTransferOptions options;
+    private final BufferPool pool;
+
+    private StreamingTransfer(FileSystemClient from, String source, StreamingTransferOptions options) {
+        if (options.getChunkSize() <= 0 || options.getRingSize() <= 0 || options.getParallelism() <= 0
+                || options.getSegmentSize() <= 0) {
+            throw new IllegalArgumentException("chunkSize, ringSize, parallelism and segmentSize must be positive.");
+        }
+        this.from = from;
+        this.source = source;
+        this.options = options;
+        this.pool = options.getBufferPool();
+    }
+
+    /**
+     * Copy the source file of one client to the target file of another. The same client copies the file itself,
+     * see {@link FileSystemClient#copyFile(String, String)}.
+     * <p>
+     * Note: Reads run on other threads than the write, so two clients which share one connection must be safe for
+     * concurrent use and must not serialize a transfer behind the other one.
+     *
+     * @param from   the client to read from
+     * @param source full file path on the client to read from
+     * @param to     the client to write to
+     * @param target full file path on the client to write to
+     * @return <code>true</code> if copied successfully; <code>false</code> if the source file does not exist or the
+     * target file exists
+     * @throws IOException If an I/O error occurred, a partial target file is deleted
+     */
+    public static boolean transfer(@NonNull FileSystemClient from, @NonNull String source,
+                                   @NonNull FileSystemClient to, @NonNull String target,
+                                   @NonNull StreamingTransferOptions options) throws IOException {
+        FileMetadata metadata = from.getFileMetadata(source);
+        if (metadata == null) {
+            log.error("Source file {} does not exist.", source);
+            return false;
+        }
+        boolean copied;
+        if (from == to) {
+            copied = from.copyFile(source, target);
+        } else if (to.getFileMetadata(target) != null) {
+            log.error("Target file {} already exists.", target);
+            return false;
+        } else {
+            copied = new StreamingTransfer(from, source, options).copy(metadata, to, target);
+        }
+        if (copied && options.isPreserveMtime()) {
+            Instant mtime = metadata.getMtime() == null ? null : metadata.getMtime().orElse(null);
+            if (mtime != null && !to.setModificationTime(target, mtime)) {
+                log.debug("Fail to preserve the modification time of {}.", target);
+            }
+        }
+        return copied;
+    }
+
+    private boolean copy(FileMetadata metadata, FileSystemClient to, String target) throws IOException {
+        List<Segment> segments = split(metadata.getSize());
+        int readers = Math.min(options.getParallelism(), segments.size());
+        ExecutorService executor = Executors.newFixedThreadPool(readers, new BasicThreadFactory.Builder()
+                .namingPattern("streaming-transfer-%d")
+                .daemon(true)
+                .build());
+        RingInputStream in = new RingInputStream(segments);
+        boolean created = false;
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                Segment next = i + 1 < segments.size() ? segments.get(i + 1) : null;
+                executor.execute(() -> read(segment, next));
+            }
+            created = to.createFile(target, in);
+            if (created && metadata.getSize() != null && in.transferred != metadata.getSize()) {
+                throw new IOException("Transferred " + in.transferred + " bytes of " + source + ", expected "
+                        + metadata.getSize());
+            }
+            return created;
+        } catch (IOException | RuntimeException e) {
+            // the target was absent before, and a client has created it at the latest once it reads the content
+            if (in.started) {
+                deletePartial(to, target);
+            }
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            in.close();
+        }
+    }
+
+    /**
+     * One range per segment size when reading in parallel, otherwise the whole file as one stream.
+     */
+    private List<Segment> split(Long size) {
+        int quota = Math.max(2, options.getRingSize() / options.getParallelism());
+        List<Segment> segments = new ArrayList<>();
+        long segmentSize = options.getSegmentSize();
+        if (options.getParallelism() == 1 || size == null || size < 2 * segmentSize) {
+            segments.add(new Segment(0, -1, options.getRingSize()));
+            segments.get(0).turn.countDown();
+            return segments;
+        }
+        for (long offset = 0; offset < size; offset += segmentSize) {
+            segments.add(new Segment(offset, Math.min(segmentSize, size - offset), quota));
+        }
+        segments.get(0).turn.countDown();
+        return segments;
+    }
+
+    /**
+     * Runs on a reader.
+     */
+    private void read(Segment segment, Segment next) {
+        try (InputStream in = open(segment, next)) {
+            if (in == null) {
+                throw new FileNotFoundException(source);
+            }
+            long remaining = segment.length < 0 ? Long.MAX_VALUE : segment.length;
+            while (remaining > 0) {
+                int length = (int) Math.min(options.getChunkSize(), remaining);
+                byte[] buffer = pool.acquire(options.getChunkSize());
+                int n;
+                try {
+                    n = IOUtils.read(in, buffer, 0, length);
+                } catch (IOException | RuntimeException e) {
+                    pool.release(buffer);
+                    throw e;
+                }
+                if (n > 0) {
+                    segment.put(new Chunk(buffer, n, null), pool);
+                } else {
+                    pool.release(buffer);
+                }
+                remaining -= n;
+                if (n < length) {
+                    break;
+                }
+            }
+            if (segment.length >= 0 && remaining > 0) {
+                throw new IOException("File " + source + " shrank while it was transferred.");
+            }
+            segment.put(Chunk.END, pool);
+        } catch (InterruptedIOException e) {
+            // a read timeout is an InterruptedIOException too, only a cancelled copy leaves without a failure
+            if (!Thread.currentThread().isInterrupted()) {
+                fail(segment, e);
+            }
+        } catch (IOException e) {
+            fail(segment, e);
+        } catch (RuntimeException e) {
+            fail(segment, new IOException(e));
+        }
+    }
+
+    /**
+     * Opens the range once the previous one is open, then lets the next one go even if this one failed.
+     */
+    private InputStream open(Segment segment, Segment next) throws IOException {
+        try {
+            segment.awaitTurn();
+            return segment.length < 0 ? from.getInputStream(source) : from.getInputStream(source, segment.offset);
+        } finally {
+            if (next != null) {
+                next.turn.countDown();
+            }
+        }
+    }
+
+    private void fail(Segment segment, IOException e) {
+        try {
+            segment.put(new Chunk(null, 0, e), pool);
+        } catch (InterruptedIOException interrupted) {
+            // the copy is cancelled, nobody waits for the failure
+        }
+    }
+
+    private static void deletePartial(FileSystemClient to, String target) {
+        try {
+            to.deleteFile(target);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Fail to delete the partial file {}.", target, e);
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(TERMINATION_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.warn("Transfer readers are still reading, their buffers are left to the garbage collector.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A range of the source file and the chunks read from it but not yet written.
+     */
+    private static final class Segment {
+        private final long offset;
+        /**
+         * <code>-1</code> up to the end of the file
+         */
+        private final long length;
+        /**
+         * one more than the share of the ring, for the end of the range
+         */
+        private final BlockingQueue<Chunk> chunks;
+        /**
+         * opened once the previous range is open
+         */
+        private final CountDownLatch turn = new CountDownLatch(1);
+
+        private Segment(long offset, long length, int quota) {
+            this.offset = offset;
+            this.length = length;
+            this.chunks = new ArrayBlockingQueue<>(quota + 1);
+        }
+
+        /**
+         * Blocks while the share of this range is used up, the buffer goes back to the pool if interrupted.
+         */
+        void put(Chunk chunk, BufferPool pool) throws InterruptedIOException {
+            try {
+                chunks.put(chunk);
+            } catch (InterruptedException e) {
+                if (chunk.buffer != null) {
+                    pool.release(chunk.buffer);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the writer.");
+            }
+        }
+
+        void awaitTurn() throws InterruptedIOException {
+            try {
+                turn.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the previous range.");
+            }
+        }
+
+        Chunk take() throws InterruptedIOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the readers.");
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private static final Chunk END = new Chunk(null, 0, null);
+
+        /**
+         * null at the end of a range or on failure
+         */
+        private final byte[] buffer;
+        private final int length;
+        private final IOException failure;
+
+        private Chunk(byte[] buffer, int length, IOException failure) {
+            this.buffer = buffer;
+            this.length = length;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Hands the chunks to the target client range by range, and returns every buffer to the pool.
+     */
+    private final class RingInputStream extends InputStream {
+        private final List<Segment> segments;
+        private int index;
+        private Chunk current;
+        private int position;
+        private long transferred;
+        /**
+         * the target client has asked for content
+         */
+        private volatile boolean started;
+        private boolean closed;
+
+        private RingInputStream(List<Segment> segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) {
+                return -1;
+            }
+            transferred++;
+            return current.buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureData()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current.buffer, position, b, off, n);
+            position += n;
+            transferred += n;
+            return n;
+        }
+
+        private boolean ensureData() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            started = true;
+            while (current == null || position == current.length) {
+                releaseCurrent();
+                if (index == segments.size()) {
+                    return false;
+                }
+                Chunk next = segments.get(index).take();
+                if (next.failure != null) {
+                    throw next.failure;
+                }
+                if (next == Chunk.END) {
+                    index++;
+                } else {
+                    current = next;
+                    position = 0;
+                }
+            }
+            return true;
+        }
+
+        private void releaseCurrent() {
+            if (current != null) {
+                pool.release(current.buffer);
+                current = null;
+            }
+        }
+
+        /**
+         * Called once the readers have stopped, the chunks they left are returned to the pool.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            releaseCurrent();
+            for (Segment segment : segments) {
+                Chunk chunk;
+                while ((chunk = segment.chunks.poll()) != null) {
+                    if (chunk.buffer != null) {
+                        pool.release(chunk.buffer);
+                    }
+                }
+            }
+        }
+    }
+}
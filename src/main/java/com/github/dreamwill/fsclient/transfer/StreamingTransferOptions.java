@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * How {@link StreamingTransfer} reads the source file.
+ * <p>
+ * The readers hold at most <code>ringSize</code> filled buffers of <code>chunkSize</code> bytes, unless a parallel
+ * read gives each range a minimum of two.
+ */
+@Getter
+@Builder
+public class StreamingTransferOptions {
+    /**
+     * bytes per buffer of the ring
+     */
+    @Builder.Default
+    private int chunkSize = BufferPool.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * buffers filled by the readers and not yet written, shared evenly by the readers
+     */
+    @Builder.Default
+    private int ringSize = 16;
+
+    /**
+     * readers fetching ranges of a large file at the same time, <code>1</code> reads it as one stream; only pays off
+     * if the source client reads ranges natively and concurrently; FTP has one connection and reads the ranges one
+     * after another
+     */
+    @Builder.Default
+    private int parallelism = 1;
+
+    /**
+     * bytes per range of a parallel read, smaller files are read as one stream
+     */
+    @Builder.Default
+    private long segmentSize = 8L * 1024 * 1024;
+
+    /**
+     * set the modification time of the source file on the target file
+     */
+    @Builder.Default
+    private boolean preserveMtime = true;
+
+    @Builder.Default
+    private BufferPool bufferPool = BufferPool.shared();
+
+    public static StreamingTransferOptions defaults() {
+        return StreamingTransferOptions.builder().build();
+    }
+}
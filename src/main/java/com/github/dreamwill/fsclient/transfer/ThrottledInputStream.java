@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Applies bandwidth limits, reports progress and stops a cancelled transfer.
+ */
+class ThrottledInputStream extends ProxyInputStream {
+    private final TransferHandle handle;
+    private final List<TokenBucket> buckets;
+    private boolean started;
+
+    ThrottledInputStream(InputStream in, TransferHandle handle, List<TokenBucket> buckets) {
+        super(in);
+        this.handle = handle;
+        this.buckets = buckets;
+    }
+
+    @Override
+    protected void beforeRead(int n) throws IOException {
+        started = true;
+        if (handle.isCancelled()) {
+            throw new IOException(new CancellationException("Transfer cancelled."));
+        }
+    }
+
+    /**
+     * @return whether the content has been asked for, a client creates the target before it reads the content
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    protected void afterRead(int n) throws IOException {
+        if (n <= 0) {
+            return;
+        }
+        for (TokenBucket bucket : buckets) {
+            bucket.acquire(n);
+        }
+        handle.getJob().getListener().onProgress(handle.addTransferredBytes(n));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket: refills at a fixed rate of bytes per second and holds at most one second of burst.
+ */
+class TokenBucket {
+    private final long bytesPerSecond;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take the tokens, waiting until the bucket holds enough. Requests larger than the burst go into debt, which
+     * keeps the average rate without splitting them.
+     */
+    void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+        lastRefill = now;
+    }
+}
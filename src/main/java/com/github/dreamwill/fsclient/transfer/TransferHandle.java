@@ -0,0 +1,72 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A submitted transfer.
+ */
+public class TransferHandle {
+    @Getter
+    private final TransferJob job;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final TransferManager manager;
+    private volatile boolean cancelled;
+
+    TransferHandle(TransferJob job, TransferManager manager) {
+        this.job = job;
+        this.manager = manager;
+    }
+
+    /**
+     * @return completes with <code>true</code> if the transfer succeeded, <code>false</code> if the target already
+     * existed or the source did not exist; completes exceptionally if it failed or was cancelled
+     */
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    /**
+     * Cancel the transfer. A queued transfer never starts, a running one stops at its next read and a partial upload
+     * is deleted, unless the target existed before the upload.
+     */
+    public void cancel() {
+        cancelled = true;
+        manager.cancel(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    CompletableFuture<Boolean> result() {
+        return result;
+    }
+
+    long addTransferredBytes(long bytes) {
+        return transferredBytes.addAndGet(bytes);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An upload or download scheduled by {@link TransferManager}.
+ */
+@Getter
+@Builder
+public class TransferJob {
+    /**
+     * Opens the content of an upload once the transfer starts.
+     */
+    @FunctionalInterface
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final FileSystemClient client;
+    /**
+     * the server, concurrency and bandwidth are limited per host
+     */
+    private final String host;
+    private final String path;
+    private final Source source;
+    private final OutputStream sink;
+    @Builder.Default
+    private final String tenant = "default";
+    @Builder.Default
+    private final Priority priority = Priority.NORMAL;
+    @Builder.Default
+    private final TransferListener listener = TransferListener.NONE;
+
+    /**
+     * Upload with {@link FileSystemClient#createFile(String, InputStream)}. The stream opened by the source is closed
+     * after the transfer.
+     */
+    public static TransferJobBuilder upload(@NonNull FileSystemClient client, @NonNull String host,
+                                            @NonNull String path, @NonNull Source source) {
+        return TransferJob.builder().client(client).host(host).path(path).source(source);
+    }
+
+    /**
+     * Download with {@link FileSystemClient#getInputStream(String)}. The sink is not closed.
+     */
+    public static TransferJobBuilder download(@NonNull FileSystemClient client, @NonNull String host,
+                                              @NonNull String path, @NonNull OutputStream sink) {
+        return TransferJob.builder().client(client).host(host).path(path).sink(sink);
+    }
+
+    public boolean isUpload() {
+        return source != null;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+/**
+ * Receives the progress of a transfer. Callbacks run on the transfer thread and should return quickly.
+ */
+public interface TransferListener {
+    TransferListener NONE = new TransferListener() {
+    };
+
+    default void onStarted() {
+    }
+
+    /**
+     * @param transferredBytes bytes transferred so far
+     */
+    default void onProgress(long transferredBytes) {
+    }
+
+    /**
+     * @param success <code>false</code> if the target already existed or the source did not exist
+     */
+    default void onCompleted(boolean success) {
+    }
+
+    default void onFailed(Throwable cause) {
+    }
+
+    default void onCancelled() {
+    }
+}
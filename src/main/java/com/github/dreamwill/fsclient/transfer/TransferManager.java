@@ -0,0 +1,320 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Schedules uploads and downloads of many threads over shared servers.
+ * <p>
+ * Transfers wait in a queue until a slot is free, both globally and for their host. Priority classes share the slots
+ * by weight, and tenants of the same class take turns, so a large batch neither starves interactive transfers nor
+ * the other tenants. Bandwidth is shaped by token buckets, globally and per host.
+ * <p>
+ * Transfers run concurrently, so transfers sharing one client instance need a client which is safe for concurrent
+ * use, or a per-host limit of 1.
+ */
+@Slf4j
+public class TransferManager implements Closeable {
+    private final int maxConcurrentTransfers;
+    private final int maxConcurrentTransfersPerHost;
+    private final long bandwidthPerHost;
+    private final TokenBucket globalBucket;
+    private final BufferPool bufferPool;
+    private final ExecutorService executor;
+    private final Object lock = new Object();
+    /**
+     * priority class to tenant to queued transfers, tenants in round-robin order
+     */
+    private final Map<Priority, LinkedHashMap<String, ArrayDeque<TransferHandle>>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Long> served = new EnumMap<>(Priority.class);
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<String, TokenBucket> hostBuckets = new HashMap<>();
+    private final Set<TransferHandle> active = new HashSet<>();
+    private int running;
+    private boolean closed;
+
+    /**
+     * @param maxConcurrentTransfers        transfers running at once
+     * @param maxConcurrentTransfersPerHost transfers running at once against one host
+     * @param bandwidth                     bytes per second of all transfers, <code>0</code> for no limit
+     * @param bandwidthPerHost              bytes per second of the transfers of one host, <code>0</code> for no limit
+     * @param bufferPool                    lends the copy buffers of downloads, <code>null</code> for the shared pool
+     */
+    @Builder
+    public TransferManager(int maxConcurrentTransfers, int maxConcurrentTransfersPerHost, long bandwidth,
+                           long bandwidthPerHost, BufferPool bufferPool) {
+        if (maxConcurrentTransfers <= 0 || maxConcurrentTransfersPerHost <= 0) {
+            throw new IllegalArgumentException("Concurrency limits must be positive.");
+        }
+        this.maxConcurrentTransfers = maxConcurrentTransfers;
+        this.maxConcurrentTransfersPerHost = maxConcurrentTransfersPerHost;
+        this.bandwidthPerHost = bandwidthPerHost;
+        this.globalBucket = bandwidth > 0 ? new TokenBucket(bandwidth) : null;
+        this.bufferPool = bufferPool != null ? bufferPool : BufferPool.shared();
+        this.executor = Executors.newFixedThreadPool(maxConcurrentTransfers, new BasicThreadFactory.Builder()
+                .namingPattern("transfer-%d")
+                .daemon(true)
+                .build());
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+            served.put(priority, 0L);
+        }
+    }
+
+    /**
+     * Queue a transfer.
+     */
+    public TransferHandle submit(@NonNull TransferJob job) {
+        Objects.requireNonNull(job.getClient(), "client");
+        Objects.requireNonNull(job.getHost(), "host");
+        Objects.requireNonNull(job.getPath(), "path");
+        if ((job.getSource() == null) == (job.getSink() == null)) {
+            throw new IllegalArgumentException("A transfer needs either a source or a sink.");
+        }
+        TransferHandle handle = new TransferHandle(job, this);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("TransferManager is closed.");
+            }
+            LinkedHashMap<String, ArrayDeque<TransferHandle>> tenants = queues.get(job.getPriority());
+            if (tenants.isEmpty()) {
+                catchUp(job.getPriority());
+            }
+            tenants.computeIfAbsent(job.getTenant(), tenant -> new ArrayDeque<>()).add(handle);
+            dispatch();
+        }
+        return handle;
+    }
+
+    /**
+     * @return transfers waiting for a slot
+     */
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queues.values().stream()
+                         .flatMap(tenants -> tenants.values().stream())
+                         .mapToInt(ArrayDeque::size)
+                         .sum();
+        }
+    }
+
+    public int getRunningCount() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    /**
+     * Cancel the queued and the running transfers and wait for nothing; running transfers stop at their next read,
+     * and their partial uploads are deleted.
+     */
+    @Override
+    public void close() {
+        List<TransferHandle> cancelled = new ArrayList<>();
+        synchronized (lock) {
+            closed = true;
+            queues.values().forEach(tenants -> {
+                tenants.values().forEach(cancelled::addAll);
+                tenants.clear();
+            });
+            cancelled.addAll(active);
+        }
+        cancelled.forEach(TransferHandle::cancel);
+        executor.shutdown();
+    }
+
+    void cancel(TransferHandle handle) {
+        boolean removed;
+        synchronized (lock) {
+            ArrayDeque<TransferHandle> queue = queues.get(handle.getJob().getPriority()).get(handle.getJob().getTenant());
+            removed = queue != null && queue.remove(handle);
+        }
+        if (removed) {
+            handle.getJob().getListener().onCancelled();
+            handle.result().completeExceptionally(new CancellationException("Transfer cancelled."));
+        }
+    }
+
+    /**
+     * Start queued transfers while slots are free. Must hold the lock.
+     */
+    private void dispatch() {
+        while (running < maxConcurrentTransfers) {
+            TransferHandle next = pollNext();
+            if (next == null) {
+                return;
+            }
+            String host = next.getJob().getHost();
+            running++;
+            active.add(next);
+            runningPerHost.merge(host, 1, Integer::sum);
+            served.merge(next.getJob().getPriority(), 1L, Long::sum);
+            List<TokenBucket> buckets = new ArrayList<>(2);
+            if (globalBucket != null) {
+                buckets.add(globalBucket);
+            }
+            if (bandwidthPerHost > 0) {
+                buckets.add(hostBuckets.computeIfAbsent(host, key -> new TokenBucket(bandwidthPerHost)));
+            }
+            executor.execute(() -> run(next, buckets));
+        }
+    }
+
+    /**
+     * A class which was idle starts level with the busy ones, instead of claiming the service it did not use.
+     */
+    private void catchUp(Priority idle) {
+        queues.entrySet().stream()
+              .filter(entry -> entry.getKey() != idle && !entry.getValue().isEmpty())
+              .mapToDouble(entry -> (double) served.get(entry.getKey()) / entry.getKey().getWeight())
+              .min()
+              .ifPresent(level -> served.put(idle, Math.max(served.get(idle), (long) (level * idle.getWeight()))));
+    }
+
+    /**
+     * The class with the least service relative to its weight goes first, then its tenants take turns.
+     */
+    private TransferHandle pollNext() {
+        List<Priority> classes = new ArrayList<>();
+        for (Priority priority : Priority.values()) {
+            if (!queues.get(priority).isEmpty()) {
+                classes.add(priority);
+            }
+        }
+        classes.sort((a, b) -> Double.compare(
+                (double) served.get(a) / a.getWeight(), (double) served.get(b) / b.getWeight()));
+        for (Priority priority : classes) {
+            LinkedHashMap<String, ArrayDeque<TransferHandle>> tenants = queues.get(priority);
+            Iterator<Map.Entry<String, ArrayDeque<TransferHandle>>> iterator = tenants.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ArrayDeque<TransferHandle>> tenant = iterator.next();
+                TransferHandle candidate = firstRunnable(tenant.getValue());
+                if (candidate == null) {
+                    continue;
+                }
+                tenant.getValue().remove(candidate);
+                // the tenant moves to the end of the round
+                iterator.remove();
+                if (!tenant.getValue().isEmpty()) {
+                    tenants.put(tenant.getKey(), tenant.getValue());
+                }
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private TransferHandle firstRunnable(ArrayDeque<TransferHandle> queue) {
+        for (TransferHandle handle : queue) {
+            if (runningPerHost.getOrDefault(handle.getJob().getHost(), 0) < maxConcurrentTransfersPerHost) {
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    private void run(TransferHandle handle, List<TokenBucket> buckets) {
+        TransferJob job = handle.getJob();
+        TransferListener listener = job.getListener();
+        try {
+            if (handle.isCancelled()) {
+                throw new CancellationException("Transfer cancelled.");
+            }
+            listener.onStarted();
+            boolean success = job.isUpload() ? upload(handle, buckets) : download(handle, buckets);
+            listener.onCompleted(success);
+            handle.result().complete(success);
+        } catch (IOException | RuntimeException e) {
+            if (handle.isCancelled()) {
+                listener.onCancelled();
+                handle.result().completeExceptionally(new CancellationException("Transfer cancelled."));
+            } else {
+                log.warn("Transfer of {} failed.", job.getPath(), e);
+                listener.onFailed(e);
+                handle.result().completeExceptionally(e);
+            }
+        } finally {
+            synchronized (lock) {
+                running--;
+                active.remove(handle);
+                runningPerHost.computeIfPresent(job.getHost(), (host, count) -> count > 1 ? count - 1 : null);
+                if (!closed) {
+                    dispatch();
+                }
+            }
+        }
+    }
+
+    private static boolean upload(TransferHandle handle, List<TokenBucket> buckets) throws IOException {
+        TransferJob job = handle.getJob();
+        // clients may read the content before they find the target exists, only a file absent before is ours
+        boolean existed = job.getClient().getFileMetadata(job.getPath()) != null;
+        try (ThrottledInputStream in = new ThrottledInputStream(job.getSource().open(), handle, buckets)) {
+            try {
+                return job.getClient().createFile(job.getPath(), in);
+            } catch (IOException | RuntimeException e) {
+                if (!existed && in.isStarted()) {
+                    deletePartial(job);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static void deletePartial(TransferJob job) {
+        try {
+            job.getClient().deleteFile(job.getPath());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Fail to delete the partial file {}.", job.getPath(), e);
+        }
+    }
+
+    private boolean download(TransferHandle handle, List<TokenBucket> buckets) throws IOException {
+        TransferJob job = handle.getJob();
+        InputStream remote = job.getClient().getInputStream(job.getPath());
+        if (remote == null) {
+            return false;
+        }
+        try (InputStream in = new ThrottledInputStream(remote, handle, buckets)) {
+            bufferPool.copy(in, job.getSink());
+        }
+        return true;
+    }
+}
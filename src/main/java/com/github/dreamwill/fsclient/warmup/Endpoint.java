@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.warmup;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Singular;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A server to connect to at startup, see {@link WarmUp}.
+ */
+@Getter
+@Builder
+public class Endpoint {
+    /**
+     * Creates a client which is not connected yet.
+     */
+    @FunctionalInterface
+    public interface ClientFactory {
+        FileSystemClient create() throws IOException;
+    }
+
+    /**
+     * names the endpoint in the result and the log
+     */
+    private final String name;
+    /**
+     * resolved before the clients connect, <code>null</code> leaves the resolution to the clients
+     */
+    private final String host;
+    private final ClientFactory factory;
+    /**
+     * clients connected in parallel, e.g. one per worker sharing the endpoint
+     */
+    @Builder.Default
+    private final int connections = 1;
+    /**
+     * files, directories or SMB shares used first, see {@link FileSystemClient#warmUp(java.util.Collection)}
+     */
+    @Singular
+    private final List<String> paths;
+
+    public static EndpointBuilder of(@NonNull String name, String host, @NonNull ClientFactory factory) {
+        return Endpoint.builder().name(name).host(host).factory(factory);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.warmup;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The clients connected to one endpoint and how long it took.
+ */
+@Getter
+public class EndpointWarmUp {
+    private final String name;
+    /**
+     * time of the host lookup, <code>null</code> if the host has not been looked up
+     */
+    private final Duration resolveTime;
+    /**
+     * connected and warmed up, the caller owns and closes them
+     */
+    private final List<FileSystemClient> clients;
+    /**
+     * per client in {@link #getClients()}, time of {@link FileSystemClient#connect()}
+     */
+    private final List<Duration> connectTimes;
+    /**
+     * per client in {@link #getClients()}, time of {@link FileSystemClient#warmUp(java.util.Collection)}
+     */
+    private final List<Duration> warmUpTimes;
+    /**
+     * the lookup, connects and warm-ups which failed or timed out, their clients are closed
+     */
+    private final List<IOException> failures;
+
+    EndpointWarmUp(String name, Duration resolveTime, List<FileSystemClient> clients, List<Duration> connectTimes,
+                   List<Duration> warmUpTimes, List<IOException> failures) {
+        this.name = name;
+        this.resolveTime = resolveTime;
+        this.clients = clients;
+        this.connectTimes = connectTimes;
+        this.warmUpTimes = warmUpTimes;
+        this.failures = failures;
+    }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return the longest connect, the time until all clients of this endpoint were connected
+     */
+    public Duration getMaxConnectTime() {
+        return connectTimes.isEmpty() ? Duration.ZERO : Collections.max(connectTimes);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.warmup;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connects the clients of many endpoints at startup in parallel instead of one after the other, so a cold start
+ * takes about as long as the slowest endpoint and the first requests find connected clients.
+ * <p>
+ * Host names are looked up first, every client of an endpoint connects once its host is known, then
+ * {@link FileSystemClient#warmUp(Collection)} prepares the paths of the endpoint, e.g. connects the SMB shares or
+ * opens the SFTP channels. A failed endpoint does not hold up the others, it is reported in the result.
+ */
+@Slf4j
+public final class WarmUp {
+    private WarmUp() {
+    }
+
+    /**
+     * Connect and warm up the clients of these endpoints.
+     *
+     * @param endpoints servers with the number of clients to connect to each
+     * @param options   parallelism and timeout
+     * @return the connected clients with the time of every step, and the failures
+     */
+    public static WarmUpResult run(@NonNull Collection<Endpoint> endpoints, @NonNull WarmUpOptions options) {
+        if (options.getParallelism() <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive.");
+        }
+        long start = System.nanoTime();
+        long deadline = start + options.getTimeout().toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelism(),
+                new BasicThreadFactory.Builder()
+                        .namingPattern("warm-up-%d")
+                        .daemon(true)
+                        .build());
+        try {
+            Map<String, CompletableFuture<Duration>> lookups = new HashMap<>();
+            List<Pending> pending = new ArrayList<>();
+            for (Endpoint endpoint : endpoints) {
+                CompletableFuture<Duration> lookup = options.isResolveHosts() && endpoint.getHost() != null
+                        ? lookups.computeIfAbsent(endpoint.getHost(), host -> resolve(host, executor))
+                        : CompletableFuture.completedFuture(null);
+                List<CompletableFuture<Connection>> connections = new ArrayList<>();
+                for (int i = 0; i < endpoint.getConnections(); i++) {
+                    // a failed lookup is reported once, the clients try to resolve the host themselves
+                    connections.add(lookup.handle((time, e) -> time)
+                                          .thenApplyAsync(ignored -> connect(endpoint), executor));
+                }
+                pending.add(new Pending(endpoint, lookup, connections));
+            }
+            List<EndpointWarmUp> results = new ArrayList<>();
+            for (Pending p : pending) {
+                results.add(collect(p, deadline));
+            }
+            WarmUpResult result = new WarmUpResult(Duration.ofNanos(System.nanoTime() - start), results);
+            log(result);
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<Duration> resolve(String host, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                InetAddress.getAllByName(host);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            return Duration.ofNanos(System.nanoTime() - start);
+        }, executor);
+    }
+
+    /**
+     * Runs on the executor.
+     */
+    private static Connection connect(Endpoint endpoint) {
+        FileSystemClient client = null;
+        try {
+            client = endpoint.getFactory().create();
+            long start = System.nanoTime();
+            client.connect();
+            long connected = System.nanoTime();
+            if (!endpoint.getPaths().isEmpty()) {
+                client.warmUp(endpoint.getPaths());
+            }
+            return new Connection(client, Duration.ofNanos(connected - start),
+                    Duration.ofNanos(System.nanoTime() - connected));
+        } catch (Exception e) {
+            // also a checked exception thrown sneakily when the connect is interrupted at the timeout
+            IOUtils.closeQuietly(client);
+            throw new CompletionException(e);
+        }
+    }
+
+    private static EndpointWarmUp collect(Pending pending, long deadline) {
+        String name = pending.endpoint.getName();
+        List<IOException> failures = new ArrayList<>();
+        Duration resolveTime = null;
+        try {
+            resolveTime = await(pending.lookup, deadline);
+        } catch (IOException e) {
+            failures.add(new IOException("Fail to look up the host of " + name + ".", e));
+        }
+        List<FileSystemClient> clients = new ArrayList<>();
+        List<Duration> connectTimes = new ArrayList<>();
+        List<Duration> warmUpTimes = new ArrayList<>();
+        for (CompletableFuture<Connection> future : pending.connections) {
+            try {
+                Connection connection = await(future, deadline);
+                clients.add(connection.client);
+                connectTimes.add(connection.connectTime);
+                warmUpTimes.add(connection.warmUpTime);
+            } catch (IOException e) {
+                failures.add(new IOException("Fail to connect to " + name + ".", e));
+                // a connect which finishes after the deadline is not handed out
+                future.thenAccept(connection -> IOUtils.closeQuietly(connection.client));
+            }
+        }
+        return new EndpointWarmUp(name, resolveTime, clients, connectTimes, warmUpTimes, failures);
+    }
+
+    private static <T> T await(CompletableFuture<T> future, long deadline) throws IOException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static void log(WarmUpResult result) {
+        int connected = 0;
+        int failed = 0;
+        for (EndpointWarmUp endpoint : result.getEndpoints()) {
+            connected += endpoint.getClients().size();
+            failed += endpoint.getFailures().size();
+            log.debug("Endpoint {}: lookup {}, slowest connect {}, {} clients, {} failures.", endpoint.getName(),
+                    endpoint.getResolveTime(), endpoint.getMaxConnectTime(), endpoint.getClients().size(),
+                    endpoint.getFailures().size());
+        }
+        log.info("Connected {} clients to {} endpoints in {} ms, {} failures.", connected,
+                result.getEndpoints().size(), result.getElapsed().toMillis(), failed);
+    }
+
+    private static final class Pending {
+        private final Endpoint endpoint;
+        private final CompletableFuture<Duration> lookup;
+        private final List<CompletableFuture<Connection>> connections;
+
+        private Pending(Endpoint endpoint, CompletableFuture<Duration> lookup,
+                        List<CompletableFuture<Connection>> connections) {
+            this.endpoint = endpoint;
+            this.lookup = lookup;
+            this.connections = connections;
+        }
+    }
+
+    private static final class Connection {
+        private final FileSystemClient client;
+        private final Duration connectTime;
+        private final Duration warmUpTime;
+
+        private Connection(FileSystemClient client, Duration connectTime, Duration warmUpTime) {
+            this.client = client;
+            this.connectTime = connectTime;
+            this.warmUpTime = warmUpTime;
+        }
+    }
+}
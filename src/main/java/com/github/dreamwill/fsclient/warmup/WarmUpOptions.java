@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.warmup;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * How {@link WarmUp} connects the endpoints.
+ */
+@Getter
+@Builder
+public class WarmUpOptions {
+    /**
+     * host lookups and connects running at once, over all endpoints
+     */
+    @Builder.Default
+    private int parallelism = 16;
+
+    /**
+     * connections which are not ready by then are given up and reported as failed
+     */
+    @Builder.Default
+    private Duration timeout = Duration.ofSeconds(60);
+
+    /**
+     * look the host names up before connecting, the JVM keeps the addresses for the clients
+     */
+    @Builder.Default
+    private boolean resolveHosts = true;
+
+    public static WarmUpOptions defaults() {
+        return WarmUpOptions.builder().build();
+    }
+}
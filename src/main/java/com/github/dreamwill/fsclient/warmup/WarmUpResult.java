@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.warmup;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What {@link WarmUp} has connected.
+ */
+@Getter
+public class WarmUpResult {
+    /**
+     * wall time of the whole warm-up
+     */
+    private final Duration elapsed;
+    /**
+     * in the order of the endpoints given
+     */
+    private final List<EndpointWarmUp> endpoints;
+
+    WarmUpResult(Duration elapsed, List<EndpointWarmUp> endpoints) {
+        this.elapsed = elapsed;
+        this.endpoints = endpoints;
+    }
+
+    public boolean isComplete() {
+        return endpoints.stream().allMatch(EndpointWarmUp::isComplete);
+    }
+
+    /**
+     * @return the connected clients of this endpoint, empty if the name is unknown
+     */
+    public List<FileSystemClient> getClients(@NonNull String name) {
+        return endpoints.stream()
+                        .filter(endpoint -> endpoint.getName().equals(name))
+                        .findFirst()
+                        .map(EndpointWarmUp::getClients)
+                        .orElse(Collections.emptyList());
+    }
+}
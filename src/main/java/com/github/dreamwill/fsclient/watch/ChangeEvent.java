@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import lombok.Getter;
+
+/**
+ * A file of a watched directory which has been created, modified or deleted.
+ */
+@Getter
+public class ChangeEvent {
+    private final ChangeType type;
+    /**
+     * full file path
+     */
+    private final String path;
+    /**
+     * the new metadata, <code>null</code> if the file has been deleted
+     */
+    private final FileMetadata metadata;
+
+    public ChangeEvent(ChangeType type, String path, FileMetadata metadata) {
+        this.type = type;
+        this.path = path;
+        this.metadata = metadata;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + path;
+    }
+}
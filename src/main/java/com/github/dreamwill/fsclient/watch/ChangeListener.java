@@ -0,0 +1,33 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import java.io.IOException;
+
+/**
+ * Receives the changes of a watched directory. Callbacks run on the watching thread, one at a time, and should
+ * return quickly.
+ */
+public interface ChangeListener {
+    void onChange(ChangeEvent event);
+
+    /**
+     * The directory could not be checked, the watch keeps trying.
+     */
+    default void onError(IOException cause) {
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Path, size and modification time of the files of a directory at one point in time, kept in sorted parallel arrays
+ * instead of one object per file, so large directories stay cheap to remember. Comparing a snapshot with a new
+ * listing is a single merge pass.
+ */
+public final class DirectorySnapshot {
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final String[] paths;
+    private final long[] sizes;
+    private final long[] mtimes;
+
+    private DirectorySnapshot(String[] paths, long[] sizes, long[] mtimes) {
+        this.paths = paths;
+        this.sizes = sizes;
+        this.mtimes = mtimes;
+    }
+
+    public static DirectorySnapshot of(@NonNull Collection<FileMetadata> files) {
+        FileMetadata[] sorted = sort(files);
+        String[] paths = new String[sorted.length];
+        long[] sizes = new long[sorted.length];
+        long[] mtimes = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            paths[i] = sorted[i].getPath();
+            sizes[i] = sizeOf(sorted[i]);
+            mtimes[i] = mtimeOf(sorted[i]);
+        }
+        return new DirectorySnapshot(paths, sizes, mtimes);
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    public boolean contains(@NonNull String path) {
+        return Arrays.binarySearch(paths, path) >= 0;
+    }
+
+    /**
+     * @param files a new listing of the directory
+     * @return the changes from this snapshot to the listing, ordered by path
+     */
+    public List<ChangeEvent> diff(@NonNull Collection<FileMetadata> files) {
+        FileMetadata[] sorted = sort(files);
+        List<ChangeEvent> events = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < paths.length || j < sorted.length) {
+            int order = i == paths.length ? 1 : j == sorted.length ? -1 : paths[i].compareTo(sorted[j].getPath());
+            if (order < 0) {
+                events.add(new ChangeEvent(ChangeType.DELETED, paths[i++], null));
+            } else if (order > 0) {
+                events.add(new ChangeEvent(ChangeType.CREATED, sorted[j].getPath(), sorted[j]));
+                j++;
+            } else {
+                if (differs(i, sorted[j])) {
+                    events.add(new ChangeEvent(ChangeType.MODIFIED, sorted[j].getPath(), sorted[j]));
+                }
+                i++;
+                j++;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @param path    full file path
+     * @param current the metadata of the file now, <code>null</code> if it is not present
+     * @return the change of this file since the snapshot, or null if it did not change
+     */
+    public ChangeEvent change(@NonNull String path, FileMetadata current) {
+        int index = Arrays.binarySearch(paths, path);
+        if (current == null) {
+            return index < 0 ? null : new ChangeEvent(ChangeType.DELETED, path, null);
+        }
+        if (index < 0) {
+            return new ChangeEvent(ChangeType.CREATED, path, current);
+        }
+        return differs(index, current) ? new ChangeEvent(ChangeType.MODIFIED, path, current) : null;
+    }
+
+    /**
+     * @return a new snapshot with the changes applied, this snapshot is left untouched
+     */
+    public DirectorySnapshot apply(@NonNull Collection<ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return this;
+        }
+        TreeMap<String, ChangeEvent> changes = new TreeMap<>();
+        events.forEach(event -> changes.put(event.getPath(), event));
+        int capacity = paths.length + changes.size();
+        String[] newPaths = new String[capacity];
+        long[] newSizes = new long[capacity];
+        long[] newMtimes = new long[capacity];
+        int n = 0;
+        int i = 0;
+        for (ChangeEvent event : changes.values()) {
+            while (i < paths.length && paths[i].compareTo(event.getPath()) < 0) {
+                newPaths[n] = paths[i];
+                newSizes[n] = sizes[i];
+                newMtimes[n++] = mtimes[i++];
+            }
+            if (i < paths.length && paths[i].equals(event.getPath())) {
+                i++;
+            }
+            if (event.getType() != ChangeType.DELETED) {
+                newPaths[n] = event.getPath();
+                newSizes[n] = sizeOf(event.getMetadata());
+                newMtimes[n++] = mtimeOf(event.getMetadata());
+            }
+        }
+        int rest = paths.length - i;
+        System.arraycopy(paths, i, newPaths, n, rest);
+        System.arraycopy(sizes, i, newSizes, n, rest);
+        System.arraycopy(mtimes, i, newMtimes, n, rest);
+        n += rest;
+        return new DirectorySnapshot(Arrays.copyOf(newPaths, n), Arrays.copyOf(newSizes, n),
+                Arrays.copyOf(newMtimes, n));
+    }
+
+    private boolean differs(int index, FileMetadata current) {
+        return sizes[index] != sizeOf(current) || mtimes[index] != mtimeOf(current);
+    }
+
+    private static FileMetadata[] sort(Collection<FileMetadata> files) {
+        FileMetadata[] sorted = files.toArray(new FileMetadata[0]);
+        Arrays.sort(sorted, Comparator.comparing(FileMetadata::getPath));
+        return sorted;
+    }
+
+    private static long sizeOf(FileMetadata metadata) {
+        return metadata.getSize() == null ? UNKNOWN : metadata.getSize();
+    }
+
+    private static long mtimeOf(FileMetadata metadata) {
+        return Optional.ofNullable(metadata.getMtime())
+                       .flatMap(mtime -> mtime)
+                       .map(Instant::toEpochMilli)
+                       .orElse(UNKNOWN);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory of a server without change notifications by listing it again and again, see
+ * {@link WatchOptions} for how often. Every listing is compared with the {@link DirectorySnapshot} of the previous
+ * one. A directory which disappears reports all its files as deleted and is watched on.
+ * <p>
+ * Note: The listings are sent from a background thread, so the client must be safe for concurrent use or must not
+ * be used for anything else while it is watched.
+ */
+@Slf4j
+public final class PollingWatcher implements Closeable {
+    private final FileSystemClient client;
+    private final String dir;
+    private final ChangeListener listener;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private DirectorySnapshot snapshot;
+    private volatile long intervalMillis;
+    private volatile boolean closed;
+
+    private PollingWatcher(FileSystemClient client, String dir, ChangeListener listener, WatchOptions options,
+                           DirectorySnapshot snapshot) {
+        this.client = client;
+        this.dir = dir;
+        this.listener = listener;
+        this.minIntervalMillis = Math.max(1, options.getMinInterval().toMillis());
+        this.maxIntervalMillis = Math.max(minIntervalMillis, options.getMaxInterval().toMillis());
+        this.intervalMillis = minIntervalMillis;
+        this.snapshot = snapshot;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("directory-watch-%d")
+                .daemon(true)
+                .build());
+    }
+
+    /**
+     * List the directory once and keep watching it in the background.
+     *
+     * @return the running watch, or null if the directory is not present
+     * @throws IOException If the first listing failed
+     */
+    public static PollingWatcher start(@NonNull FileSystemClient client, @NonNull String dir,
+                                       @NonNull ChangeListener listener, @NonNull WatchOptions options)
+            throws IOException {
+        List<FileMetadata> files = client.listFiles(dir);
+        if (files == null) {
+            return null;
+        }
+        PollingWatcher watcher = new PollingWatcher(client, dir, listener, options, DirectorySnapshot.of(files));
+        watcher.schedule();
+        return watcher;
+    }
+
+    /**
+     * @return the time until the next listing, it adapts to how often the directory changes
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+    }
+
+    private void schedule() {
+        if (!closed) {
+            scheduler.schedule(this::poll, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void poll() {
+        boolean changed = false;
+        try {
+            List<FileMetadata> files = client.listFiles(dir);
+            if (files == null) {
+                files = Collections.emptyList();
+            }
+            List<ChangeEvent> events = snapshot.diff(files);
+            snapshot = DirectorySnapshot.of(files);
+            changed = !events.isEmpty();
+            for (ChangeEvent event : events) {
+                if (closed) {
+                    return;
+                }
+                notify(event);
+            }
+        } catch (IOException e) {
+            log.debug("Fail to list directory {}.", dir, e);
+            if (!closed) {
+                listener.onError(e);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Fail to watch directory {}.", dir, e);
+        }
+        intervalMillis = changed ? minIntervalMillis : Math.min(intervalMillis * 2, maxIntervalMillis);
+        schedule();
+    }
+
+    private void notify(ChangeEvent event) {
+        try {
+            listener.onChange(event);
+        } catch (RuntimeException e) {
+            log.warn("Change listener fails on {}.", event, e);
+        }
+    }
+}
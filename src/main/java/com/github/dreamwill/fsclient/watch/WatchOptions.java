@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * How often a polled directory is listed. The interval starts at <code>minInterval</code>, doubles after every
+ * listing without changes up to <code>maxInterval</code>, and drops back to <code>minInterval</code> once something
+ * changes, so busy directories are seen quickly and idle ones cost little.
+ */
+@Getter
+@Builder
+public class WatchOptions {
+    @Builder.Default
+    private Duration minInterval = Duration.ofSeconds(1);
+
+    @Builder.Default
+    private Duration maxInterval = Duration.ofSeconds(30);
+
+    public static WatchOptions defaults() {
+        return WatchOptions.builder().build();
+    }
+}
@@ -16,13 +16,30 @@
 
 package com.github.dreamwill.fsclient;
 
+import com.github.dreamwill.fsclient.archive.ArchiveFormat;
+import com.github.dreamwill.fsclient.archive.ArchiveResult;
+import com.github.dreamwill.fsclient.delete.DeleteResult;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipInputStream;
 
 abstract class BaseClientTest {
     public static final String never_exist_dir = "/dreamwill/never_exist/never_exist.doc";
@@ -36,6 +53,21 @@ abstract class BaseClientTest {
     public static final String move_target = "/dreamwill/move_to/target.txt";
     protected FileSystemClient client;
 
+    /**
+     * Create the files the tests expect, for clients which do not start with them.
+     */
+    static void createFixtures(FileSystemClient client) throws IOException {
+        for (String path : new String[]{already_exist, to_be_delete, copy_source, move_source}) {
+            client.createFile(path, new ByteArrayInputStream("abcdef 1234567890".getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    @Test
+    void should_warm_up_paths() throws IOException {
+        client.warmUp(Arrays.asList(already_exist, FilenameUtils.getFullPathNoEndSeparator(already_exist)));
+        Assertions.assertThat(client.getFileMetadata(already_exist)).isNotNull();
+    }
+
     @Test
     void should_create_a_file() throws IOException {
         try (InputStream in = new ByteArrayInputStream("abcdef 1234567890".getBytes(StandardCharsets.US_ASCII))) {
@@ -136,6 +168,20 @@ abstract class BaseClientTest {
         }
     }
 
+    @Test
+    void should_get_input_stream_from_offset() throws IOException {
+        String path = "/dreamwill/range.txt";
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        try {
+            Assertions.assertThat(client.createFile(path, new ByteArrayInputStream(content))).isTrue();
+            try (InputStream in = client.getInputStream(path, 4)) {
+                Assertions.assertThat(IOUtils.toString(in, StandardCharsets.UTF_8)).isEqualTo("456789");
+            }
+        } finally {
+            client.deleteFile(path);
+        }
+    }
+
     @Test
     void should_throw_null_pointer_exception_while_get_input_stream_with_null_path() {
         Assertions.assertThatNullPointerException().isThrownBy(() -> client.getInputStream(null));
@@ -168,4 +214,200 @@ abstract class BaseClientTest {
     void should_throw_null_pointer_exception_while_null_path() throws IOException {
         Assertions.assertThatNullPointerException().isThrownBy(() -> client.getFileMetadata(null));
     }
+
+    @Test
+    void should_list_files() throws IOException {
+        Assertions.assertThat(client.listFiles("/dreamwill"))
+                  .extracting(FileMetadata::getPath)
+                  .contains(already_exist)
+                  .doesNotContain("/dreamwill/copy_from");
+    }
+
+    @Test
+    void should_return_null_while_list_files_of_non_existent_directory() throws IOException {
+        Assertions.assertThat(client.listFiles("/dreamwill/never_exist")).isNull();
+    }
+
+    @Test
+    void should_list_files_matching_glob() throws IOException {
+        Assertions.assertThat(client.listFiles("/dreamwill", "already_*.txt"))
+                  .extracting(FileMetadata::getPath)
+                  .containsExactly(already_exist);
+        Assertions.assertThat(client.listFiles("/dreamwill", "*.csv")).isEmpty();
+        Assertions.assertThat(client.listFiles("/dreamwill/never_exist", "*.txt")).isNull();
+    }
+
+    @Test
+    void should_list_directories() throws IOException {
+        Assertions.assertThat(client.listDirectories("/dreamwill")).contains("/dreamwill/copy_from");
+        Assertions.assertThat(client.listDirectories("/dreamwill/never_exist")).isNull();
+    }
+
+    @Test
+    void should_walk_files_matching_glob() throws IOException {
+        Assertions.assertThat(client.walkFiles("/dreamwill", "source.*"))
+                  .extracting(FileMetadata::getPath)
+                  .contains(copy_source)
+                  .allMatch(path -> path.endsWith("/source.txt"));
+    }
+
+    @Test
+    void should_get_checksum() throws IOException {
+        MessageDigest digest = Checksums.newDigest(Checksums.SHA_256);
+        String expected = Checksums.toHex(digest.digest("abcdef 1234567890".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertThat(client.getChecksum(already_exist, Checksums.SHA_256)).isEqualTo(expected);
+        Assertions.assertThat(client.getChecksum(already_exist, "crc32")).isEqualTo("d2c7035d");
+    }
+
+    @Test
+    void should_return_null_while_get_checksum_of_non_existent_file() throws IOException {
+        Assertions.assertThat(client.getChecksum(never_exist, Checksums.MD5)).isNull();
+    }
+
+    @Test
+    void should_compute_checksum_while_creating_file() throws IOException {
+        String path = "/dreamwill/checksum.txt";
+        MessageDigest digest = Checksums.newDigest(Checksums.MD5);
+        try {
+            try (InputStream in = new ByteArrayInputStream("abcdef 1234567890".getBytes(StandardCharsets.US_ASCII))) {
+                Assertions.assertThat(client.createFile(path, in, digest)).isTrue();
+            }
+            Assertions.assertThat(client.getChecksum(path, Checksums.MD5)).isEqualTo(Checksums.toHex(digest.digest()));
+        } finally {
+            client.deleteFile(path);
+        }
+    }
+
+    @Test
+    void should_skip_upload_while_remote_file_is_identical() throws IOException {
+        File source = File.createTempFile("upload", ".txt");
+        try {
+            Files.write(source.toPath(), "abcdef 1234567890".getBytes(StandardCharsets.US_ASCII));
+            UploadOptions options = UploadOptions.builder()
+                                                 .compareMtime(false)
+                                                 .checksumAlgorithm(Checksums.MD5)
+                                                 .build();
+            Assertions.assertThat(client.uploadFile(already_exist, source, options)).isEqualTo(UploadResult.SKIPPED);
+        } finally {
+            Files.delete(source.toPath());
+        }
+    }
+
+    @Test
+    void should_replace_while_remote_file_differs() throws IOException {
+        String path = "/dreamwill/upload.txt";
+        File source = File.createTempFile("upload", ".txt");
+        try {
+            Files.write(source.toPath(), "abcdef 1234567890".getBytes(StandardCharsets.US_ASCII));
+            UploadOptions options = UploadOptions.defaults();
+            Assertions.assertThat(client.uploadFile(path, source, options)).isEqualTo(UploadResult.CREATED);
+            Files.write(source.toPath(), "abcdef 0987654321".getBytes(StandardCharsets.US_ASCII));
+            Assertions.assertThat(source.setLastModified(source.lastModified() - 3_600_000L)).isTrue();
+            Assertions.assertThat(client.uploadFile(path, source, options)).isEqualTo(UploadResult.REPLACED);
+        } finally {
+            Files.delete(source.toPath());
+            client.deleteFile(path);
+        }
+    }
+
+    @Test
+    void should_write_file_through_output_stream() throws IOException {
+        String path = "/dreamwill/output_stream.txt";
+        OutputStreamOptions options = OutputStreamOptions.builder().chunkSize(4).maxBufferedChunks(2).build();
+        try {
+            try (OutputStream out = client.openOutputStream(path, options)) {
+                for (int i = 0; i < 100; i++) {
+                    out.write("abcdef 1234567890\n".getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+            Assertions.assertThat(client.getFileMetadata(path).getSize()).isEqualTo(1800);
+        } finally {
+            client.deleteFile(path);
+        }
+    }
+
+    @Test
+    void should_return_null_while_open_output_stream_of_existing_file() throws IOException {
+        Assertions.assertThat(client.openOutputStream(already_exist, OutputStreamOptions.defaults())).isNull();
+    }
+
+    @Test
+    void should_share_one_client_between_threads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> contents = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String path = "/dreamwill/concurrent/" + i % 4 + "/file" + i + ".txt";
+                String content = "content of " + path;
+                contents.add(executor.submit(() -> {
+                    Assertions.assertThat(client.createFile(path, IOUtils.toInputStream(content,
+                            StandardCharsets.UTF_8))).isTrue();
+                    Assertions.assertThat(client.getFileMetadata(path).getSize()).isEqualTo(content.length());
+                    Assertions.assertThat(client.listFiles(FilenameUtils.getFullPath(path))).isNotNull();
+                    try (InputStream in = client.getInputStream(path)) {
+                        return IOUtils.toString(in, StandardCharsets.UTF_8);
+                    }
+                }));
+            }
+            for (int i = 0; i < contents.size(); i++) {
+                Assertions.assertThat(contents.get(i).get())
+                          .isEqualTo("content of /dreamwill/concurrent/" + i % 4 + "/file" + i + ".txt");
+            }
+            Assertions.assertThat(client.walkFiles("/dreamwill/concurrent", "*.txt")).hasSize(8);
+        } finally {
+            executor.shutdownNow();
+            client.deleteTree("/dreamwill/concurrent");
+        }
+    }
+
+    @Test
+    void should_export_archive() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArchiveResult result = client.exportArchive(Arrays.asList(already_exist, never_exist, copy_source), out,
+                ArchiveFormat.ZIP);
+        Assertions.assertThat(result.getEntryCount()).isEqualTo(2);
+        Assertions.assertThat(result.getMissing()).containsExactly(never_exist);
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            Assertions.assertThat(zip.getNextEntry().getName()).isEqualTo("dreamwill/already_exist.txt");
+            Assertions.assertThat(IOUtils.toString(zip, StandardCharsets.US_ASCII)).isEqualTo("abcdef 1234567890");
+            Assertions.assertThat(zip.getNextEntry().getName()).isEqualTo("dreamwill/copy_from/source.txt");
+        }
+    }
+
+    @Test
+    void should_delete_tree() throws IOException {
+        for (String path : Arrays.asList("/dreamwill/tree/a.txt", "/dreamwill/tree/sub/b.txt",
+                "/dreamwill/tree/sub/deeper/c.txt", "/dreamwill/tree/other/d.txt")) {
+            client.createFile(path, IOUtils.toInputStream(path, StandardCharsets.UTF_8));
+        }
+
+        DeleteResult result = client.deleteTree("/dreamwill/tree");
+
+        Assertions.assertThat(result.isComplete()).isTrue();
+        Assertions.assertThat(result.getFileCount()).isEqualTo(4);
+        Assertions.assertThat(result.getDirectoryCount()).isEqualTo(4);
+        Assertions.assertThat(client.listDirectories("/dreamwill/tree")).isNull();
+        Assertions.assertThat(client.deleteTree("/dreamwill/tree")).isNull();
+    }
+
+    @Test
+    void should_delete_matching_files() throws IOException {
+        for (String path : Arrays.asList("/dreamwill/retention/2022-04.csv", "/dreamwill/retention/2022-05.csv",
+                "/dreamwill/retention/old/2022-04.log", "/dreamwill/retention/old/2022-05.log")) {
+            client.createFile(path, IOUtils.toInputStream(path, StandardCharsets.UTF_8));
+        }
+
+        try {
+            DeleteResult result = client.deleteMatching("/dreamwill/retention",
+                    file -> FilenameUtils.getName(file.getPath()).startsWith("2022-04"));
+
+            Assertions.assertThat(result.isComplete()).isTrue();
+            Assertions.assertThat(result.getFileCount()).isEqualTo(2);
+            Assertions.assertThat(result.getDirectoryCount()).isZero();
+            Assertions.assertThat(client.walkFiles("/dreamwill/retention", "*")).hasSize(2);
+            Assertions.assertThat(client.listDirectories("/dreamwill/retention")).hasSize(1);
+        } finally {
+            client.deleteTree("/dreamwill/retention");
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+class BufferPoolTest {
+    @Test
+    void should_reuse_released_buffers_of_the_same_class() {
+        BufferPool pool = BufferPool.builder().build();
+        byte[] first = pool.acquire(5000);
+        Assertions.assertThat(first).hasSize(8192);
+        pool.release(first);
+        Assertions.assertThat(pool.acquire(8000)).isSameAs(first);
+        Assertions.assertThat(pool.acquire(8000)).isNotSameAs(first);
+        Assertions.assertThat(pool.getHitCount()).isEqualTo(1);
+        Assertions.assertThat(pool.getMissCount()).isEqualTo(2);
+        Assertions.assertThat(pool.getOutstandingCount()).isEqualTo(2);
+    }
+
+    @Test
+    void should_not_pool_more_than_the_limit() {
+        BufferPool pool = BufferPool.builder().maxBufferSize(16 * 1024).maxPooledBytes(16 * 1024).build();
+        byte[] first = pool.acquire(8192);
+        byte[] second = pool.acquire(8192);
+        byte[] third = pool.acquire(8192);
+        byte[] oversize = pool.acquire(100 * 1024);
+        Assertions.assertThat(oversize).hasSize(100 * 1024);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        pool.release(oversize);
+        Assertions.assertThat(pool.getPooledBytes()).isEqualTo(16 * 1024);
+        Assertions.assertThat(pool.getOutstandingCount()).isZero();
+    }
+
+    @Test
+    void should_pool_direct_buffers() {
+        BufferPool pool = BufferPool.builder().build();
+        ByteBuffer buffer = pool.acquireDirect(5000);
+        Assertions.assertThat(buffer.isDirect()).isTrue();
+        Assertions.assertThat(buffer.limit()).isEqualTo(5000);
+        buffer.position(100);
+        pool.releaseDirect(buffer);
+        ByteBuffer reused = pool.acquireDirect(6000);
+        Assertions.assertThat(reused).isSameAs(buffer);
+        Assertions.assertThat(reused.position()).isZero();
+        Assertions.assertThat(reused.limit()).isEqualTo(6000);
+    }
+
+    @Test
+    void should_report_leaks_and_double_release() {
+        BufferPool pool = BufferPool.builder().leakDetection(true).build();
+        byte[] leaked = pool.acquire(100);
+        byte[] released = pool.acquire(100);
+        pool.release(released);
+        Assertions.assertThat(pool.getLeaks()).hasSize(1);
+        Assertions.assertThat(pool.getLeaks().get(0).getStackTrace()[2].getMethodName())
+                  .isEqualTo("should_report_leaks_and_double_release");
+        Assertions.assertThatThrownBy(() -> pool.release(released)).isInstanceOf(IllegalStateException.class);
+        pool.release(leaked);
+        Assertions.assertThat(pool.getLeaks()).isEmpty();
+    }
+
+    @Test
+    void should_copy_with_a_pooled_buffer() throws IOException {
+        BufferPool pool = BufferPool.builder().leakDetection(true).build();
+        byte[] content = new byte[200 * 1024];
+        new Random(1).nextBytes(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assertions.assertThat(pool.copy(new ByteArrayInputStream(content), out)).isEqualTo(content.length);
+        Assertions.assertThat(out.toByteArray()).isEqualTo(content);
+        pool.copy(new ByteArrayInputStream(content), new ByteArrayOutputStream());
+        Assertions.assertThat(pool.getHitRate()).isEqualTo(0.5);
+        Assertions.assertThat(pool.getLeaks()).isEmpty();
+    }
+}
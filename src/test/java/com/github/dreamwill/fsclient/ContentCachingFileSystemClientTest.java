@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import com.github.dreamwill.fsclient.impl.ContentCachingFileSystemClient;
+import com.github.dreamwill.fsclient.impl.FtpClient;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+class ContentCachingFileSystemClientTest extends FtpClientTest {
+    @TempDir
+    Path cacheDir;
+
+    @Override
+    @BeforeEach
+    public void setUp() throws IOException {
+        client = new ContentCachingFileSystemClient(
+                new FtpClient("127.0.0.1", port, "dreamwill", "123456"), cacheDir, 1024 * 1024);
+        client.connect();
+    }
+
+    @Test
+    void should_serve_second_read_from_cache() throws IOException {
+        Assertions.assertThat(read(already_exist)).isEqualTo("abcdef 1234567890");
+        Assertions.assertThat(read(already_exist)).isEqualTo("abcdef 1234567890");
+        ContentCachingFileSystemClient cachingClient = (ContentCachingFileSystemClient) client;
+        Assertions.assertThat(cachingClient.getMissCount()).isEqualTo(1);
+        Assertions.assertThat(cachingClient.getHitCount()).isEqualTo(1);
+        Assertions.assertThat(cachingClient.getCachedBytes()).isEqualTo(17);
+    }
+
+    @Test
+    void should_invalidate_cache_while_writing() throws IOException {
+        String path = "/dreamwill/cached.txt";
+        try (InputStream in = new ByteArrayInputStream("first".getBytes(StandardCharsets.US_ASCII))) {
+            client.createFile(path, in);
+        }
+        Assertions.assertThat(read(path)).isEqualTo("first");
+        client.deleteFile(path);
+        Assertions.assertThat(((ContentCachingFileSystemClient) client).getCachedBytes()).isZero();
+        try (InputStream in = new ByteArrayInputStream("second".getBytes(StandardCharsets.US_ASCII))) {
+            client.createFile(path, in);
+        }
+        Assertions.assertThat(read(path)).isEqualTo("second");
+    }
+
+    @Test
+    void should_invalidate_content_cached_by_earlier_run() throws IOException {
+        String path = "/dreamwill/reloaded.txt";
+        try (InputStream in = new ByteArrayInputStream("first".getBytes(StandardCharsets.US_ASCII))) {
+            client.createFile(path, in);
+        }
+        Assertions.assertThat(read(path)).isEqualTo("first");
+        client.close();
+        setUp();
+        ContentCachingFileSystemClient cachingClient = (ContentCachingFileSystemClient) client;
+        Assertions.assertThat(cachingClient.getCachedBytes()).isEqualTo(5);
+        client.deleteFile(path);
+        Assertions.assertThat(cachingClient.getCachedBytes()).isZero();
+        Assertions.assertThat(cacheDir).isEmptyDirectory();
+    }
+
+    private String read(String path) throws IOException {
+        try (InputStream in = client.getInputStream(path)) {
+            return IOUtils.toString(in, StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+
+class FileListingTest {
+    private static FileListing sample() {
+        return FileListing.builder()
+                          .add("/dreamwill/b/2.csv", 20, 2000, 100)
+                          .add("/dreamwill/a/3.txt", 30, 1000, FileListing.UNKNOWN)
+                          .add("/dreamwill/a/1.csv", 10, 3000, 100)
+                          .add("/root.txt", FileListing.UNKNOWN, FileListing.UNKNOWN, FileListing.UNKNOWN)
+                          .add("relative.txt", 5, 500, 500)
+                          .build();
+    }
+
+    @Test
+    void should_restore_files_through_views() {
+        FileListing listing = sample();
+        Assertions.assertThat(listing).hasSize(5);
+        Assertions.assertThat(listing).extracting(FileMetadata::getPath).containsExactly(
+                "/dreamwill/b/2.csv", "/dreamwill/a/3.txt", "/dreamwill/a/1.csv", "/root.txt", "relative.txt");
+        FileMetadata first = listing.get(0);
+        Assertions.assertThat(first.getSize()).isEqualTo(20);
+        Assertions.assertThat(first.getMtime()).contains(Instant.ofEpochMilli(2000));
+        Assertions.assertThat(listing.get(1).getCtime()).isEmpty();
+        Assertions.assertThat(listing.get(3).getSize()).isNull();
+        Assertions.assertThat(listing.getName(2)).isEqualTo("1.csv");
+        Assertions.assertThat(listing.getTotalSize()).isEqualTo(65);
+    }
+
+    @Test
+    void should_add_file_metadata() {
+        FileMetadata metadata = FileMetadata.builder()
+                                            .path("/dreamwill/数据.txt")
+                                            .size(7L)
+                                            .mtime(Optional.of(Instant.ofEpochMilli(42)))
+                                            .ctime(Optional.empty())
+                                            .build();
+        FileListing listing = FileListing.builder().add(metadata).build();
+        Assertions.assertThat(listing.getPath(0)).isEqualTo("/dreamwill/数据.txt");
+        Assertions.assertThat(listing.getMtime(0)).isEqualTo(42);
+        Assertions.assertThat(listing.getCtime(0)).isEqualTo(FileListing.UNKNOWN);
+    }
+
+    @Test
+    void should_sort_by_every_order() {
+        FileListing listing = sample();
+        Assertions.assertThat(listing.sorted(FileListing.Order.PATH)).extracting(FileMetadata::getPath).containsExactly(
+                "relative.txt", "/root.txt", "/dreamwill/a/1.csv", "/dreamwill/a/3.txt", "/dreamwill/b/2.csv");
+        Assertions.assertThat(listing.sorted(FileListing.Order.SIZE)).extracting(FileMetadata::getPath).containsExactly(
+                "/root.txt", "relative.txt", "/dreamwill/a/1.csv", "/dreamwill/b/2.csv", "/dreamwill/a/3.txt");
+        Assertions.assertThat(listing.sorted(FileListing.Order.MTIME).reversed())
+                  .extracting(FileMetadata::getPath)
+                  .startsWith("/dreamwill/a/1.csv", "/dreamwill/b/2.csv")
+                  .endsWith("/root.txt");
+    }
+
+    @Test
+    void should_filter_files() {
+        FileListing listing = sample();
+        Assertions.assertThat(listing.matching("*.csv")).extracting(FileMetadata::getPath)
+                  .containsExactly("/dreamwill/b/2.csv", "/dreamwill/a/1.csv");
+        Assertions.assertThat(listing.filter(i -> listing.getSize(i) >= 20)).hasSize(2);
+        Assertions.assertThat(listing.filter(i -> false)).isEmpty();
+    }
+
+    @Test
+    void should_read_what_was_written() throws IOException {
+        FileListing listing = sample().matching("*.csv").sorted(FileListing.Order.PATH);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        listing.writeTo(out);
+        FileListing read = FileListing.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        Assertions.assertThat(read).extracting(FileMetadata::getPath)
+                  .containsExactly("/dreamwill/a/1.csv", "/dreamwill/b/2.csv");
+        Assertions.assertThat(read.getSize(1)).isEqualTo(20);
+        Assertions.assertThat(read.getCtime(0)).isEqualTo(100);
+    }
+
+    @Test
+    void should_throw_io_exception_while_reading_something_else() {
+        Assertions.assertThatIOException().isThrownBy(
+                () -> FileListing.readFrom(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+    }
+}
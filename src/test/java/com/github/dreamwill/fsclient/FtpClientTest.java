@@ -17,21 +17,42 @@
 package com.github.dreamwill.fsclient;
 
 import com.github.dreamwill.fsclient.impl.FtpClient;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.command.CommandNames;
+import org.mockftpserver.core.session.Session;
 import org.mockftpserver.fake.FakeFtpServer;
 import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.command.RestCommandHandler;
+import org.mockftpserver.fake.command.RetrCommandHandler;
 import org.mockftpserver.fake.filesystem.DirectoryEntry;
 import org.mockftpserver.fake.filesystem.FileEntry;
 import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.FileSystemEntry;
 import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
 
+import javax.net.ssl.SSLException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
 
 class FtpClientTest extends BaseClientTest {
+    private static final String RESTART_OFFSET = "restartOffset";
+    private static final DateTimeFormatter MDTM_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
     static Integer port;
+    static FileSystem fileSystem;
 
     @BeforeAll
     @DisplayName("Build a virtual FTP server.")
@@ -39,7 +60,7 @@ class FtpClientTest extends BaseClientTest {
         FakeFtpServer fakeFtpServer = new FakeFtpServer();
         fakeFtpServer.addUserAccount(new UserAccount("dreamwill", "123456", "/dreamwill"));
 
-        FileSystem fileSystem = new UnixFakeFileSystem();
+        fileSystem = new UnixFakeFileSystem();
         fileSystem.add(new DirectoryEntry("/dreamwill"));
         fileSystem.add(new FileEntry(already_exist, "abcdef 1234567890"));
         fileSystem.add(new FileEntry(to_be_delete, "abcdef 1234567890"));
@@ -47,6 +68,35 @@ class FtpClientTest extends BaseClientTest {
         fileSystem.add(new FileEntry(move_source, "abcdef 1234567890"));
         fakeFtpServer.setFileSystem(fileSystem);
 
+        // the fake RETR ignores REST
+        fakeFtpServer.setCommandHandler(CommandNames.REST, new RestCommandHandler() {
+            @Override
+            protected void handle(Command command, Session session) {
+                session.setAttribute(RESTART_OFFSET, Integer.valueOf(command.getRequiredParameter(0)));
+                super.handle(command, session);
+            }
+        });
+        fakeFtpServer.setCommandHandler(CommandNames.RETR, new RetrCommandHandler() {
+            @Override
+            protected void handle(Command command, Session session) {
+                Integer offset = (Integer) session.getAttribute(RESTART_OFFSET);
+                session.removeAttribute(RESTART_OFFSET);
+                super.handle(command, offset == null ? session : skipping(session, offset));
+            }
+        });
+
+        // LIST only shows minutes, MDTM has seconds
+        fakeFtpServer.setCommandHandler("FEAT",
+                (command, session) -> session.sendReply(211, "Features:\r\n MDTM\r\nEnd"));
+        fakeFtpServer.setCommandHandler("MDTM", (command, session) -> {
+            FileSystemEntry entry = fileSystem.getEntry(command.getRequiredParameter(0));
+            if (entry == null) {
+                session.sendReply(550, "No such file.");
+            } else {
+                session.sendReply(213, MDTM_FORMATTER.format(entry.getLastModified().toInstant()));
+            }
+        });
+
         // choose random port
         fakeFtpServer.setServerControlPort(0);
 
@@ -55,6 +105,23 @@ class FtpClientTest extends BaseClientTest {
         port = fakeFtpServer.getServerControlPort();
     }
 
+    private static Session skipping(Session session, int offset) {
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("sendData")) {
+                        byte[] data = (byte[]) args[0];
+                        int start = Math.min(offset, (Integer) args[1]);
+                        args = new Object[]{Arrays.copyOfRange(data, start, (Integer) args[1]),
+                                (Integer) args[1] - start};
+                    }
+                    try {
+                        return method.invoke(session, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
     @BeforeEach
     public void setUp() throws IOException {
         client = new FtpClient("127.0.0.1", port, "dreamwill", "123456");
@@ -65,4 +132,36 @@ class FtpClientTest extends BaseClientTest {
     public void tearDown() throws IOException {
         client.close();
     }
+
+    @Test
+    void should_get_modification_time_to_the_second() throws IOException {
+        Instant lastModified = Instant.parse("2022-06-01T08:00:42Z");
+        FileEntry entry = (FileEntry) fileSystem.getEntry(already_exist);
+        entry.setLastModified(Date.from(lastModified));
+
+        Assertions.assertThat(client.getFileMetadata(already_exist).getMtime()).contains(lastModified);
+    }
+
+    @Test
+    void should_fail_fast_on_call_from_thread_with_open_stream() throws IOException {
+        FtpClient ftp = new FtpClient("127.0.0.1", port, "dreamwill", "123456");
+        ftp.connect();
+        try {
+            try (InputStream in = ftp.getInputStream(already_exist)) {
+                Assertions.assertThat(in).isNotNull();
+                Assertions.assertThatIOException().isThrownBy(() -> ftp.getFileMetadata(already_exist))
+                          .withMessageContaining("held by a stream");
+            }
+            Assertions.assertThat(ftp.getFileMetadata(already_exist)).isNotNull();
+        } finally {
+            ftp.close();
+        }
+    }
+
+    @Test
+    void should_not_fall_back_to_plain_ftp_while_server_refuses_tls() {
+        FtpClient ftps = new FtpClient("127.0.0.1", port, "dreamwill", "123456", TransportOptions.defaults(),
+                FtpsOptions.explicit());
+        Assertions.assertThatExceptionOfType(SSLException.class).isThrownBy(ftps::connect);
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import com.github.dreamwill.fsclient.impl.InMemoryFileSystemClient;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+class InMemoryFileSystemClientTest extends BaseClientTest {
+    @BeforeEach
+    public void setUp() throws IOException {
+        client = new InMemoryFileSystemClient();
+        client.connect();
+        createFixtures(client);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void should_refuse_to_delete_non_empty_directory() throws IOException {
+        Assertions.assertThatIOException().isThrownBy(() -> client.deleteDirectory("/dreamwill/copy_from"));
+        Assertions.assertThat(client.deleteFile(copy_source)).isTrue();
+        Assertions.assertThat(client.deleteDirectory("/dreamwill/copy_from")).isTrue();
+        Assertions.assertThat(client.listDirectories("/dreamwill")).doesNotContain("/dreamwill/copy_from");
+    }
+
+    @Test
+    void should_keep_remote_file_while_replacement_fails() throws IOException {
+        FileSystemClient spy = Mockito.spy(client);
+        Mockito.doThrow(new IOException("disk full")).when(spy)
+               .createFile(Mockito.endsWith(".upload"), Mockito.any(InputStream.class));
+        File source = File.createTempFile("upload", ".txt");
+        try {
+            Files.write(source.toPath(), "abcdef 0987654321".getBytes(StandardCharsets.US_ASCII));
+            // same size and about the same modification time, so only replace without comparing
+            UploadOptions options = UploadOptions.builder().compareMtime(false).build();
+
+            Assertions.assertThatIOException()
+                      .isThrownBy(() -> spy.uploadFile(already_exist, source, options))
+                      .withMessage("disk full");
+            try (InputStream in = client.getInputStream(already_exist)) {
+                Assertions.assertThat(IOUtils.toString(in, StandardCharsets.US_ASCII)).isEqualTo("abcdef 1234567890");
+            }
+            Assertions.assertThat(client.listFiles("/dreamwill")).extracting(FileMetadata::getPath)
+                      .allMatch(path -> !path.endsWith(".upload"));
+        } finally {
+            Files.delete(source.toPath());
+        }
+    }
+
+    @Test
+    void should_keep_remote_file_while_it_can_not_be_deleted() throws IOException {
+        FileSystemClient spy = Mockito.spy(client);
+        Mockito.doReturn(false).when(spy).deleteFile(already_exist);
+        File source = File.createTempFile("upload", ".txt");
+        try {
+            Files.write(source.toPath(), "abcdef 0987654321".getBytes(StandardCharsets.US_ASCII));
+            UploadOptions options = UploadOptions.builder().compareMtime(false).build();
+
+            Assertions.assertThatIOException()
+                      .isThrownBy(() -> spy.uploadFile(already_exist, source, options))
+                      .withMessage("Fail to delete " + already_exist + " to replace it.");
+            try (InputStream in = client.getInputStream(already_exist)) {
+                Assertions.assertThat(IOUtils.toString(in, StandardCharsets.US_ASCII)).isEqualTo("abcdef 1234567890");
+            }
+            Assertions.assertThat(client.listFiles("/dreamwill")).extracting(FileMetadata::getPath)
+                      .allMatch(path -> !path.endsWith(".upload"));
+        } finally {
+            Files.delete(source.toPath());
+        }
+    }
+
+    @Test
+    void should_list_root() throws IOException {
+        Assertions.assertThat(client.listDirectories("/")).containsExactly("/dreamwill");
+        Assertions.assertThat(client.listFiles("/")).isEmpty();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import com.github.dreamwill.fsclient.impl.LocalFileSystemClient;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class LocalFileSystemClientTest extends BaseClientTest {
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        client = new LocalFileSystemClient(root);
+        client.connect();
+        createFixtures(client);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void should_keep_files_below_root() throws IOException {
+        Assertions.assertThat(Files.isRegularFile(root.resolve("dreamwill/already_exist.txt"))).isTrue();
+        Assertions.assertThatIOException().isThrownBy(() -> client.getFileMetadata("/dreamwill/../../etc/passwd"));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient;
+
+import com.github.dreamwill.fsclient.impl.ReplicatedFileSystemClient;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class ReplicatedFileSystemClientTest {
+    private final FileMetadata metadata = FileMetadata.builder().path("/dreamwill/a.txt").size(1L).build();
+    private FileSystemClient first;
+    private FileSystemClient second;
+    private ReplicatedFileSystemClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        first = Mockito.mock(FileSystemClient.class);
+        second = Mockito.mock(FileSystemClient.class);
+        ReplicationOptions options = ReplicationOptions.builder()
+                                                       .initialHedgeDelay(Duration.ofMillis(50))
+                                                       .build();
+        client = new ReplicatedFileSystemClient(Arrays.asList(first, second), options);
+        client.connect();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void should_hedge_slow_read_to_another_replica() throws IOException {
+        Mockito.when(first.getFileMetadata("/dreamwill/a.txt")).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return metadata;
+        });
+        Mockito.when(second.getFileMetadata("/dreamwill/a.txt")).thenReturn(metadata);
+        long start = System.nanoTime();
+        Assertions.assertThat(client.getFileMetadata("/dreamwill/a.txt")).isSameAs(metadata);
+        Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+    }
+
+    @Test
+    void should_fail_over_while_replica_fails() throws IOException {
+        Mockito.when(first.getFileMetadata("/dreamwill/a.txt")).thenThrow(new IOException("first is down"));
+        Mockito.when(second.getFileMetadata("/dreamwill/a.txt")).thenThrow(new IOException("second is down"));
+        Assertions.assertThatIOException().isThrownBy(() -> client.getFileMetadata("/dreamwill/a.txt"));
+
+        Mockito.reset(second);
+        Mockito.when(second.getFileMetadata("/dreamwill/a.txt")).thenReturn(metadata);
+        Assertions.assertThat(client.getFileMetadata("/dreamwill/a.txt")).isSameAs(metadata);
+    }
+
+    @Test
+    void should_write_to_all_replicas() throws IOException {
+        Mockito.when(first.createFile(Mockito.eq("/dreamwill/a.txt"), Mockito.any())).thenReturn(true);
+        Mockito.when(second.createFile(Mockito.eq("/dreamwill/a.txt"), Mockito.any())).thenReturn(true);
+        try (InputStream in = new ByteArrayInputStream("abcdef 1234567890".getBytes(StandardCharsets.US_ASCII))) {
+            Assertions.assertThat(client.createFile("/dreamwill/a.txt", in)).isTrue();
+        }
+        Mockito.verify(first).createFile(Mockito.eq("/dreamwill/a.txt"), Mockito.any());
+        Mockito.verify(second).createFile(Mockito.eq("/dreamwill/a.txt"), Mockito.any());
+
+        Mockito.when(first.deleteFile("/dreamwill/a.txt")).thenReturn(true);
+        Mockito.when(second.deleteFile("/dreamwill/a.txt")).thenReturn(false);
+        Assertions.assertThat(client.deleteFile("/dreamwill/a.txt")).isFalse();
+    }
+
+    @Test
+    void should_roll_back_write_which_did_not_succeed_everywhere() throws IOException {
+        Mockito.when(first.createFile(Mockito.eq("/dreamwill/a.txt"), Mockito.any())).thenReturn(true);
+        Mockito.when(second.createFile(Mockito.eq("/dreamwill/a.txt"), Mockito.any()))
+               .thenThrow(new IOException("disk full"));
+        try (InputStream in = new ByteArrayInputStream("abcdef 1234567890".getBytes(StandardCharsets.US_ASCII))) {
+            Assertions.assertThatIOException().isThrownBy(() -> client.createFile("/dreamwill/a.txt", in))
+                      .withMessage("disk full");
+        }
+        Mockito.verify(first).deleteFile("/dreamwill/a.txt");
+        Mockito.verify(second, Mockito.never()).deleteFile("/dreamwill/a.txt");
+
+        Mockito.when(first.moveFile("/dreamwill/a.txt", "/dreamwill/b.txt")).thenReturn(false);
+        Mockito.when(second.moveFile("/dreamwill/a.txt", "/dreamwill/b.txt")).thenReturn(true);
+        Assertions.assertThat(client.moveFile("/dreamwill/a.txt", "/dreamwill/b.txt")).isFalse();
+        Mockito.verify(second).moveFile("/dreamwill/b.txt", "/dreamwill/a.txt");
+        Mockito.verify(first, Mockito.never()).moveFile("/dreamwill/b.txt", "/dreamwill/a.txt");
+    }
+
+    @Test
+    void should_call_same_replica_concurrently() throws Exception {
+        ReplicatedFileSystemClient single = new ReplicatedFileSystemClient(first);
+        single.connect();
+        CountDownLatch bothCalled = new CountDownLatch(2);
+        Mockito.when(first.getFileMetadata("/dreamwill/a.txt")).thenAnswer(invocation -> {
+            bothCalled.countDown();
+            return bothCalled.await(5, TimeUnit.SECONDS) ? metadata : null;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<FileMetadata> one = executor.submit(() -> single.getFileMetadata("/dreamwill/a.txt"));
+            Future<FileMetadata> other = executor.submit(() -> single.getFileMetadata("/dreamwill/a.txt"));
+
+            Assertions.assertThat(one.get()).isSameAs(metadata);
+            Assertions.assertThat(other.get()).isSameAs(metadata);
+        } finally {
+            executor.shutdownNow();
+            single.close();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.archive;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+class ArchiveExporterTest {
+    private static final Instant MTIME = Instant.parse("2022-05-01T10:00:00Z");
+
+    @Test
+    void should_write_zip_entries_in_order() throws IOException {
+        Map<String, byte[]> files = files(20);
+        BufferPool pool = BufferPool.builder().leakDetection(true).build();
+        ArchiveOptions options = ArchiveOptions.builder()
+                                               .baseDir("/dreamwill")
+                                               .parallelism(3)
+                                               .maxBufferedBytes(300 * 1024)
+                                               .bufferPool(pool)
+                                               .build();
+        List<String> paths = new ArrayList<>(files.keySet());
+        paths.add(5, "/dreamwill/never_exist.txt");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ArchiveResult result = ArchiveExporter.export(client(files), paths, out, options);
+
+        Assertions.assertThat(result.getEntryCount()).isEqualTo(20);
+        Assertions.assertThat(result.getMissing()).containsExactly("/dreamwill/never_exist.txt");
+        Assertions.assertThat(result.getFailures()).isEmpty();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                Assertions.assertThat(entry.getLastModifiedTime().toInstant()).isEqualTo(MTIME);
+                entries.put(entry.getName(), IOUtils.toByteArray(zip));
+            }
+        }
+        Assertions.assertThat(entries.keySet()).containsExactlyElementsOf(
+                () -> files.keySet().stream().map(path -> path.substring("/dreamwill/".length())).iterator());
+        files.forEach((path, content) ->
+                Assertions.assertThat(entries.get(path.substring("/dreamwill/".length()))).isEqualTo(content));
+        Assertions.assertThat(pool.getLeaks()).isEmpty();
+    }
+
+    @Test
+    void should_keep_buffered_chunks_within_limit() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            files.put("/dreamwill/small" + i + ".txt", new byte[i * 20]);
+        }
+        BufferPool pool = BufferPool.builder().build();
+        long maxBufferedBytes = 4 * BufferPool.DEFAULT_BUFFER_SIZE;
+        ArchiveOptions options = ArchiveOptions.builder()
+                                               .parallelism(4)
+                                               .maxBufferedBytes(maxBufferedBytes)
+                                               .bufferPool(pool)
+                                               .build();
+        AtomicLong maxOutstanding = new AtomicLong();
+        FileSystemClient client = client(files);
+        Mockito.when(client.getInputStream(Mockito.anyString())).thenAnswer(invocation -> new ByteArrayInputStream(
+                files.get(invocation.<String>getArgument(0))) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                maxOutstanding.accumulateAndGet(pool.getOutstandingBytes(), Math::max);
+                return super.read(b, off, len);
+            }
+        });
+        // a slow writer lets the fetchers run ahead as far as the limit allows
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                super.write(b, off, len);
+            }
+        };
+
+        ArchiveResult result = ArchiveExporter.export(client, files.keySet(), out, options);
+
+        Assertions.assertThat(result.getEntryCount()).isEqualTo(50);
+        // the writer streams a file itself with one more buffer
+        Assertions.assertThat(maxOutstanding.get()).isLessThanOrEqualTo(
+                maxBufferedBytes + BufferPool.DEFAULT_BUFFER_SIZE);
+        Assertions.assertThat(pool.getOutstandingBytes()).isZero();
+    }
+
+    @Test
+    void should_write_tar_entries_with_long_names() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("/dreamwill/short.txt", "abcdef 1234567890".getBytes(StandardCharsets.US_ASCII));
+        files.put("/dreamwill/" + StringUtils.repeat("d", 80) + "/" + StringUtils.repeat("f", 90) + ".txt",
+                new byte[1000]);
+        files.put("/dreamwill/" + StringUtils.repeat("n", 150) + ".txt", new byte[512]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ArchiveResult result = ArchiveExporter.export(client(files), files.keySet(), out,
+                ArchiveOptions.builder().format(ArchiveFormat.TAR).build());
+
+        Assertions.assertThat(result.isComplete()).isTrue();
+        Assertions.assertThat(result.getByteCount()).isEqualTo(17 + 1000 + 512);
+        Map<String, byte[]> entries = readTar(out.toByteArray());
+        Assertions.assertThat(entries).hasSize(3);
+        files.forEach((path, content) -> Assertions.assertThat(entries.get(path.substring(1))).isEqualTo(content));
+    }
+
+    @Test
+    void should_pad_tar_entry_while_file_shrank() throws IOException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.getFileMetadata("/dreamwill/a.txt")).thenReturn(metadata("/dreamwill/a.txt", 100));
+        Mockito.when(client.getInputStream("/dreamwill/a.txt")).thenAnswer(invocation -> new ByteArrayInputStream(
+                new byte[40]));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // too large to be buffered, so it is streamed with the size of its metadata
+        ArchiveOptions options = ArchiveOptions.builder().format(ArchiveFormat.TAR).maxBufferedBytes(10).build();
+
+        ArchiveResult result = ArchiveExporter.export(client, Arrays.asList("/dreamwill/a.txt"), out, options);
+
+        Assertions.assertThat(result.getFailures()).containsOnlyKeys("/dreamwill/a.txt");
+        Assertions.assertThat(readTar(out.toByteArray()).get("dreamwill/a.txt")).hasSize(100);
+    }
+
+    private static Map<String, byte[]> files(int count) {
+        Random random = new Random(count);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[random.nextInt(200 * 1024)];
+            random.nextBytes(content);
+            files.put("/dreamwill/dir" + i % 3 + "/file" + i + ".bin", content);
+        }
+        return files;
+    }
+
+    private static FileSystemClient client(Map<String, byte[]> files) throws IOException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.getFileMetadata(Mockito.anyString())).thenAnswer(invocation -> {
+            byte[] content = files.get(invocation.<String>getArgument(0));
+            return content == null ? null : metadata(invocation.getArgument(0), content.length);
+        });
+        Mockito.when(client.getInputStream(Mockito.anyString())).thenAnswer(invocation -> {
+            byte[] content = files.get(invocation.<String>getArgument(0));
+            return content == null ? null : new ByteArrayInputStream(content);
+        });
+        return client;
+    }
+
+    private static FileMetadata metadata(String path, long size) {
+        return FileMetadata.builder()
+                           .path(path)
+                           .size(size)
+                           .mtime(Optional.of(MTIME))
+                           .ctime(Optional.empty())
+                           .build();
+    }
+
+    /**
+     * Reads ustar entries and GNU long names.
+     */
+    private static Map<String, byte[]> readTar(byte[] archive) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        InputStream in = new ByteArrayInputStream(archive);
+        byte[] header = new byte[512];
+        String longName = null;
+        while (IOUtils.read(in, header) == 512 && header[0] != 0) {
+            String name = field(header, 0, 100);
+            String prefix = field(header, 345, 155);
+            long size = Long.parseLong(field(header, 124, 12).trim(), 8);
+            byte[] content = new byte[(int) size];
+            IOUtils.readFully(in, content);
+            IOUtils.skipFully(in, (512 - size % 512) % 512);
+            if (header[156] == 'L') {
+                longName = field(content, 0, content.length);
+            } else {
+                entries.put(longName != null ? longName : prefix.isEmpty() ? name : prefix + "/" + name, content);
+                longName = null;
+            }
+        }
+        return entries;
+    }
+
+    private static String field(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.delete;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import org.apache.commons.io.FilenameUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class TreeDeleterTest {
+    @Test
+    void should_keep_directories_above_a_failed_file() throws IOException {
+        FileSystemClient client = client();
+        Mockito.when(client.deleteFile("/t/sub/c.txt")).thenThrow(new IOException("Permission denied"));
+
+        DeleteResult result = TreeDeleter.deleteTree(client, "/t", DeleteOptions.builder().parallelism(3).build());
+
+        Assertions.assertThat(result.getFailures()).containsOnlyKeys("/t/sub/c.txt");
+        Assertions.assertThat(result.isComplete()).isFalse();
+        Assertions.assertThat(result.getFileCount()).isEqualTo(3);
+        Assertions.assertThat(result.getDirectoryCount()).isEqualTo(1);
+        Mockito.verify(client).deleteDirectory("/t/other");
+        Mockito.verify(client, Mockito.never()).deleteDirectory("/t/sub");
+        Mockito.verify(client, Mockito.never()).deleteDirectory("/t");
+    }
+
+    @Test
+    void should_remove_children_before_parents() throws IOException {
+        FileSystemClient client = client();
+        Mockito.when(client.deleteDirectory("/t")).thenAnswer(invocation -> {
+            Mockito.verify(client).deleteDirectory("/t/sub");
+            Mockito.verify(client).deleteDirectory("/t/other");
+            Mockito.verify(client).deleteFile("/t/sub/c.txt");
+            return true;
+        });
+
+        DeleteResult result = TreeDeleter.deleteTree(client, "/t", DeleteOptions.defaults());
+
+        Assertions.assertThat(result.isComplete()).isTrue();
+        Assertions.assertThat(result.getFileCount()).isEqualTo(4);
+        Assertions.assertThat(result.getDirectoryCount()).isEqualTo(3);
+    }
+
+    @Test
+    void should_report_directory_which_was_not_removed() throws IOException {
+        FileSystemClient client = client();
+        // the default of clients which can not remove directories
+        Mockito.when(client.deleteDirectory("/t/sub")).thenReturn(false);
+        // removed by someone else meanwhile
+        Mockito.when(client.deleteDirectory("/t/other")).thenReturn(false);
+        Mockito.when(client.listFiles("/t/other")).thenReturn(Collections.singletonList(file("/t/other/d.txt")),
+                (List<FileMetadata>) null);
+
+        DeleteResult result = TreeDeleter.deleteTree(client, "/t", DeleteOptions.defaults());
+
+        Assertions.assertThat(result.getFailures()).containsOnlyKeys("/t/sub");
+        Assertions.assertThat(result.isComplete()).isFalse();
+        Assertions.assertThat(result.getDirectoryCount()).isZero();
+        Mockito.verify(client, Mockito.never()).deleteDirectory("/t");
+    }
+
+    @Test
+    void should_keep_directories_while_deleting_matching_files() throws IOException {
+        FileSystemClient client = client();
+
+        DeleteResult result = TreeDeleter.deleteMatching(client, "/t",
+                file -> FilenameUtils.getName(file.getPath()).compareTo("b") < 0, DeleteOptions.defaults());
+
+        Assertions.assertThat(result.getFileCount()).isEqualTo(1);
+        Mockito.verify(client).deleteFile("/t/a.txt");
+        Mockito.verify(client, Mockito.never()).deleteFile("/t/sub/c.txt");
+        Mockito.verify(client, Mockito.never()).deleteDirectory(Mockito.anyString());
+    }
+
+    @Test
+    void should_return_null_while_directory_not_present() throws IOException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.listFiles("/t")).thenReturn(null);
+
+        Assertions.assertThat(TreeDeleter.deleteTree(client, "/t", DeleteOptions.defaults())).isNull();
+    }
+
+    /**
+     * /t/a.txt, /t/b.txt, /t/sub/c.txt and /t/other/d.txt
+     */
+    private static FileSystemClient client() throws IOException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.listFiles("/t")).thenReturn(Arrays.asList(file("/t/a.txt"), file("/t/b.txt")));
+        Mockito.when(client.listDirectories("/t")).thenReturn(Arrays.asList("/t/sub", "/t/other"));
+        Mockito.when(client.listFiles("/t/sub")).thenReturn(Collections.singletonList(file("/t/sub/c.txt")));
+        Mockito.when(client.listDirectories("/t/sub")).thenReturn(Collections.emptyList());
+        Mockito.when(client.listFiles("/t/other")).thenReturn(Collections.singletonList(file("/t/other/d.txt")));
+        Mockito.when(client.listDirectories("/t/other")).thenReturn(Collections.emptyList());
+        Mockito.when(client.deleteFile(Mockito.anyString())).thenReturn(true);
+        Mockito.when(client.deleteDirectory(Mockito.anyString())).thenReturn(true);
+        return client;
+    }
+
+    private static FileMetadata file(String path) {
+        return FileMetadata.builder().path(path).size(1L).build();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.CompressionMode;
+import com.github.dreamwill.fsclient.TransportOptions;
+import org.apache.commons.lang3.StringUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+class CompressionPolicyTest {
+    private final CompressionPolicy adaptive = new CompressionPolicy(
+            TransportOptions.builder().compression(CompressionMode.ADAPTIVE).build());
+
+    @Test
+    void should_compress_text() throws IOException {
+        byte[] csv = StringUtils.repeat("2022-09-01,dreamwill,1234567890\n", 4096).getBytes(StandardCharsets.US_ASCII);
+        try (InputStream in = new ByteArrayInputStream(csv)) {
+            Assertions.assertThat(adaptive.shouldCompress(in)).isTrue();
+            Assertions.assertThat(in.read()).isEqualTo('2');
+        }
+    }
+
+    @Test
+    void should_not_compress_random_bytes() throws IOException {
+        byte[] bytes = new byte[128 * 1024];
+        new Random(0).nextBytes(bytes);
+        Assertions.assertThat(adaptive.shouldCompress(new ByteArrayInputStream(bytes))).isFalse();
+    }
+
+    @Test
+    void should_not_compress_well_known_compressed_formats() {
+        Assertions.assertThat(adaptive.shouldCompress("/dreamwill/archive.zip")).isFalse();
+        Assertions.assertThat(adaptive.shouldCompress("/dreamwill/report.csv")).isTrue();
+    }
+
+    @Test
+    void should_not_compress_while_link_is_faster_than_deflater() throws IOException {
+        byte[] csv = StringUtils.repeat("2022-09-01,dreamwill,1234567890\n", 4096).getBytes(StandardCharsets.US_ASCII);
+        adaptive.shouldCompress(new ByteArrayInputStream(csv));
+        // 1 GiB in 1 ms
+        adaptive.record(1L << 30, 1_000_000L);
+        Assertions.assertThat(adaptive.shouldCompress(new ByteArrayInputStream(csv))).isFalse();
+    }
+
+    @Test
+    void should_follow_fixed_modes() {
+        Assertions.assertThat(new CompressionPolicy(TransportOptions.defaults()).shouldCompress("/a.csv")).isFalse();
+        CompressionPolicy always = new CompressionPolicy(
+                TransportOptions.builder().compression(CompressionMode.ALWAYS).build());
+        Assertions.assertThat(always.shouldCompress("/a.zip")).isTrue();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class HandleTrackerTest {
+    @Test
+    void should_close_resources_in_reverse_order_once() throws IOException {
+        List<String> closed = new ArrayList<>();
+        try (HandleTracker tracker = new HandleTracker("test", null)) {
+            HandleTracker.Handle handle = tracker.open("/share/a.txt", () -> closed.add("share"),
+                    () -> closed.add("file"));
+            Assertions.assertThat(tracker.getOpenCount()).isEqualTo(1);
+            handle.close();
+            handle.close();
+            Assertions.assertThat(closed).containsExactly("file", "share");
+            Assertions.assertThat(tracker.getOpenCount()).isZero();
+            Assertions.assertThat(tracker.getOpenedCount()).isEqualTo(1);
+            Assertions.assertThatThrownBy(handle::touch).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    void should_force_close_idle_handles() throws Exception {
+        List<String> closed = new CopyOnWriteArrayList<>();
+        try (HandleTracker tracker = new HandleTracker("test", Duration.ofMillis(50))) {
+            HandleTracker.Handle leaked = tracker.open("/share/leaked.txt", () -> closed.add("leaked"));
+            HandleTracker.Handle used = tracker.open("/share/used.txt", () -> closed.add("used"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (tracker.getForceClosedCount() == 0 && System.currentTimeMillis() < deadline) {
+                used.touch();
+                Thread.sleep(5);
+            }
+            Assertions.assertThat(tracker.getForceClosedCount()).isEqualTo(1);
+            Assertions.assertThat(tracker.getOpenCount()).isEqualTo(1);
+            Assertions.assertThat(closed).containsExactly("leaked");
+            Assertions.assertThatThrownBy(leaked::touch).isInstanceOf(IOException.class);
+        }
+        Assertions.assertThat(closed).containsExactly("leaked", "used");
+    }
+
+    @Test
+    void should_close_remaining_resources_while_one_fails() {
+        List<String> closed = new ArrayList<>();
+        HandleTracker tracker = new HandleTracker("test", null);
+        HandleTracker.Handle handle = tracker.open("/share/a.txt", () -> closed.add("share"), () -> {
+            throw new IllegalStateException("broken");
+        });
+        Assertions.assertThatThrownBy(handle::close).isInstanceOf(IOException.class);
+        Assertions.assertThat(closed).containsExactly("share");
+        Assertions.assertThat(tracker.getOpenCount()).isZero();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class PathLocksTest {
+    @Test
+    void should_serialize_callers_of_the_same_path() throws Exception {
+        PathLocks locks = new PathLocks(8);
+        CountDownLatch acquired = new CountDownLatch(1);
+        CompletableFuture<Void> other;
+        try (PathLocks.Held ignored = locks.lock("/dreamwill/a.txt")) {
+            other = CompletableFuture.runAsync(() -> {
+                try (PathLocks.Held held = locks.lock("/dreamwill/a.txt/")) {
+                    acquired.countDown();
+                }
+            });
+            Assertions.assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        }
+        other.get(5, TimeUnit.SECONDS);
+        Assertions.assertThat(acquired.getCount()).isZero();
+    }
+
+    @Test
+    void should_not_deadlock_while_locking_paths_in_opposite_order() throws Exception {
+        PathLocks locks = new PathLocks(8);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+        for (int i = 0; i < futures.length; i++) {
+            boolean forward = i % 2 == 0;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    try (PathLocks.Held ignored = forward ? locks.lock("/a", "/b") : locks.lock("/b", "/a")) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void should_release_a_path_given_twice() throws Exception {
+        PathLocks locks = new PathLocks(8);
+        try (PathLocks.Held ignored = locks.lock("/a", "/a"); PathLocks.Held reentered = locks.lock("/a")) {
+            Assertions.assertThat(reentered).isNotNull();
+        }
+        CompletableFuture.runAsync(() -> locks.lock("/a").close()).get(5, TimeUnit.SECONDS);
+    }
+}
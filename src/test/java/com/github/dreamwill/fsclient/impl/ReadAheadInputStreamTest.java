@@ -0,0 +1,110 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ReadAheadInputStreamTest {
+    private static final int CHUNK_SIZE = 1000;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void should_read_whole_file() throws IOException {
+        BufferPool pool = BufferPool.builder().leakDetection(true).build();
+        for (int size : new int[]{0, 1, 999, 1000, 1001, 12345}) {
+            byte[] content = new byte[size];
+            new Random(size).nextBytes(content);
+            AtomicBoolean closed = new AtomicBoolean();
+            try (InputStream in = new ReadAheadInputStream(reader(content, new AtomicInteger(), new AtomicInteger()),
+                    CHUNK_SIZE, 4, executor, () -> closed.set(true), pool, 0)) {
+                Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(content);
+            }
+            Assertions.assertThat(closed).isTrue();
+        }
+        Assertions.assertThat(pool.getLeaks()).isEmpty();
+        Assertions.assertThat(pool.getHitCount()).isPositive();
+    }
+
+    @Test
+    void should_keep_reads_in_flight_within_window() throws IOException {
+        byte[] content = new byte[100 * CHUNK_SIZE];
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (InputStream in = new ReadAheadInputStream(reader(content, running, maxRunning),
+                CHUNK_SIZE, 4, executor, () -> {
+        }, BufferPool.shared(), 0)) {
+            IOUtils.consume(in);
+        }
+        Assertions.assertThat(maxRunning.get()).isBetween(2, 4);
+    }
+
+    @Test
+    void should_start_at_offset() throws IOException {
+        byte[] content = new byte[12345];
+        new Random(1).nextBytes(content);
+        for (int offset : new int[]{1, 1000, 1500, 12345, 20000}) {
+            try (InputStream in = new ReadAheadInputStream(reader(content, new AtomicInteger(), new AtomicInteger()),
+                    CHUNK_SIZE, 4, executor, () -> {
+            }, BufferPool.shared(), offset)) {
+                Assertions.assertThat(IOUtils.toByteArray(in))
+                          .isEqualTo(Arrays.copyOfRange(content, Math.min(offset, content.length), content.length));
+            }
+        }
+    }
+
+    /**
+     * Returns at most 300 bytes per call, like a server with a small maximum read size.
+     */
+    private static ReadAheadInputStream.RangeReader reader(byte[] content, AtomicInteger running,
+                                                           AtomicInteger maxRunning) {
+        return (buffer, fileOffset, offset, length) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+                if (fileOffset >= content.length) {
+                    return -1;
+                }
+                int n = (int) Math.min(Math.min(length, 300), content.length - fileOffset);
+                System.arraycopy(content, (int) fileOffset, buffer, offset, n);
+                return n;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+    }
+}
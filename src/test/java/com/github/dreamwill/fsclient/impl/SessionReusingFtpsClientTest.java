@@ -0,0 +1,53 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.net.InetAddress;
+import java.security.NoSuchAlgorithmException;
+
+class SessionReusingFtpsClientTest {
+    @Test
+    void should_fall_back_to_full_handshake_while_session_cache_is_unreachable() throws NoSuchAlgorithmException {
+        // a context without the JDK internal cache stands for a JVM started without --add-opens
+        SSLSession session = Mockito.mock(SSLSession.class);
+        Mockito.when(session.isValid()).thenReturn(true);
+        Mockito.when(session.getSessionContext()).thenReturn(Mockito.mock(SSLSessionContext.class));
+        SSLSocket control = Mockito.mock(SSLSocket.class);
+        Mockito.when(control.getSession()).thenReturn(session);
+        SSLSocket data = Mockito.mock(SSLSocket.class);
+        Mockito.when(data.getInetAddress()).thenReturn(InetAddress.getLoopbackAddress());
+        Mockito.when(data.getPort()).thenReturn(50000);
+        SessionReusingFtpsClient client = new SessionReusingFtpsClient(false, SSLContext.getDefault()) {
+            {
+                _socket_ = control;
+            }
+        };
+
+        Assertions.assertThatCode(() -> client._prepareDataSocket_(data)).doesNotThrowAnyException();
+        Assertions.assertThatCode(() -> client._prepareDataSocket_(data)).doesNotThrowAnyException();
+        // the second data connection does not try again
+        Mockito.verify(control, Mockito.times(1)).getSession();
+    }
+}
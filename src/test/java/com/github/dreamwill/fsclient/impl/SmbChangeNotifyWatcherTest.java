@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.TransportOptions;
+import com.github.dreamwill.fsclient.watch.ChangeEvent;
+import com.github.dreamwill.fsclient.watch.ChangeType;
+import com.github.dreamwill.fsclient.watch.WatchOptions;
+import com.hierynomus.msdtyp.FileTime;
+import com.hierynomus.msfscc.directory.FileNotifyInformation;
+import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
+import com.hierynomus.mssmb2.SMB2PacketHeader;
+import com.hierynomus.mssmb2.messages.SMB2ChangeNotifyResponse;
+import com.hierynomus.smbj.common.SmbPath;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.Directory;
+import com.hierynomus.smbj.share.DiskShare;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class SmbChangeNotifyWatcherTest {
+    private final Session session = Mockito.mock(Session.class);
+    private final DiskShare share = Mockito.mock(DiskShare.class);
+    private final Directory directory = Mockito.mock(Directory.class);
+    private final CompletableFuture<SMB2ChangeNotifyResponse> firstResponse = new CompletableFuture<>();
+    private SmbClient client;
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.when(session.connectShare("share")).thenReturn(share);
+        Mockito.when(share.getSmbPath()).thenReturn(new SmbPath("localhost", "share"));
+        Mockito.when(share.isConnected()).thenReturn(true);
+        Mockito.when(share.folderExists(Mockito.anyString())).thenReturn(true);
+        Mockito.when(share.openDirectory(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.any())).thenReturn(directory);
+        FileIdBothDirectoryInformation file = Mockito.mock(FileIdBothDirectoryInformation.class);
+        Mockito.when(file.getFileName()).thenReturn("a.txt");
+        Mockito.when(file.getEndOfFile()).thenReturn(3L);
+        Mockito.when(file.getLastWriteTime()).thenReturn(FileTime.ofEpochMillis(0));
+        Mockito.when(file.getCreationTime()).thenReturn(FileTime.ofEpochMillis(0));
+        Mockito.when(share.list(Mockito.anyString(), Mockito.<String>any()))
+               .thenReturn(Collections.singletonList(file));
+        // the first watch reports a.txt, the next one waits forever
+        Mockito.when(directory.watchAsync(Mockito.any(), Mockito.anyBoolean()))
+               .thenReturn(firstResponse, new CompletableFuture<>());
+        client = new SmbClient("localhost", 445, "dreamwill", "123456");
+        client.attach(session, TransportOptions.defaults(), 1024 * 1024);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void should_arm_watch_before_listing_and_keep_share_connected() throws Exception {
+        BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+        Closeable watch = client.watch("/share/dir", events::add, WatchOptions.defaults());
+        try {
+            InOrder inOrder = Mockito.inOrder(directory, share);
+            inOrder.verify(directory).watchAsync(Mockito.any(), Mockito.anyBoolean());
+            inOrder.verify(share).list(Mockito.anyString(), Mockito.<String>any());
+
+            // a.txt is gone when it is looked up
+            firstResponse.complete(changeOf("a.txt"));
+            ChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+            Assertions.assertThat(event).isNotNull();
+            Assertions.assertThat(event.getType()).isEqualTo(ChangeType.DELETED);
+            Assertions.assertThat(event.getPath()).isEqualTo("/share/dir/a.txt");
+            Mockito.verify(directory, Mockito.timeout(5000).times(2)).watchAsync(Mockito.any(),
+                    Mockito.anyBoolean());
+            Mockito.verify(share, Mockito.never()).close();
+        } finally {
+            watch.close();
+        }
+        Mockito.verify(directory, Mockito.timeout(5000)).close();
+        Mockito.verify(share, Mockito.never()).close();
+    }
+
+    @Test
+    void should_return_null_while_directory_does_not_exist() throws IOException {
+        Mockito.when(share.folderExists(Mockito.anyString())).thenReturn(false);
+
+        Assertions.assertThat(client.watch("/share/missing", events -> {
+        }, WatchOptions.defaults())).isNull();
+        Mockito.verify(directory).close();
+    }
+
+    private static SMB2ChangeNotifyResponse changeOf(String fileName) {
+        FileNotifyInformation change = Mockito.mock(FileNotifyInformation.class);
+        Mockito.when(change.getFileName()).thenReturn(fileName);
+        SMB2PacketHeader header = new SMB2PacketHeader();
+        header.setStatusCode(0);
+        SMB2ChangeNotifyResponse response = Mockito.mock(SMB2ChangeNotifyResponse.class);
+        Mockito.when(response.getHeader()).thenReturn(header);
+        Mockito.when(response.getFileNotifyInfoList()).thenReturn(Collections.singletonList(change));
+        return response;
+    }
+}
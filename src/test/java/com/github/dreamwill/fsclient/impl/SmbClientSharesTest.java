@@ -0,0 +1,227 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.TransportOptions;
+import com.hierynomus.msfscc.FileAttributes;
+import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
+import com.hierynomus.smbj.common.SMBRuntimeException;
+import com.hierynomus.smbj.common.SmbPath;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs SmbClient against a session double whose share fails every call once it has been closed, like a
+ * disconnected tree does.
+ */
+class SmbClientSharesTest {
+    private final Session session = Mockito.mock(Session.class);
+    private final DiskShare share = Mockito.mock(DiskShare.class);
+    private final AtomicBoolean disconnected = new AtomicBoolean();
+    private SmbClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Mockito.when(share.getSmbPath()).thenReturn(new SmbPath("localhost", "share"));
+        Mockito.when(share.isConnected()).thenAnswer(invocation -> !disconnected.get());
+        Mockito.doAnswer(invocation -> {
+            disconnected.set(true);
+            return null;
+        }).when(share).close();
+        Mockito.when(share.folderExists(Mockito.anyString())).thenAnswer(invocation -> {
+            checkConnected();
+            Thread.sleep(1);
+            checkConnected();
+            return true;
+        });
+        Mockito.doAnswer(invocation -> {
+            checkConnected();
+            return null;
+        }).when(share).rm(Mockito.anyString());
+        Mockito.when(session.connectShare("share")).thenAnswer(invocation -> {
+            disconnected.set(false);
+            return share;
+        });
+        client = new SmbClient("localhost", 445, "dreamwill", "123456");
+        client.attach(session, TransportOptions.defaults(), 1024 * 1024);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void should_keep_share_connected_while_calls_run_concurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String path = "/share/dir/" + i + ".txt";
+                futures.add(executor.submit(() -> {
+                    Assertions.assertThat(client.listDirectories("/share/dir")).isEmpty();
+                    Assertions.assertThat(client.deleteFile(path)).isTrue();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Mockito.verify(share, Mockito.never()).close();
+        Mockito.verify(session, Mockito.times(1)).connectShare("share");
+
+        client.close();
+        Mockito.verify(share).close();
+    }
+
+    @Test
+    void should_connect_share_again_once_server_dropped_it() throws IOException {
+        Assertions.assertThat(client.listDirectories("/share/dir")).isEmpty();
+        disconnected.set(true);
+
+        Assertions.assertThat(client.listDirectories("/share/dir")).isEmpty();
+        Mockito.verify(session, Mockito.times(2)).connectShare("share");
+    }
+
+    @Test
+    void should_release_only_the_file_while_stream_is_closed() throws IOException {
+        File file = Mockito.mock(File.class);
+        Mockito.when(share.fileExists(Mockito.anyString())).thenReturn(true);
+        Mockito.when(share.openFile(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any())).thenReturn(file);
+        Mockito.when(file.read(Mockito.any(byte[].class), Mockito.anyLong(), Mockito.anyInt(), Mockito.anyInt()))
+               .thenReturn(-1);
+
+        try (InputStream in = client.getInputStream("/share/dir/a.txt")) {
+            Assertions.assertThat(in.read()).isEqualTo(-1);
+            Assertions.assertThat(client.getOpenHandleCount()).isEqualTo(1);
+        }
+
+        Assertions.assertThat(client.getOpenHandleCount()).isZero();
+        Mockito.verify(file).close();
+        Mockito.verify(share, Mockito.never()).close();
+    }
+
+    @Test
+    void should_not_list_junctions_as_directories() throws IOException {
+        FileIdBothDirectoryInformation dir = Mockito.mock(FileIdBothDirectoryInformation.class);
+        Mockito.when(dir.getFileName()).thenReturn("sub");
+        Mockito.when(dir.getFileAttributes()).thenReturn(FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue());
+        FileIdBothDirectoryInformation junction = Mockito.mock(FileIdBothDirectoryInformation.class);
+        Mockito.when(junction.getFileName()).thenReturn("elsewhere");
+        Mockito.when(junction.getFileAttributes()).thenReturn(FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue()
+                | FileAttributes.FILE_ATTRIBUTE_REPARSE_POINT.getValue());
+        Mockito.when(share.list(Mockito.anyString(), Mockito.<String>any())).thenReturn(Arrays.asList(dir, junction));
+
+        Assertions.assertThat(client.listDirectories("/share/dir")).containsExactly("/share/dir/sub");
+    }
+
+    @Test
+    void should_release_file_while_stream_can_not_be_opened() throws IOException {
+        client.attach(session, TransportOptions.builder().readAheadWindow(1).build(), 1024 * 1024);
+        File file = Mockito.mock(File.class);
+        Mockito.when(share.fileExists(Mockito.anyString())).thenReturn(true);
+        Mockito.when(share.openFile(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any())).thenReturn(file);
+        Mockito.when(file.getInputStream()).thenThrow(new SMBRuntimeException("The share has been disconnected."));
+
+        Assertions.assertThatThrownBy(() -> client.getInputStream("/share/dir/a.txt"))
+                  .isInstanceOf(SMBRuntimeException.class);
+        Assertions.assertThat(client.getOpenHandleCount()).isZero();
+        Mockito.verify(file).close();
+    }
+
+    @Test
+    void should_stop_previous_reaper_while_attached_again() throws InterruptedException {
+        client.attach(session, TransportOptions.defaults(), 1024 * 1024);
+        client.attach(session, TransportOptions.defaults(), 1024 * 1024);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reaperCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertThat(reaperCount()).isEqualTo(1);
+    }
+
+    @Test
+    void should_bound_read_ahead_threads_of_all_streams() throws Exception {
+        client.attach(session, TransportOptions.builder().readAheadThreads(2).build(), 1024 * 1024);
+        File file = Mockito.mock(File.class);
+        Mockito.when(share.fileExists(Mockito.anyString())).thenReturn(true);
+        Mockito.when(share.openFile(Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+                Mockito.any())).thenReturn(file);
+        AtomicInteger reading = new AtomicInteger();
+        AtomicInteger maxReading = new AtomicInteger();
+        Mockito.when(file.read(Mockito.any(byte[].class), Mockito.anyLong(), Mockito.anyInt(), Mockito.anyInt()))
+               .thenAnswer(invocation -> {
+                   maxReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+                   Thread.sleep(20);
+                   reading.decrementAndGet();
+                   return -1;
+               });
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(executor.submit(() -> {
+                    try (InputStream in = client.getInputStream("/share/dir/a.txt")) {
+                        return in.read();
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                Assertions.assertThat(future.get()).isEqualTo(-1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertThat(maxReading.get()).isBetween(1, 2);
+    }
+
+    private static long reaperCount() {
+        return Thread.getAllStackTraces().keySet().stream()
+                     .filter(thread -> thread.getName().startsWith("smb-handle-reaper"))
+                     .count();
+    }
+
+    private void checkConnected() {
+        if (disconnected.get()) {
+            throw new SMBRuntimeException("The share has been disconnected.");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.impl;
+
+import com.github.dreamwill.fsclient.TransportOptions;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+class TransportTunerTest {
+    @Test
+    void should_keep_options_while_auto_tune_is_off() {
+        TransportOptions options = TransportOptions.defaults();
+        Assertions.assertThat(TransportTuner.resolve(options, "127.0.0.1", 1)).isSameAs(options);
+    }
+
+    @Test
+    void should_fill_sizes_while_auto_tune_is_on() throws IOException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            TransportOptions options = TransportOptions.builder()
+                                                       .autoTune(true)
+                                                       .smbReadBufferSize(12345)
+                                                       .build();
+            TransportOptions tuned = TransportTuner.resolve(options, "127.0.0.1", server.getLocalPort());
+            Assertions.assertThat(tuned.getSmbReadBufferSize()).isEqualTo(12345);
+            Assertions.assertThat(tuned.getSocketReceiveBufferSize()).isEqualTo(64 * 1024);
+            Assertions.assertThat(tuned.getSftpBulkRequests()).isEqualTo(16);
+        }
+    }
+
+    @Test
+    void should_keep_options_while_server_is_unreachable() throws IOException {
+        int port;
+        try (ServerSocket server = new ServerSocket(0)) {
+            port = server.getLocalPort();
+        }
+        TransportOptions options = TransportOptions.builder().autoTune(true).build();
+        Assertions.assertThat(TransportTuner.resolve(options, "127.0.0.1", port)).isSameAs(options);
+    }
+}
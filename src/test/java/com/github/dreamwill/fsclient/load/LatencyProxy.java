@@ -0,0 +1,320 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A TCP proxy on the loopback interface which forwards to a server through a simulated network. Each direction of a
+ * connection has a reader, which stamps every chunk with the time it is due, and a writer, which holds it until then
+ * and paces it to the bandwidth. So latency does not cut throughput, like on a real link, as long as the chunks in
+ * flight fit into the window of {@link NetworkProfile#getWindow()}; the reader stops reading while it is full.
+ * <p>
+ * FTP opens a data connection per transfer to the address in the reply to PASV or EPSV. The FTP variant rewrites
+ * these replies to a one shot proxy, so transfers pass the simulated network as well.
+ */
+@Slf4j
+public final class LatencyProxy implements Closeable {
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final Pattern PASV = Pattern.compile("\\((\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)\\)");
+    private static final Pattern EPSV = Pattern.compile("\\(\\|\\|\\|(\\d+)\\|\\)");
+
+    private final String targetHost;
+    private final int targetPort;
+    private final NetworkProfile profile;
+    private final boolean ftp;
+    private final boolean oneShot;
+    private final ServerSocket serverSocket;
+    /**
+     * shared with the data connection proxies, so closing the control proxy closes everything
+     */
+    private final ExecutorService threads;
+    private final Set<Closeable> open;
+
+    private LatencyProxy(String targetHost, int targetPort, NetworkProfile profile, boolean ftp, boolean oneShot,
+                         ExecutorService threads, Set<Closeable> open) throws IOException {
+        if (profile.getWindow() <= 0) {
+            throw new IllegalArgumentException("window must be positive.");
+        }
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.profile = profile;
+        this.ftp = ftp;
+        this.oneShot = oneShot;
+        this.threads = threads;
+        this.open = open;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        open.add(serverSocket);
+        threads.execute(this::accept);
+    }
+
+    public static LatencyProxy start(@NonNull String targetHost, int targetPort, @NonNull NetworkProfile profile)
+            throws IOException {
+        return new LatencyProxy(targetHost, targetPort, profile, false, false, newThreads(),
+                ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Proxy the control connection of an FTP server, the data connections of passive transfers follow.
+     */
+    public static LatencyProxy startFtp(@NonNull String targetHost, int targetPort, @NonNull NetworkProfile profile)
+            throws IOException {
+        return new LatencyProxy(targetHost, targetPort, profile, true, false, newThreads(),
+                ConcurrentHashMap.newKeySet());
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        open.forEach(IOUtils::closeQuietly);
+        threads.shutdownNow();
+    }
+
+    private static ExecutorService newThreads() {
+        return Executors.newCachedThreadPool(new BasicThreadFactory.Builder()
+                .namingPattern("latency-proxy-%d")
+                .daemon(true)
+                .build());
+    }
+
+    private void accept() {
+        try {
+            do {
+                Socket downstream = serverSocket.accept();
+                connect(downstream);
+            } while (!oneShot);
+        } catch (IOException e) {
+            log.debug("Proxy on port {} stops accepting: {}", getPort(), e.getMessage());
+        } finally {
+            if (oneShot) {
+                close(serverSocket);
+            }
+        }
+    }
+
+    private void connect(Socket downstream) throws IOException {
+        open.add(downstream);
+        Socket upstream;
+        try {
+            upstream = new Socket(targetHost, targetPort);
+        } catch (IOException e) {
+            close(downstream);
+            throw e;
+        }
+        open.add(upstream);
+        downstream.setTcpNoDelay(true);
+        upstream.setTcpNoDelay(true);
+        // both sockets are closed once both directions have ended
+        AtomicInteger directions = new AtomicInteger(2);
+        Runnable ended = () -> {
+            if (directions.decrementAndGet() == 0) {
+                close(downstream);
+                close(upstream);
+            }
+        };
+        pipe(downstream, upstream, null, ended);
+        pipe(upstream, downstream, ftp ? new ReplyRewriter() : null, ended);
+    }
+
+    private void pipe(Socket from, Socket to, ReplyRewriter rewriter, Runnable ended) {
+        BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        Semaphore window = new Semaphore(profile.getWindow());
+        threads.execute(() -> read(from, queue, window, rewriter));
+        threads.execute(() -> {
+            write(queue, window, to);
+            ended.run();
+        });
+    }
+
+    private void read(Socket from, BlockingQueue<Chunk> queue, Semaphore window, ReplyRewriter rewriter) {
+        long oneWay = profile.getRtt().toNanos() / 2;
+        long jitter = profile.getJitter().toNanos();
+        long lastDue = 0;
+        int readSize = Math.min(CHUNK_SIZE, profile.getWindow());
+        byte[] buffer = new byte[readSize];
+        try {
+            InputStream in = from.getInputStream();
+            while (true) {
+                window.acquire(readSize);
+                int n = in.read(buffer);
+                window.release(readSize - Math.max(n, 0));
+                if (n < 0) {
+                    break;
+                }
+                long due = System.nanoTime() + oneWay + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+                // a chunk never overtakes the one before, as TCP delivers in order
+                lastDue = Math.max(lastDue, due);
+                byte[] data = rewriter == null ? copyOf(buffer, n) : rewriter.rewrite(buffer, n);
+                if (data.length > 0) {
+                    queue.add(new Chunk(data, n, lastDue));
+                } else {
+                    window.release(n);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Proxy connection reset while reading: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.add(new Chunk(null, 0, Math.max(lastDue, System.nanoTime() + oneWay)));
+    }
+
+    private void write(BlockingQueue<Chunk> queue, Semaphore window, Socket to) {
+        long nanosPerByte = profile.getBandwidth() > 0 ? TimeUnit.SECONDS.toNanos(1) / profile.getBandwidth() : 0;
+        long free = 0;
+        try {
+            OutputStream out = to.getOutputStream();
+            while (true) {
+                Chunk chunk = queue.take();
+                sleepUntil(chunk.due);
+                if (chunk.data == null) {
+                    to.shutdownOutput();
+                    return;
+                }
+                if (ThreadLocalRandom.current().nextDouble() < profile.getStallChance()) {
+                    Thread.sleep(profile.getStallDuration().toMillis());
+                }
+                out.write(chunk.data);
+                out.flush();
+                window.release(chunk.window);
+                if (nanosPerByte > 0) {
+                    free = Math.max(free, System.nanoTime()) + nanosPerByte * chunk.data.length;
+                    sleepUntil(free);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Proxy connection reset while writing: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepUntil(long nanoTime) throws InterruptedException {
+        long remaining = nanoTime - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static byte[] copyOf(byte[] buffer, int length) {
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, 0, data, 0, length);
+        return data;
+    }
+
+    private void close(Closeable closeable) {
+        IOUtils.closeQuietly(closeable);
+        open.remove(closeable);
+    }
+
+    /**
+     * Forwards the replies of the control connection line by line, a line split across reads is held back until it
+     * is complete.
+     */
+    private final class ReplyRewriter {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        byte[] rewrite(byte[] buffer, int length) throws IOException {
+            ByteArrayOutputStream complete = new ByteArrayOutputStream();
+            for (int i = 0; i < length; i++) {
+                line.write(buffer[i]);
+                if (buffer[i] == '\n') {
+                    complete.write(rewrite(line.toString(StandardCharsets.ISO_8859_1.name()))
+                                          .getBytes(StandardCharsets.ISO_8859_1));
+                    line.reset();
+                }
+            }
+            return complete.toByteArray();
+        }
+
+        private String rewrite(String reply) throws IOException {
+            if (reply.startsWith("227 ")) {
+                Matcher matcher = PASV.matcher(reply);
+                if (matcher.find()) {
+                    String host = String.join(".", matcher.group(1), matcher.group(2), matcher.group(3),
+                            matcher.group(4));
+                    int port = Integer.parseInt(matcher.group(5)) * 256 + Integer.parseInt(matcher.group(6));
+                    int proxyPort = dataProxy(host, port);
+                    String address = getHost().replace('.', ',') + "," + proxyPort / 256 + "," + proxyPort % 256;
+                    return reply.substring(0, matcher.start()) + "(" + address + ")" + reply.substring(matcher.end());
+                }
+            } else if (reply.startsWith("229 ")) {
+                Matcher matcher = EPSV.matcher(reply);
+                if (matcher.find()) {
+                    int proxyPort = dataProxy(targetHost, Integer.parseInt(matcher.group(1)));
+                    return reply.substring(0, matcher.start()) + "(|||" + proxyPort + "|)"
+                            + reply.substring(matcher.end());
+                }
+            }
+            return reply;
+        }
+
+        private int dataProxy(String host, int port) throws IOException {
+            return new LatencyProxy(host, port, profile, false, true, threads, open).getPort();
+        }
+    }
+
+    private static final class Chunk {
+        /**
+         * null at the end of the stream
+         */
+        private final byte[] data;
+        /**
+         * bytes of the window taken by the chunk, the rewritten replies differ from the bytes read
+         */
+        private final int window;
+        private final long due;
+
+        private Chunk(byte[] data, int window, long due) {
+            this.data = data;
+            this.window = window;
+            this.due = due;
+        }
+    }
+}
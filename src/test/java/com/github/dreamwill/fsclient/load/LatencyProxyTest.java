@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+
+class LatencyProxyTest {
+    private ServerSocket echoServer;
+
+    @BeforeEach
+    void startEchoServer() throws IOException {
+        echoServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            try (Socket socket = echoServer.accept()) {
+                IOUtils.copy(socket.getInputStream(), socket.getOutputStream());
+                socket.shutdownOutput();
+            } catch (IOException ignored) {
+                // the test is over
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterEach
+    void stopEchoServer() throws IOException {
+        echoServer.close();
+    }
+
+    @Test
+    void should_add_round_trip_time() throws IOException {
+        NetworkProfile profile = NetworkProfile.builder().rtt(Duration.ofMillis(100)).build();
+        try (LatencyProxy proxy = LatencyProxy.start("127.0.0.1", echoServer.getLocalPort(), profile);
+             Socket socket = new Socket(proxy.getHost(), proxy.getPort())) {
+            long start = System.nanoTime();
+            socket.getOutputStream().write('x');
+            Assertions.assertThat(socket.getInputStream().read()).isEqualTo('x');
+
+            Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isBetween(Duration.ofMillis(100),
+                    Duration.ofMillis(1000));
+        }
+    }
+
+    @Test
+    void should_hold_sender_back_while_window_is_full() throws IOException {
+        NetworkProfile profile = NetworkProfile.builder().rtt(Duration.ofMillis(100)).window(32 * 1024).build();
+        byte[] data = new byte[256 * 1024];
+        try (LatencyProxy proxy = LatencyProxy.start("127.0.0.1", echoServer.getLocalPort(), profile);
+             Socket socket = new Socket(proxy.getHost(), proxy.getPort())) {
+            long start = System.nanoTime();
+            OutputStream out = socket.getOutputStream();
+            out.write(data);
+            socket.shutdownOutput();
+
+            Assertions.assertThat(IOUtils.toByteArray(socket.getInputStream())).hasSize(data.length);
+            // eight windows, each one is half a round trip on its way
+            Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(350));
+        }
+    }
+
+    @Test
+    void should_cap_bandwidth_and_forward_end_of_stream() throws IOException {
+        NetworkProfile profile = NetworkProfile.builder().bandwidth(1024 * 1024).build();
+        byte[] data = new byte[256 * 1024];
+        try (LatencyProxy proxy = LatencyProxy.start("127.0.0.1", echoServer.getLocalPort(), profile);
+             Socket socket = new Socket(proxy.getHost(), proxy.getPort())) {
+            long start = System.nanoTime();
+            OutputStream out = socket.getOutputStream();
+            out.write(data);
+            socket.shutdownOutput();
+            InputStream in = socket.getInputStream();
+
+            Assertions.assertThat(IOUtils.toByteArray(in)).hasSize(data.length);
+            // a quarter of a second each way, the directions overlap
+            Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(200));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps every sample, a run of a few minutes records some hundred thousand at most.
+ */
+final class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+    private int errors;
+    private long bytes;
+
+    synchronized void record(long nanos, long bytes) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        this.bytes += bytes;
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized LoadReport.Stats stats(Operation operation) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new LoadReport.Stats(operation, count, errors, bytes, percentile(sorted, 0.5),
+                percentile(sorted, 0.99), percentile(sorted, 0.999));
+    }
+
+    /**
+     * nearest rank
+     */
+    private static Duration percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return Duration.ofNanos(sorted[Math.max(0, rank - 1)]);
+    }
+}
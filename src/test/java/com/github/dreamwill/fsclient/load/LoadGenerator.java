@@ -0,0 +1,293 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a {@link Workload} against one or more clients and measures the latency of every operation. Each operation
+ * takes its file out of the pool of created files while it runs, so concurrent operations never get in each other's
+ * way and every error is a real one.
+ */
+@Slf4j
+public final class LoadGenerator {
+    private static final int CONTENT_BLOCK_SIZE = 64 * 1024;
+
+    private final List<FileSystemClient> clients;
+    private final Workload workload;
+    /**
+     * every operation repeated by its weight, a random element follows the mix
+     */
+    private final Operation[] wheel;
+    private final byte[] content = new byte[CONTENT_BLOCK_SIZE];
+    private final Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+    private final List<RemoteFile> idle = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger started = new AtomicInteger();
+
+    private LoadGenerator(List<FileSystemClient> clients, Workload workload) {
+        if (clients.isEmpty() || workload.getConcurrency() <= 0) {
+            throw new IllegalArgumentException("clients and concurrency must not be empty.");
+        }
+        this.clients = clients;
+        this.workload = workload;
+        List<Operation> operations = new ArrayList<>();
+        workload.getMix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+            recorders.put(operation, new LatencyRecorder());
+        });
+        // taken when every file is busy
+        recorders.putIfAbsent(Operation.CREATE, new LatencyRecorder());
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty.");
+        }
+        this.wheel = operations.toArray(new Operation[0]);
+        new Random(workload.getSeed()).nextBytes(content);
+    }
+
+    /**
+     * Seed the files, run the workload and delete the directory of the workload afterwards.
+     *
+     * @param clients connected clients, the threads are spread over them
+     */
+    public static LoadReport run(@NonNull List<FileSystemClient> clients, @NonNull Workload workload)
+            throws IOException {
+        return new LoadGenerator(clients, workload).run();
+    }
+
+    private LoadReport run() throws IOException {
+        Random random = new Random(workload.getSeed());
+        for (int i = 0; i < workload.getSeedFiles(); i++) {
+            if (create(clients.get(0), random) < 0) {
+                throw new IOException("Failed to create the seed files in " + workload.getDir());
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workload.getConcurrency(),
+                new BasicThreadFactory.Builder().namingPattern("load-%d").daemon(true).build());
+        long start = System.nanoTime();
+        long deadline = start + workload.getDuration().toNanos();
+        Duration elapsed;
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < workload.getConcurrency(); i++) {
+                FileSystemClient client = clients.get(i % clients.size());
+                Random workerRandom = new Random(workload.getSeed() + i + 1);
+                workers.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline && (workload.getOperations() <= 0
+                            || started.getAndIncrement() < workload.getOperations())) {
+                        runOne(client, workerRandom);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            // the clean up is not measured
+            elapsed = Duration.ofNanos(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running the load.");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            cleanUp();
+        }
+        return new LoadReport(elapsed, recorders.entrySet().stream()
+                                                .map(entry -> entry.getValue().stats(entry.getKey()))
+                                                .collect(Collectors.toList()));
+    }
+
+    private void runOne(FileSystemClient client, Random random) {
+        Operation operation = wheel[random.nextInt(wheel.length)];
+        RemoteFile file = operation == Operation.CREATE ? null : take(random);
+        if (file == null) {
+            // every file is busy, make another one
+            operation = Operation.CREATE;
+        }
+        LatencyRecorder recorder = recorders.get(operation);
+        long start = System.nanoTime();
+        try {
+            long bytes = execute(operation, client, file, random);
+            if (bytes < 0) {
+                recorder.error();
+            } else {
+                recorder.record(System.nanoTime() - start, bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("{} failed.", operation, e);
+            recorder.error();
+        }
+    }
+
+    /**
+     * Puts the file back into the pool once done, or the file it has been moved to.
+     *
+     * @return content bytes transferred, <code>-1</code> if the operation returned <code>false</code>
+     */
+    private long execute(Operation operation, FileSystemClient client, RemoteFile file, Random random)
+            throws IOException {
+        switch (operation) {
+            case CREATE:
+                return create(client, random);
+            case READ:
+                try (InputStream in = client.getInputStream(file.path)) {
+                    return in == null ? -1 : BufferPool.shared().copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+                } finally {
+                    release(file);
+                }
+            case METADATA:
+                try {
+                    return client.getFileMetadata(file.path) == null ? -1 : 0;
+                } finally {
+                    release(file);
+                }
+            case MOVE:
+                RemoteFile moved = new RemoteFile(newPath(), file.size);
+                boolean renamed = false;
+                try {
+                    renamed = client.moveFile(file.path, moved.path);
+                    return renamed ? 0 : -1;
+                } finally {
+                    release(renamed ? moved : file);
+                }
+            case COPY:
+                RemoteFile copy = new RemoteFile(newPath(), file.size);
+                try {
+                    if (!client.copyFile(file.path, copy.path)) {
+                        return -1;
+                    }
+                } finally {
+                    release(file);
+                }
+                release(copy);
+                return file.size;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private long create(FileSystemClient client, Random random) throws IOException {
+        RemoteFile file = new RemoteFile(newPath(), Math.max(0, workload.getSizes().next(random)));
+        if (!client.createFile(file.path, new ContentInputStream(content, file.size))) {
+            return -1;
+        }
+        release(file);
+        return file.size;
+    }
+
+    private String newPath() {
+        return workload.getDir() + "/file-" + sequence.incrementAndGet() + ".bin";
+    }
+
+    /**
+     * Take a random file out of the pool, null if all are busy.
+     */
+    private RemoteFile take(Random random) {
+        synchronized (idle) {
+            if (idle.isEmpty()) {
+                return null;
+            }
+            int index = random.nextInt(idle.size());
+            RemoteFile last = idle.remove(idle.size() - 1);
+            return index == idle.size() ? last : idle.set(index, last);
+        }
+    }
+
+    private void release(RemoteFile file) {
+        synchronized (idle) {
+            idle.add(file);
+        }
+    }
+
+    private void cleanUp() {
+        try {
+            if (clients.get(0).deleteTree(workload.getDir()) == null) {
+                log.warn("The load directory {} is gone already.", workload.getDir());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to delete the load directory {}.", workload.getDir(), e);
+        }
+    }
+
+    private static final class RemoteFile {
+        private final String path;
+        private final long size;
+
+        private RemoteFile(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Repeats the block until the size is reached.
+     */
+    private static final class ContentInputStream extends InputStream {
+        private final byte[] block;
+        private long remaining;
+
+        private ContentInputStream(byte[] block, long size) {
+            this.block = block;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            return block[(int) (--remaining % block.length)] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int offset = (int) (remaining % block.length);
+            int n = (int) Math.min(Math.min(len, remaining), block.length - offset);
+            System.arraycopy(block, offset, b, off, n);
+            remaining -= n;
+            return n;
+        }
+    }
+}
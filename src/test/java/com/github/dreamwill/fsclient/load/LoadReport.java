@@ -0,0 +1,107 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.List;
+
+@Getter
+public class LoadReport {
+    private final Duration elapsed;
+    private final List<Stats> operations;
+
+    LoadReport(Duration elapsed, List<Stats> operations) {
+        this.elapsed = elapsed;
+        this.operations = operations;
+    }
+
+    public Stats get(Operation operation) {
+        return operations.stream().filter(stats -> stats.operation == operation).findFirst().orElse(null);
+    }
+
+    public long getCount() {
+        return operations.stream().mapToLong(Stats::getCount).sum();
+    }
+
+    public long getErrors() {
+        return operations.stream().mapToLong(Stats::getErrors).sum();
+    }
+
+    /**
+     * successful operations per second
+     */
+    public double getThroughput() {
+        return getCount() / seconds();
+    }
+
+    /**
+     * file content read and written per second
+     */
+    public double getBytesPerSecond() {
+        return operations.stream().mapToLong(Stats::getBytes).sum() / seconds();
+    }
+
+    private double seconds() {
+        return Math.max(1, elapsed.toMillis()) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder(String.format("%-10s %8s %7s %10s %10s %10s%n", "operation", "count",
+                "errors", "p50 ms", "p99 ms", "p999 ms"));
+        for (Stats stats : operations) {
+            table.append(String.format("%-10s %8d %7d %10.2f %10.2f %10.2f%n", stats.operation, stats.count,
+                    stats.errors, millis(stats.p50), millis(stats.p99), millis(stats.p999)));
+        }
+        table.append(String.format("%d operations in %.1f s, %.1f ops/s, %.2f MiB/s", getCount(), seconds(),
+                getThroughput(), getBytesPerSecond() / 1024 / 1024));
+        return table.toString();
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1e6;
+    }
+
+    @Getter
+    public static class Stats {
+        private final Operation operation;
+        /**
+         * successful operations, the percentiles are of these
+         */
+        private final long count;
+        /**
+         * operations which failed or returned <code>false</code>
+         */
+        private final long errors;
+        private final long bytes;
+        private final Duration p50;
+        private final Duration p99;
+        private final Duration p999;
+
+        Stats(Operation operation, long count, long errors, long bytes, Duration p50, Duration p99, Duration p999) {
+            this.operation = operation;
+            this.count = count;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.impl.FtpClient;
+import com.github.dreamwill.fsclient.impl.InMemoryFileSystemClient;
+import com.github.dreamwill.fsclient.impl.LocalFileSystemClient;
+import com.github.dreamwill.fsclient.impl.SftpClient;
+import com.github.dreamwill.fsclient.impl.SmbClient;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.filesystem.DirectoryEntry;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a workload through {@link LatencyProxy}. The first test checks the harness itself, the second one is the
+ * tool and only runs when asked for, like
+ * <pre>
+ * mvn test -Dtest=LoadTest -Dload=true -Dload.rtt=40ms -Dload.jitter=5ms -Dload.concurrency=8
+ * </pre>
+ * Properties, all optional:
+ * <ul>
+ *     <li><code>load.protocol</code>: <code>ftp</code> (default) runs against a local stand-in server,
+ *     <code>sftp</code> and <code>smb</code> need <code>load.host</code>, <code>load.port</code>,
+ *     <code>load.username</code> and <code>load.password</code>, <code>memory</code> and <code>local</code> run
+ *     without a network as a baseline</li>
+ *     <li><code>load.rtt</code>, <code>load.jitter</code>, <code>load.bandwidth</code> (bytes per second),
+ *     <code>load.stallChance</code>, <code>load.stall</code> and <code>load.window</code> (bytes in flight, default
+ *     <code>4m</code>): see {@link NetworkProfile}</li>
+ *     <li><code>load.mix</code>, <code>load.sizes</code>, <code>load.seedFiles</code>, <code>load.concurrency</code>,
+ *     <code>load.connections</code>, <code>load.duration</code>, <code>load.operations</code> and
+ *     <code>load.dir</code>: see {@link Workload}</li>
+ * </ul>
+ */
+class LoadTest {
+    @Test
+    void should_measure_operations_through_proxy() throws IOException {
+        Duration rtt = Duration.ofMillis(10);
+        FakeFtpServer server = startFtpServer();
+        try (LatencyProxy proxy = LatencyProxy.startFtp("127.0.0.1", server.getServerControlPort(),
+                NetworkProfile.builder().rtt(rtt).build())) {
+            FileSystemClient client = new FtpClient(proxy.getHost(), proxy.getPort(), "dreamwill", "123456");
+            client.connect();
+            LoadReport report;
+            try {
+                report = LoadGenerator.run(Collections.singletonList(client), Workload.builder()
+                                                                          .seedFiles(3)
+                                                                          .sizes(SizeDistribution.fixed(4096))
+                                                                          .concurrency(2)
+                                                                          .operations(12)
+                                                                          .build());
+                Assertions.assertThat(client.listDirectories("/")).isEmpty();
+            } finally {
+                client.close();
+            }
+
+            Assertions.assertThat(report.getErrors()).isZero();
+            Assertions.assertThat(report.getCount()).isEqualTo(12);
+            Assertions.assertThat(report.get(Operation.READ).getBytes()).isEqualTo(
+                    report.get(Operation.READ).getCount() * 4096);
+            // every operation takes a round trip at least
+            report.getOperations().stream()
+                  .filter(stats -> stats.getCount() > 0)
+                  .forEach(stats -> Assertions.assertThat(stats.getP50()).isGreaterThanOrEqualTo(rtt));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "load", matches = "true")
+    void run_configured_load() throws IOException {
+        String protocol = System.getProperty("load.protocol", "ftp");
+        NetworkProfile profile = NetworkProfile.builder()
+                                               .rtt(duration("load.rtt", "0ms"))
+                                               .jitter(duration("load.jitter", "0ms"))
+                                               .bandwidth(SizeDistribution.parseSize(
+                                                       System.getProperty("load.bandwidth", "0")))
+                                               .stallChance(Double.parseDouble(
+                                                       System.getProperty("load.stallChance", "0")))
+                                               .stallDuration(duration("load.stall", "200ms"))
+                                               .window((int) SizeDistribution.parseSize(
+                                                       System.getProperty("load.window", "4m")))
+                                               .build();
+        Workload workload = Workload.builder()
+                                    .dir(System.getProperty("load.dir", "/load"))
+                                    .mix(Workload.parseMix(System.getProperty("load.mix",
+                                            "create=2,read=5,metadata=2,move=1,copy=1")))
+                                    .sizes(SizeDistribution.parse(System.getProperty("load.sizes", "fixed:64k")))
+                                    .seedFiles(Integer.getInteger("load.seedFiles", 20))
+                                    .concurrency(Integer.getInteger("load.concurrency", 4))
+                                    .duration(duration("load.duration", "30s"))
+                                    .operations(Integer.getInteger("load.operations", 0))
+                                    .build();
+        if ("memory".equals(protocol) || "local".equals(protocol)) {
+            runBaseline(protocol, workload);
+            return;
+        }
+        FakeFtpServer server = "ftp".equals(protocol) && System.getProperty("load.host") == null
+                ? startFtpServer() : null;
+        String host = server == null ? System.getProperty("load.host") : "127.0.0.1";
+        int port = server == null ? Integer.getInteger("load.port") : server.getServerControlPort();
+        List<FileSystemClient> clients = new ArrayList<>();
+        try (LatencyProxy proxy = "ftp".equals(protocol) ? LatencyProxy.startFtp(host, port, profile)
+                : LatencyProxy.start(host, port, profile)) {
+            for (int i = 0; i < Integer.getInteger("load.connections", 1); i++) {
+                FileSystemClient client = newClient(protocol, proxy);
+                clients.add(client);
+                client.connect();
+            }
+            LoadReport report = LoadGenerator.run(clients, workload);
+            // the log of this package is muted in tests
+            System.out.printf("%s load through %s with %d threads on %d connections:%n%s%n", protocol, profile,
+                    workload.getConcurrency(), clients.size(), report);
+        } finally {
+            clients.forEach(IOUtils::closeQuietly);
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * No network and no proxy, the floor the protocols are compared with.
+     */
+    private static void runBaseline(String protocol, Workload workload) throws IOException {
+        Path root = "local".equals(protocol) ? Files.createTempDirectory("load-") : null;
+        FileSystemClient client = root == null ? new InMemoryFileSystemClient() : new LocalFileSystemClient(root);
+        try {
+            client.connect();
+            LoadReport report = LoadGenerator.run(Collections.singletonList(client), workload);
+            System.out.printf("%s baseline with %d threads:%n%s%n", protocol, workload.getConcurrency(), report);
+        } finally {
+            client.close();
+            if (root != null) {
+                FileUtils.deleteDirectory(root.toFile());
+            }
+        }
+    }
+
+    private static FileSystemClient newClient(String protocol, LatencyProxy proxy) {
+        String username = System.getProperty("load.username", "dreamwill");
+        String password = System.getProperty("load.password", "123456");
+        switch (protocol) {
+            case "ftp":
+                return new FtpClient(proxy.getHost(), proxy.getPort(), username, password);
+            case "sftp":
+                return new SftpClient(proxy.getHost(), proxy.getPort(), username, password);
+            case "smb":
+                return new SmbClient(proxy.getHost(), proxy.getPort(), username, password);
+            default:
+                throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+    }
+
+    private static FakeFtpServer startFtpServer() {
+        FakeFtpServer server = new FakeFtpServer();
+        server.addUserAccount(new UserAccount("dreamwill", "123456", "/"));
+        UnixFakeFileSystem fileSystem = new UnixFakeFileSystem();
+        fileSystem.add(new DirectoryEntry("/"));
+        server.setFileSystem(fileSystem);
+        server.setServerControlPort(0);
+        server.start();
+        return server;
+    }
+
+    /**
+     * <code>40ms</code> or <code>30s</code>
+     */
+    private static Duration duration(String property, String defaultValue) {
+        String value = System.getProperty(property, defaultValue).trim().toLowerCase();
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        return Duration.ofSeconds(Long.parseLong(StringUtils.removeEnd(value, "s")));
+    }
+}
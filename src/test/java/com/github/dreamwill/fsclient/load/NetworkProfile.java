@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * The network between a client and a server as simulated by {@link LatencyProxy}.
+ */
+@Getter
+@Builder
+public class NetworkProfile {
+    /**
+     * round trip time, half of it is added to either direction
+     */
+    @Builder.Default
+    private Duration rtt = Duration.ZERO;
+
+    /**
+     * up to this much is added to the delay of each chunk, bytes are never reordered
+     */
+    @Builder.Default
+    private Duration jitter = Duration.ZERO;
+
+    /**
+     * bytes per second in either direction, <code>0</code> for unlimited
+     */
+    @Builder.Default
+    private long bandwidth = 0;
+
+    /**
+     * chance of a chunk to be held back for {@link #stallDuration}, like a lost packet waiting for its
+     * retransmission
+     */
+    @Builder.Default
+    private double stallChance = 0;
+
+    @Builder.Default
+    private Duration stallDuration = Duration.ofMillis(200);
+
+    /**
+     * bytes on their way in either direction, like the window of TCP; a sender is held back while the window is
+     * full, so throughput is at most <code>window / rtt</code> like on a real link
+     */
+    @Builder.Default
+    private int window = 4 * 1024 * 1024;
+
+    public static NetworkProfile direct() {
+        return NetworkProfile.builder().build();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rtt=%dms jitter=%dms bandwidth=%s stalls=%.2f%% x %dms window=%dKiB", rtt.toMillis(),
+                jitter.toMillis(), bandwidth > 0 ? bandwidth + "B/s" : "unlimited", stallChance * 100,
+                stallDuration.toMillis(), window / 1024);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import java.util.Random;
+
+/**
+ * Sizes of the files created by a load run.
+ */
+@FunctionalInterface
+public interface SizeDistribution {
+    long next(Random random);
+
+    static SizeDistribution fixed(long size) {
+        return random -> size;
+    }
+
+    static SizeDistribution uniform(long min, long max) {
+        return random -> min + (long) (random.nextDouble() * (max - min + 1));
+    }
+
+    /**
+     * Most files are small and a few are large, like on most file servers.
+     *
+     * @param median half of the files are smaller
+     * @param sigma  spread, <code>1</code> makes one file in six larger than <code>e</code> times the median
+     * @param max    larger sizes are cut
+     */
+    static SizeDistribution logNormal(long median, double sigma, long max) {
+        return random -> Math.min(max, Math.round(median * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    /**
+     * Parse <code>fixed:64k</code>, <code>uniform:1k:1m</code> or <code>lognormal:64k:1.5:16m</code>, sizes take the
+     * suffixes <code>k</code>, <code>m</code> and <code>g</code>.
+     */
+    static SizeDistribution parse(String text) {
+        String[] parts = text.trim().toLowerCase().split(":");
+        switch (parts[0]) {
+            case "fixed":
+                return fixed(parseSize(parts[1]));
+            case "uniform":
+                return uniform(parseSize(parts[1]), parseSize(parts[2]));
+            case "lognormal":
+                return logNormal(parseSize(parts[1]), Double.parseDouble(parts[2]), parseSize(parts[3]));
+            default:
+                throw new IllegalArgumentException("Unknown size distribution " + text);
+        }
+    }
+
+    static long parseSize(String text) {
+        String size = text.trim().toLowerCase();
+        long unit = 1;
+        switch (size.charAt(size.length() - 1)) {
+            case 'g':
+                unit *= 1024;
+            case 'm':
+                unit *= 1024;
+            case 'k':
+                unit *= 1024;
+                size = size.substring(0, size.length() - 1);
+                break;
+            default:
+        }
+        return Long.parseLong(size) * unit;
+    }
+}
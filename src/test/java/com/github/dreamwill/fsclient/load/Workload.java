@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.load;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * What a load run does, see {@link LoadGenerator}.
+ */
+@Getter
+@Builder
+public class Workload {
+    /**
+     * files are created below, the directory is deleted after the run
+     */
+    @Builder.Default
+    private String dir = "/load";
+
+    /**
+     * relative weights of the operations
+     */
+    @Builder.Default
+    private Map<Operation, Integer> mix = parseMix("create=2,read=5,metadata=2,move=1,copy=1");
+
+    @Builder.Default
+    private SizeDistribution sizes = SizeDistribution.fixed(64 * 1024);
+
+    /**
+     * files created before the measurement starts, so there is something to read
+     */
+    @Builder.Default
+    private int seedFiles = 20;
+
+    /**
+     * threads issuing operations, spread over the clients
+     */
+    @Builder.Default
+    private int concurrency = 4;
+
+    /**
+     * the run stops when the duration is over or this many operations are done, <code>0</code> for no limit
+     */
+    @Builder.Default
+    private int operations = 0;
+
+    @Builder.Default
+    private Duration duration = Duration.ofSeconds(30);
+
+    @Builder.Default
+    private long seed = 42;
+
+    /**
+     * Parse weights like <code>create=2,read=5</code>, operations which are left out are not run.
+     */
+    public static Map<Operation, Integer> parseMix(String text) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : text.split(",")) {
+            String[] weight = part.trim().split("=");
+            mix.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import com.github.dreamwill.fsclient.BufferPool;
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import com.github.dreamwill.fsclient.impl.InMemoryFileSystemClient;
+import com.github.dreamwill.fsclient.impl.LocalFileSystemClient;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
+class StreamingTransferTest {
+    private static final Instant MTIME = Instant.parse("2022-06-01T08:00:00Z");
+
+    @TempDir
+    Path root;
+
+    private final BufferPool pool = BufferPool.builder().leakDetection(true).build();
+    private InMemoryFileSystemClient from;
+    private LocalFileSystemClient to;
+    private byte[] content;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        from = new InMemoryFileSystemClient();
+        from.connect();
+        to = new LocalFileSystemClient(root);
+        to.connect();
+        content = new byte[123_457];
+        new Random(7).nextBytes(content);
+        from.createFile("/source/a.bin", new ByteArrayInputStream(content));
+        from.setModificationTime("/source/a.bin", MTIME);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        from.close();
+        to.close();
+        Assertions.assertThat(pool.getLeaks()).isEmpty();
+    }
+
+    @Test
+    void should_stream_file_to_other_client() throws IOException {
+        StreamingTransferOptions options = StreamingTransferOptions.builder()
+                .chunkSize(4096).ringSize(4).bufferPool(pool).build();
+
+        Assertions.assertThat(from.transferTo("/source/a.bin", to, "/target/a.bin", options)).isTrue();
+
+        assertTransferred("/target/a.bin");
+        Assertions.assertThat(to.getFileMetadata("/target/a.bin").getMtime()).contains(MTIME);
+    }
+
+    @Test
+    void should_read_ranges_in_parallel() throws IOException {
+        StreamingTransferOptions options = StreamingTransferOptions.builder()
+                .chunkSize(1000).ringSize(8).parallelism(4).segmentSize(10_000).bufferPool(pool).build();
+        FileSystemClient source = Mockito.spy(from);
+
+        Assertions.assertThat(StreamingTransfer.transfer(source, "/source/a.bin", to, "/target/a.bin", options))
+                .isTrue();
+
+        assertTransferred("/target/a.bin");
+        Mockito.verify(source, Mockito.times(13)).getInputStream(Mockito.eq("/source/a.bin"), Mockito.anyLong());
+    }
+
+    @Test
+    @Timeout(10)
+    void should_read_ranges_in_order_from_single_connection_source() throws IOException {
+        StreamingTransferOptions options = StreamingTransferOptions.builder()
+                .chunkSize(1000).ringSize(8).parallelism(4).segmentSize(10_000).bufferPool(pool).build();
+        Semaphore connection = new Semaphore(1);
+        FileSystemClient source = Mockito.spy(from);
+        Mockito.doAnswer(invocation -> {
+            // give the later ranges a head start on the only connection
+            if ((long) invocation.getArgument(1) == 0) {
+                Thread.sleep(200);
+            }
+            connection.acquire();
+            return new ProxyInputStream((InputStream) invocation.callRealMethod()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        connection.release();
+                    }
+                }
+            };
+        }).when(source).getInputStream(Mockito.anyString(), Mockito.anyLong());
+
+        Assertions.assertThat(StreamingTransfer.transfer(source, "/source/a.bin", to, "/target/a.bin", options))
+                .isTrue();
+
+        assertTransferred("/target/a.bin");
+    }
+
+    @Test
+    void should_not_overwrite_or_invent_files() throws IOException {
+        to.createFile("/target/a.bin", new ByteArrayInputStream(new byte[1]));
+        StreamingTransferOptions options = StreamingTransferOptions.builder().bufferPool(pool).build();
+
+        Assertions.assertThat(from.transferTo("/source/a.bin", to, "/target/a.bin", options)).isFalse();
+        Assertions.assertThat(from.transferTo("/source/missing.bin", to, "/target/b.bin", options)).isFalse();
+        Assertions.assertThat(to.getFileMetadata("/target/a.bin").getSize()).isEqualTo(1L);
+        Assertions.assertThat(to.getFileMetadata("/target/b.bin")).isNull();
+    }
+
+    @Test
+    void should_copy_within_same_client() throws IOException {
+        Assertions.assertThat(from.transferTo("/source/a.bin", from, "/target/a.bin")).isTrue();
+
+        Assertions.assertThat(IOUtils.toByteArray(from.getInputStream("/target/a.bin"))).isEqualTo(content);
+        Assertions.assertThat(from.getFileMetadata("/target/a.bin").getMtime()).contains(MTIME);
+    }
+
+    @Test
+    void should_delete_partial_file_when_read_fails() throws IOException {
+        FileSystemClient source = Mockito.mock(FileSystemClient.class);
+        Mockito.when(source.getFileMetadata("/a.bin")).thenReturn(FileMetadata.builder()
+                .path("/a.bin").size((long) content.length).mtime(Optional.of(MTIME)).build());
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        Mockito.when(source.getInputStream("/a.bin")).thenReturn(new SequenceInputStream(
+                new BoundedInputStream(new ByteArrayInputStream(content), 50_000), broken));
+        StreamingTransferOptions options = StreamingTransferOptions.builder()
+                .chunkSize(4096).bufferPool(pool).build();
+
+        Assertions.assertThatIOException()
+                .isThrownBy(() -> StreamingTransfer.transfer(source, "/a.bin", to, "/target/a.bin", options))
+                .withMessage("connection reset");
+        Assertions.assertThat(to.getFileMetadata("/target/a.bin")).isNull();
+    }
+
+    @Test
+    @Timeout(10)
+    void should_fail_when_read_times_out() throws IOException {
+        FileSystemClient source = Mockito.mock(FileSystemClient.class);
+        Mockito.when(source.getFileMetadata("/a.bin")).thenReturn(FileMetadata.builder()
+                .path("/a.bin").size((long) content.length).mtime(Optional.of(MTIME)).build());
+        Mockito.when(source.getInputStream("/a.bin")).thenReturn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new SocketTimeoutException("Read timed out");
+            }
+        });
+        StreamingTransferOptions options = StreamingTransferOptions.builder().bufferPool(pool).build();
+
+        Assertions.assertThatIOException()
+                .isThrownBy(() -> StreamingTransfer.transfer(source, "/a.bin", to, "/target/a.bin", options))
+                .withMessage("Read timed out");
+        Assertions.assertThat(to.getFileMetadata("/target/a.bin")).isNull();
+    }
+
+    @Test
+    void should_keep_file_of_other_writer_when_create_fails() throws IOException {
+        FileSystemClient target = Mockito.spy(to);
+        Mockito.doAnswer(invocation -> {
+            // another writer wins the race after the check for an existing target
+            to.createFile("/target/a.bin", new ByteArrayInputStream(new byte[1]));
+            throw new IOException("connection reset");
+        }).when(target).createFile(Mockito.eq("/target/a.bin"), Mockito.any(InputStream.class));
+        StreamingTransferOptions options = StreamingTransferOptions.builder().bufferPool(pool).build();
+
+        Assertions.assertThatIOException()
+                .isThrownBy(() -> StreamingTransfer.transfer(from, "/source/a.bin", target, "/target/a.bin", options))
+                .withMessage("connection reset");
+        Assertions.assertThat(to.getFileMetadata("/target/a.bin").getSize()).isEqualTo(1L);
+    }
+
+    private void assertTransferred(String path) throws IOException {
+        try (InputStream in = to.getInputStream(path)) {
+            Assertions.assertThat(IOUtils.toByteArray(in)).isEqualTo(content);
+        }
+    }
+}
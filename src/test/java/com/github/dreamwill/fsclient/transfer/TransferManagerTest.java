@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.transfer;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TransferManagerTest {
+    private TransferManager manager;
+
+    @AfterEach
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    void should_limit_concurrency_per_host() throws IOException {
+        manager = TransferManager.builder().maxConcurrentTransfers(8).maxConcurrentTransfersPerHost(2).build();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.createFile(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            IOUtils.consume(invocation.getArgument(1, InputStream.class));
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return true;
+        });
+        List<TransferHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            handles.add(manager.submit(TransferJob.upload(client, "nas1", "/dreamwill/" + i, () -> input(10)).build()));
+        }
+        handles.forEach(handle -> Assertions.assertThat(handle.getResult().join()).isTrue());
+        Assertions.assertThat(maxRunning.get()).isEqualTo(2);
+        Assertions.assertThat(handles.get(0).getTransferredBytes()).isEqualTo(10);
+    }
+
+    @Test
+    void should_prefer_interactive_transfers() throws IOException, InterruptedException {
+        manager = TransferManager.builder().maxConcurrentTransfers(1).maxConcurrentTransfersPerHost(1).build();
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.createFile(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            blocker.await();
+            order.add(invocation.getArgument(0));
+            return true;
+        });
+        manager.submit(TransferJob.upload(client, "nas1", "/first", () -> input(1)).build());
+        List<TransferHandle> handles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            handles.add(manager.submit(TransferJob.upload(client, "nas1", "/batch" + i, () -> input(1))
+                                                  .priority(Priority.BATCH).build()));
+        }
+        handles.add(manager.submit(TransferJob.upload(client, "nas1", "/interactive", () -> input(1))
+                                              .priority(Priority.INTERACTIVE).build()));
+        blocker.countDown();
+        handles.forEach(handle -> handle.getResult().join());
+        Assertions.assertThat(order).containsExactly("/first", "/interactive", "/batch0", "/batch1", "/batch2");
+    }
+
+    @Test
+    void should_cancel_queued_transfer() throws IOException {
+        manager = TransferManager.builder().maxConcurrentTransfers(1).maxConcurrentTransfersPerHost(1).build();
+        CountDownLatch blocker = new CountDownLatch(1);
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.createFile(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            blocker.await();
+            return true;
+        });
+        TransferHandle first = manager.submit(TransferJob.upload(client, "nas1", "/first", () -> input(1)).build());
+        TransferHandle second = manager.submit(TransferJob.upload(client, "nas1", "/second", () -> input(1)).build());
+        second.cancel();
+        blocker.countDown();
+        Assertions.assertThat(first.getResult().join()).isTrue();
+        Assertions.assertThatThrownBy(() -> second.getResult().join()).isInstanceOf(CancellationException.class);
+        Mockito.verify(client, Mockito.never()).createFile(Mockito.eq("/second"), Mockito.any());
+    }
+
+    @Test
+    void should_stop_running_transfer_and_delete_partial_upload_while_closed() throws Exception {
+        manager = TransferManager.builder().maxConcurrentTransfers(1).maxConcurrentTransfersPerHost(1).build();
+        CountDownLatch started = new CountDownLatch(1);
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.createFile(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            InputStream in = invocation.getArgument(1, InputStream.class);
+            while (in.read() >= 0) {
+                started.countDown();
+                Thread.sleep(1);
+            }
+            return true;
+        });
+        TransferHandle handle = manager.submit(TransferJob.upload(client, "nas1", "/big", () -> input(100_000))
+                                                          .build());
+        Assertions.assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        manager.close();
+
+        Assertions.assertThatThrownBy(() -> handle.getResult().join()).isInstanceOf(CancellationException.class);
+        Mockito.verify(client).deleteFile("/big");
+    }
+
+    @Test
+    void should_keep_existing_file_while_upload_onto_it_is_cancelled() throws Exception {
+        manager = TransferManager.builder().maxConcurrentTransfers(1).maxConcurrentTransfersPerHost(1).build();
+        CountDownLatch started = new CountDownLatch(1);
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.getFileMetadata("/big")).thenReturn(FileMetadata.builder().path("/big").size(1L).build());
+        // like the replicated client, the content is read before the existing file is noticed
+        Mockito.when(client.createFile(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            InputStream in = invocation.getArgument(1, InputStream.class);
+            while (in.read() >= 0) {
+                started.countDown();
+                Thread.sleep(1);
+            }
+            return false;
+        });
+        TransferHandle handle = manager.submit(TransferJob.upload(client, "nas1", "/big", () -> input(100_000))
+                                                          .build());
+        Assertions.assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        manager.close();
+
+        Assertions.assertThatThrownBy(() -> handle.getResult().join()).isInstanceOf(CancellationException.class);
+        Mockito.verify(client, Mockito.never()).deleteFile(Mockito.anyString());
+    }
+
+    @Test
+    void should_shape_bandwidth() throws IOException {
+        manager = TransferManager.builder().maxConcurrentTransfers(2).maxConcurrentTransfersPerHost(2)
+                                 .bandwidth(100_000).build();
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.getInputStream(Mockito.anyString())).thenAnswer(invocation -> input(150_000));
+        long start = System.nanoTime();
+        manager.submit(TransferJob.download(client, "nas1", "/big", NullOutputStream.NULL_OUTPUT_STREAM).build())
+               .getResult().join();
+        // the bucket starts full with one second of burst
+        Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(400));
+        Assertions.assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis())
+                  .isLessThan(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static InputStream input(int size) {
+        return new ByteArrayInputStream(new byte[size]);
+    }
+}
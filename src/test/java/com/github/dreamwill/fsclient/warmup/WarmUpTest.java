@@ -0,0 +1,108 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.warmup;
+
+import com.github.dreamwill.fsclient.FileSystemClient;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class WarmUpTest {
+    @Test
+    void should_connect_endpoints_in_parallel() throws IOException {
+        List<FileSystemClient> clients = Arrays.asList(slowClient(200), slowClient(200), slowClient(200),
+                slowClient(200));
+        List<Endpoint> endpoints = Arrays.asList(
+                Endpoint.of("a", "localhost", factory(clients, 0))
+                        .connections(2).path("/share/dir").build(),
+                Endpoint.of("b", null, factory(clients, 2)).connections(2).build());
+
+        WarmUpResult result = WarmUp.run(endpoints, WarmUpOptions.defaults());
+
+        Assertions.assertThat(result.isComplete()).isTrue();
+        Assertions.assertThat(result.getElapsed()).isLessThan(Duration.ofMillis(700));
+        Assertions.assertThat(result.getClients("a")).hasSize(2);
+        Assertions.assertThat(result.getClients("b")).hasSize(2);
+        EndpointWarmUp a = result.getEndpoints().get(0);
+        Assertions.assertThat(a.getResolveTime()).isNotNull();
+        Assertions.assertThat(a.getConnectTimes()).allMatch(time -> time.compareTo(Duration.ofMillis(200)) >= 0);
+        Assertions.assertThat(result.getEndpoints().get(1).getResolveTime()).isNull();
+        for (FileSystemClient client : result.getClients("a")) {
+            Mockito.verify(client).warmUp(Collections.singletonList("/share/dir"));
+        }
+        for (FileSystemClient client : result.getClients("b")) {
+            Mockito.verify(client, Mockito.never()).warmUp(Mockito.any());
+        }
+    }
+
+    @Test
+    void should_report_failures_and_close_their_clients() throws IOException {
+        FileSystemClient broken = Mockito.mock(FileSystemClient.class);
+        Mockito.doThrow(new IOException("refused")).when(broken).connect();
+        FileSystemClient healthy = Mockito.mock(FileSystemClient.class);
+
+        WarmUpResult result = WarmUp.run(Arrays.asList(
+                Endpoint.of("broken", null, () -> broken).build(),
+                Endpoint.of("healthy", null, () -> healthy).build()), WarmUpOptions.defaults());
+
+        Assertions.assertThat(result.isComplete()).isFalse();
+        Assertions.assertThat(result.getClients("broken")).isEmpty();
+        Assertions.assertThat(result.getClients("healthy")).containsExactly(healthy);
+        Assertions.assertThat(result.getEndpoints().get(0).getFailures())
+                  .singleElement()
+                  .satisfies(e -> Assertions.assertThat(e).hasRootCauseMessage("refused"));
+        Mockito.verify(broken).close();
+        Mockito.verify(healthy, Mockito.never()).close();
+    }
+
+    @Test
+    void should_give_up_slow_endpoints_at_timeout() throws IOException {
+        FileSystemClient slow = slowClient(5000);
+
+        WarmUpResult result = WarmUp.run(Collections.singletonList(Endpoint.of("slow", null, () -> slow).build()),
+                WarmUpOptions.builder().timeout(Duration.ofMillis(200)).build());
+
+        Assertions.assertThat(result.getElapsed()).isLessThan(Duration.ofSeconds(2));
+        Assertions.assertThat(result.getClients("slow")).isEmpty();
+        Assertions.assertThat(result.getEndpoints().get(0).getFailures()).hasSize(1);
+        Mockito.verify(slow, Mockito.timeout(1000)).close();
+    }
+
+    private static Endpoint.ClientFactory factory(List<FileSystemClient> clients, int first) {
+        int[] next = {first};
+        return () -> {
+            synchronized (next) {
+                return clients.get(next[0]++);
+            }
+        };
+    }
+
+    private static FileSystemClient slowClient(long connectMillis) throws IOException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(connectMillis);
+            return null;
+        }).when(client).connect();
+        return client;
+    }
+}
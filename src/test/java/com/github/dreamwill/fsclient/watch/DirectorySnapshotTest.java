@@ -0,0 +1,97 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+class DirectorySnapshotTest {
+    @Test
+    void should_report_created_modified_and_deleted_files() {
+        DirectorySnapshot snapshot = DirectorySnapshot.of(Arrays.asList(
+                file("/dreamwill/c.txt", 3, 1000),
+                file("/dreamwill/a.txt", 1, 1000),
+                file("/dreamwill/b.txt", 2, 1000)
+        ));
+        List<ChangeEvent> events = snapshot.diff(Arrays.asList(
+                file("/dreamwill/d.txt", 4, 1000),
+                file("/dreamwill/b.txt", 2, 2000),
+                file("/dreamwill/c.txt", 3, 1000)
+        ));
+        Assertions.assertThat(events)
+                  .extracting(ChangeEvent::getType, ChangeEvent::getPath)
+                  .containsExactly(
+                          Assertions.tuple(ChangeType.DELETED, "/dreamwill/a.txt"),
+                          Assertions.tuple(ChangeType.MODIFIED, "/dreamwill/b.txt"),
+                          Assertions.tuple(ChangeType.CREATED, "/dreamwill/d.txt")
+                  );
+        Assertions.assertThat(events.get(0).getMetadata()).isNull();
+        Assertions.assertThat(events.get(2).getMetadata().getSize()).isEqualTo(4);
+    }
+
+    @Test
+    void should_report_nothing_while_listing_is_unchanged() {
+        DirectorySnapshot snapshot = DirectorySnapshot.of(Collections.singletonList(file("/dreamwill/a.txt", 1, 1000)));
+        Assertions.assertThat(snapshot.diff(Collections.singletonList(file("/dreamwill/a.txt", 1, 1000)))).isEmpty();
+        Assertions.assertThat(snapshot.change("/dreamwill/a.txt", file("/dreamwill/a.txt", 1, 1000))).isNull();
+        Assertions.assertThat(snapshot.change("/dreamwill/b.txt", null)).isNull();
+    }
+
+    @Test
+    void should_apply_changes() {
+        DirectorySnapshot snapshot = DirectorySnapshot.of(Arrays.asList(
+                file("/dreamwill/a.txt", 1, 1000),
+                file("/dreamwill/b.txt", 2, 1000),
+                file("/dreamwill/c.txt", 3, 1000)
+        ));
+        DirectorySnapshot applied = snapshot.apply(Arrays.asList(
+                snapshot.change("/dreamwill/b.txt", null),
+                snapshot.change("/dreamwill/0.txt", file("/dreamwill/0.txt", 1, 1000)),
+                snapshot.change("/dreamwill/c.txt", file("/dreamwill/c.txt", 5, 1000))
+        ));
+        Assertions.assertThat(applied.size()).isEqualTo(3);
+        Assertions.assertThat(applied.contains("/dreamwill/0.txt")).isTrue();
+        Assertions.assertThat(applied.contains("/dreamwill/b.txt")).isFalse();
+        Assertions.assertThat(applied.change("/dreamwill/c.txt", file("/dreamwill/c.txt", 5, 1000))).isNull();
+        Assertions.assertThat(snapshot.contains("/dreamwill/b.txt")).isTrue();
+    }
+
+    @Test
+    void should_compare_files_without_modification_time() {
+        FileMetadata unknown = FileMetadata.builder().path("/dreamwill/a.txt").size(1L).build();
+        DirectorySnapshot snapshot = DirectorySnapshot.of(Collections.singletonList(unknown));
+        Assertions.assertThat(snapshot.change("/dreamwill/a.txt", unknown)).isNull();
+        Assertions.assertThat(snapshot.change("/dreamwill/a.txt", file("/dreamwill/a.txt", 1, 1000)).getType())
+                  .isEqualTo(ChangeType.MODIFIED);
+    }
+
+    private static FileMetadata file(String path, long size, long mtime) {
+        return FileMetadata.builder()
+                           .path(path)
+                           .size(size)
+                           .mtime(Optional.of(Instant.ofEpochMilli(mtime)))
+                           .ctime(Optional.empty())
+                           .build();
+    }
+}
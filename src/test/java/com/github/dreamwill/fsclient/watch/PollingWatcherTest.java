@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 许王伟
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.dreamwill.fsclient.watch;
+
+import com.github.dreamwill.fsclient.FileMetadata;
+import com.github.dreamwill.fsclient.FileSystemClient;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+class PollingWatcherTest {
+    private static final WatchOptions OPTIONS = WatchOptions.builder()
+                                                            .minInterval(Duration.ofMillis(10))
+                                                            .maxInterval(Duration.ofMillis(80))
+                                                            .build();
+
+    @Test
+    void should_report_changes_between_listings() throws IOException, InterruptedException {
+        AtomicReference<List<FileMetadata>> listing = new AtomicReference<>(
+                Collections.singletonList(file("/dreamwill/a.txt", 1)));
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.listFiles("/dreamwill")).thenAnswer(invocation -> listing.get());
+        BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+
+        try (PollingWatcher watcher = PollingWatcher.start(client, "/dreamwill", events::add, OPTIONS)) {
+            List<FileMetadata> next = new ArrayList<>();
+            next.add(file("/dreamwill/a.txt", 2));
+            next.add(file("/dreamwill/b.txt", 1));
+            listing.set(next);
+
+            ChangeEvent first = events.poll(5, TimeUnit.SECONDS);
+            ChangeEvent second = events.poll(5, TimeUnit.SECONDS);
+            Assertions.assertThat(first.getType()).isEqualTo(ChangeType.MODIFIED);
+            Assertions.assertThat(second.getType()).isEqualTo(ChangeType.CREATED);
+            Assertions.assertThat(second.getPath()).isEqualTo("/dreamwill/b.txt");
+
+            listing.set(null);
+            Assertions.assertThat(events.poll(5, TimeUnit.SECONDS).getType()).isEqualTo(ChangeType.DELETED);
+            Assertions.assertThat(events.poll(5, TimeUnit.SECONDS).getType()).isEqualTo(ChangeType.DELETED);
+        }
+    }
+
+    @Test
+    void should_back_off_while_directory_is_idle() throws IOException, InterruptedException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.listFiles("/dreamwill")).thenReturn(Collections.emptyList());
+        try (PollingWatcher watcher = PollingWatcher.start(client, "/dreamwill", event -> {
+        }, OPTIONS)) {
+            Assertions.assertThat(watcher.getIntervalMillis()).isEqualTo(10);
+            Thread.sleep(500);
+            Assertions.assertThat(watcher.getIntervalMillis()).isEqualTo(80);
+        }
+    }
+
+    @Test
+    void should_keep_watching_after_errors() throws IOException, InterruptedException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.listFiles("/dreamwill"))
+               .thenReturn(Collections.emptyList())
+               .thenThrow(new IOException("connection reset"))
+               .thenReturn(Collections.singletonList(file("/dreamwill/a.txt", 1)));
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        ChangeListener listener = new ChangeListener() {
+            @Override
+            public void onChange(ChangeEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void onError(IOException cause) {
+                events.add(cause);
+            }
+        };
+        try (PollingWatcher ignored = PollingWatcher.start(client, "/dreamwill", listener, OPTIONS)) {
+            Assertions.assertThat(events.poll(5, TimeUnit.SECONDS)).isInstanceOf(IOException.class);
+            Assertions.assertThat(events.poll(5, TimeUnit.SECONDS)).isInstanceOf(ChangeEvent.class);
+        }
+    }
+
+    @Test
+    void should_return_null_while_directory_does_not_exist() throws IOException {
+        FileSystemClient client = Mockito.mock(FileSystemClient.class);
+        Mockito.when(client.listFiles("/dreamwill/never_exist")).thenReturn(null);
+        Assertions.assertThat(PollingWatcher.start(client, "/dreamwill/never_exist", event -> {
+        }, OPTIONS)).isNull();
+    }
+
+    private static FileMetadata file(String path, long size) {
+        return FileMetadata.builder()
+                           .path(path)
+                           .size(size)
+                           .mtime(Optional.of(Instant.ofEpochMilli(1000)))
+                           .ctime(Optional.empty())
+                           .build();
+    }
+}